@@ -0,0 +1,243 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Class that writes all generated classes into one zip or jar archive, as single sequential stream.
+ * Every class is written to archive as soon as it comes. Archive can't hold two entries with the same name and entry
+ * can't be replaced once it's streamed, so only first class written under every name is kept and later ones are
+ * reported to console.
+ */
+public class ArchiveWriter implements OutputSink
+{
+    /**
+     * size of buffer between archive and file
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * stream of archive
+     */
+    private ZipOutputStream archive;
+
+    /**
+     * Determines if entries are stored without compression
+     */
+    private boolean stored;
+
+    /**
+     * checksum of stored entries, has to be known before entry is written
+     */
+    private CRC32 crc = new CRC32();
+
+    /**
+     * names of entries already written to archive
+     */
+    private HashSet<String> entries = new HashSet<>();
+
+    /**
+     * stream that duplicate entries are reported to
+     */
+    private PrintStream console;
+
+    /**
+     * Determines if archive couldn't be written, like when process reading it quit, later entries aren't written then
+     */
+    private boolean failed = false;
+
+    /**
+     * Constructor of ArchiveWriter
+     *
+     * @param archive stream of archive
+     * @param stored true if entries should be stored without compression
+     * @param level compression level from 0 to 9, ignored when entries are stored
+     * @param console stream that duplicate entries are reported to
+     */
+    private ArchiveWriter(ZipOutputStream archive, boolean stored, int level, PrintStream console)
+    {
+        this.archive = archive;
+        this.stored = stored;
+        this.console = console;
+
+        if(stored)
+        {
+            archive.setMethod(ZipOutputStream.STORED);
+        }
+        else
+        {
+            archive.setLevel(level);
+        }
+    }
+
+    /**
+     * Creates archive file, file with .jar extension is created as jar archive
+     *
+     * @param file archive file name
+     * @param stored true if entries should be stored without compression
+     * @param level compression level from 0 to 9 or -1 for default level, ignored when entries are stored
+     * @param console stream that duplicate entries are reported to
+     * @return ArchiveWriter for created file or null if file couldn't be created
+     */
+    public static ArchiveWriter open(String file, boolean stored, int level, PrintStream console)
+    {
+        try
+        {
+            return open(new FileOutputStream(file), file.endsWith(".jar"), stored, level, console);
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Creates archive written to stream, like standard output piped to another process.
+     * Sizes of compressed entries follow their data then, since stream can't be rewound.
+     *
+     * @param stream stream that archive is written to, closed when archive is finished
+     * @param jar true if archive should be written as jar, false if as zip
+     * @param stored true if entries should be stored without compression
+     * @param level compression level from 0 to 9 or -1 for default level, ignored when entries are stored
+     * @param console stream that duplicate entries are reported to
+     * @return ArchiveWriter for given stream or null if archive couldn't be started
+     */
+    public static ArchiveWriter open(OutputStream stream, boolean jar, boolean stored, int level, PrintStream console)
+    {
+        try
+        {
+            OutputStream out = new BufferedOutputStream(stream, BUFFER_SIZE);
+            ZipOutputStream archive = jar ? new JarOutputStream(out) : new ZipOutputStream(out);
+            return new ArchiveWriter(archive, stored, level, console);
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            close(stream);
+            return null;
+        }
+    }
+
+    /**
+     * Writes class as entry named after its package and class name
+     *
+     * @param line LineGenerationOptions object that class was rendered from
+     * @param specLine line of spec that class was parsed from
+     * @param content UTF-8 bytes of class
+     * @return true if entry was written or skipped as duplicate, false if archive couldn't be written
+     */
+    public boolean write(LineGenerationOptions line, CharSequence specLine, ByteBuffer content)
+    {
+        return write(OutputHandler.entryName(line), content);
+    }
+
+    /**
+     * Writes one entry to archive, safe to call from several threads.
+     * Entry with name that was already written is skipped and reported to console.
+     * Once archive couldn't be written, every later entry is refused without writing.
+     *
+     * @param name name of entry, with '/' between directories
+     * @param content content of entry, buffer is read to its limit
+     * @return true if entry was written or skipped as duplicate, false if archive couldn't be written
+     */
+    public synchronized boolean write(String name, ByteBuffer content)
+    {
+        if(failed)
+        {
+            return false;
+        }
+
+        if(!entries.add(name))
+        {
+            console.println("Duplicate archive entry " + name + " skipped, first class with this name is kept");
+            content.position(content.limit());
+            return true;
+        }
+
+        try
+        {
+            writeEntry(name, content);
+            return true;
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            failed = true;
+            return false;
+        }
+    }
+
+    /**
+     * Finishes archive and closes file, file is closed even if archive couldn't be finished
+     *
+     * @return true if archive was finished, false if not
+     */
+    public synchronized boolean close()
+    {
+        try
+        {
+            archive.finish();
+            return true;
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+        finally
+        {
+            close(archive);
+        }
+    }
+
+    /**
+     * Writes one entry to archive
+     *
+     * @param name name of entry, with '/' between directories
+     * @param content content of entry, buffer is read to its limit
+     * @throws IOException if archive can't be written
+     */
+    private void writeEntry(String name, ByteBuffer content) throws IOException
+    {
+        ZipEntry entry = new ZipEntry(name);
+
+        if(stored)
+        {
+            crc.reset();
+            crc.update(content.array(), content.arrayOffset() + content.position(), content.remaining());
+            entry.setCrc(crc.getValue());
+            entry.setSize(content.remaining());
+            entry.setCompressedSize(content.remaining());
+        }
+
+        archive.putNextEntry(entry);
+        archive.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+        archive.closeEntry();
+        content.position(content.limit());
+    }
+
+    /**
+     * Closes stream, printing error if it can't be closed
+     *
+     * @param stream stream to close
+     */
+    private static void close(OutputStream stream)
+    {
+        try
+        {
+            stream.close();
+        }
+        catch(IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,279 @@
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sink that passes every class to another sink in its own task, so many small files are written at once
+ * and disk queue stays full. Tasks run on virtual threads when Java has them (21 and later), otherwise on small pool
+ * of platform threads. Semaphore limits number of classes being written, which limits open files and memory
+ * taken by copies of classes waiting to be written. Failures are collected per class and reported when sink is closed.
+ * Lines that target the same file are written one at a time and file written by earlier class never replaces
+ * file written by later one. State of file is kept only while its writes are in flight, so memory doesn't grow
+ * with number of written files.
+ */
+public class AsyncSink implements OutputSink
+{
+    /**
+     * default number of classes that can be written at once
+     */
+    static final int DEFAULT_OPEN_FILES = 256;
+
+    /**
+     * largest number of platform threads used when virtual threads are not available
+     */
+    private static final int PLATFORM_THREADS = 32;
+
+    /**
+     * sink that classes are passed to
+     */
+    private OutputSink sink;
+
+    /**
+     * executor running writes
+     */
+    private ExecutorService executor;
+
+    /**
+     * permits of classes being written
+     */
+    private Semaphore openFiles;
+
+    /**
+     * number of classes that can be written at once
+     */
+    private int maxOpenFiles;
+
+    /**
+     * number of last class passed to this sink
+     */
+    private AtomicLong sequence = new AtomicLong();
+
+    /**
+     * state of every file with writes in flight, by entry name
+     */
+    private ConcurrentHashMap<String, FileSlot> files = new ConcurrentHashMap<>();
+
+    /**
+     * failures of particular classes sorted by entry name, so report doesn't depend on thread scheduling
+     */
+    private ConcurrentSkipListMap<String, String> failures = new ConcurrentSkipListMap<>();
+
+    /**
+     * stream that failures are printed to
+     */
+    private PrintStream console;
+
+    /**
+     * Constructor of AsyncSink
+     *
+     * @param sink sink that classes are passed to, has to be safe to use from several threads
+     * @param maxOpenFiles number of classes that can be written at once
+     * @param console stream that failures are printed to
+     */
+    public AsyncSink(OutputSink sink, int maxOpenFiles, PrintStream console)
+    {
+        this.sink = sink;
+        this.maxOpenFiles = maxOpenFiles;
+        this.openFiles = new Semaphore(maxOpenFiles);
+        this.console = console;
+        this.executor = createExecutor(Math.min(maxOpenFiles, PLATFORM_THREADS));
+    }
+
+    /**
+     * Creates executor that starts virtual thread for every task, or pool of platform threads if Java doesn't have them
+     *
+     * @param platformThreads number of platform threads used when virtual threads are not available
+     * @return executor for writes
+     */
+    static ExecutorService createExecutor(int platformThreads)
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch(Exception e)
+        {
+            return Executors.newFixedThreadPool(platformThreads);
+        }
+    }
+
+    /**
+     * Copies class and starts writing it, blocks while too many classes are being written
+     *
+     * @param line LineGenerationOptions object that class was rendered from, can't be changed until sink is closed
+     * @param specLine line of spec that class was parsed from
+     * @param content UTF-8 bytes of class
+     * @return true if class was accepted, false if writing couldn't be started
+     */
+    public boolean write(LineGenerationOptions line, CharSequence specLine, ByteBuffer content)
+    {
+        String name = OutputHandler.entryName(line);
+        ByteBuffer copy = ByteBuffer.allocate(content.remaining());
+        copy.put(content).flip();
+
+        try
+        {
+            openFiles.acquire();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        long[] number = new long[1];
+        FileSlot slot = files.compute(name, (key, current) -> register(current, number));
+
+        try
+        {
+            executor.execute(() -> emit(slot, name, number[0], line, specLine, copy));
+            return true;
+        }
+        catch(RejectedExecutionException e)
+        {
+            release(name);
+            openFiles.release();
+            return false;
+        }
+    }
+
+    /**
+     * Counts new write of file and gives it number, called by compute of map of files, so it's atomic
+     * with removal of slot and numbers of one file grow even when its slot is removed and created again
+     *
+     * @param slot state of file, null if file has no writes in flight
+     * @param number array that number of write is stored to
+     * @return state of file
+     */
+    private FileSlot register(FileSlot slot, long[] number)
+    {
+        FileSlot registered = slot != null ? slot : new FileSlot();
+        ++registered.pending;
+        number[0] = sequence.incrementAndGet();
+        return registered;
+    }
+
+    /**
+     * Ends one write of file, forgets state of file when it was its last write in flight
+     *
+     * @param name entry name of class
+     */
+    private void release(String name)
+    {
+        files.computeIfPresent(name, (key, slot) -> --slot.pending == 0 ? null : slot);
+    }
+
+    /**
+     * Writes class, unless later class targeting the same file was already written
+     *
+     * @param slot state of file
+     * @param name entry name of class
+     * @param number number of class in order it was passed to sink
+     * @param line LineGenerationOptions object that class was rendered from
+     * @param specLine line of spec that class was parsed from
+     * @param content UTF-8 bytes of class
+     */
+    private void emit(FileSlot slot, String name, long number, LineGenerationOptions line, CharSequence specLine, ByteBuffer content)
+    {
+        slot.lock.lock();
+
+        try
+        {
+            if(slot.lastWritten < number)
+            {
+                if(sink.write(line, specLine, content))
+                {
+                    failures.remove(name);
+                }
+                else
+                {
+                    failures.put(name, "Couldn't write class " + line.getClassName());
+                }
+                slot.lastWritten = number;
+            }
+        }
+        catch(Exception e)
+        {
+            failures.put(name, e.toString());
+        }
+        finally
+        {
+            slot.lock.unlock();
+            release(name);
+            openFiles.release();
+        }
+    }
+
+    /**
+     * Asks sink that classes are passed to if it already holds class, unless class targeting the same file
+     * is still being written, since that write could replace file checked now
+     *
+     * @param line LineGenerationOptions object that class would be rendered from
+     * @param specLine line of spec that class was parsed from
+     * @return true if class doesn't have to be rendered, false if it has to be written
+     */
+    @Override
+    public boolean isUpToDate(LineGenerationOptions line, CharSequence specLine)
+    {
+        String name = OutputHandler.entryName(line);
+        return !files.containsKey(name) && sink.isUpToDate(line, specLine);
+    }
+
+    /**
+     * Classes are passed to other sink after write returns, together with LineGenerationOptions objects they were rendered from
+     *
+     * @return true
+     */
+    @Override
+    public boolean keepsLines()
+    {
+        return true;
+    }
+
+    /**
+     * Waits until every class is written, prints failures and closes sink that classes were passed to
+     *
+     * @return true if every class was written and sink was closed, false if not
+     */
+    public boolean close()
+    {
+        openFiles.acquireUninterruptibly(maxOpenFiles);
+        executor.shutdown();
+
+        for(Map.Entry<String, String> failure : failures.entrySet())
+        {
+            console.println(failure.getKey() + ": " + failure.getValue());
+        }
+
+        return sink.close() && failures.isEmpty();
+    }
+}
+
+/**
+ * State of one file written by {@link AsyncSink}
+ */
+class FileSlot
+{
+    /**
+     * lock held while file is written, not synchronized block so virtual thread doing I/O doesn't pin its carrier
+     */
+    final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * number of last class written to file
+     */
+    long lastWritten;
+
+    /**
+     * number of writes of file accepted and not finished yet, changed only by compute methods of map of files
+     */
+    int pending;
+}
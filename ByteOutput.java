@@ -0,0 +1,94 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer that classes are rendered to, reused by one thread for all its classes
+ */
+class ByteOutput
+{
+    /**
+     * written bytes
+     */
+    private byte[] bytes;
+
+    /**
+     * number of written bytes
+     */
+    private int length;
+
+    /**
+     * Constructor of ByteOutput
+     *
+     * @param capacity initial capacity
+     */
+    ByteOutput(int capacity)
+    {
+        bytes = new byte[capacity];
+    }
+
+    /**
+     * Forgets written bytes
+     */
+    void clear()
+    {
+        length = 0;
+    }
+
+    /**
+     * Writes one byte
+     *
+     * @param b byte to write
+     */
+    void put(byte b)
+    {
+        ensure(1);
+        bytes[length++] = b;
+    }
+
+    /**
+     * Writes all bytes of array
+     *
+     * @param src bytes to write
+     */
+    void put(byte[] src)
+    {
+        put(src, 0, src.length);
+    }
+
+    /**
+     * Writes part of array
+     *
+     * @param src bytes to write
+     * @param offset position of first byte to write
+     * @param count number of bytes to write
+     */
+    void put(byte[] src, int offset, int count)
+    {
+        ensure(count);
+        System.arraycopy(src, offset, bytes, length, count);
+        length += count;
+    }
+
+    /**
+     * Wraps written bytes, buffer is valid until output is cleared
+     *
+     * @return buffer with written bytes, ready to be read
+     */
+    ByteBuffer buffer()
+    {
+        return ByteBuffer.wrap(bytes, 0, length);
+    }
+
+    /**
+     * Grows array if it can't hold given number of new bytes
+     *
+     * @param extra number of new bytes
+     */
+    private void ensure(int extra)
+    {
+        if(length + extra > bytes.length)
+        {
+            bytes = Arrays.copyOf(bytes, Math.max(length + extra, 2 * bytes.length));
+        }
+    }
+}
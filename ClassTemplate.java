@@ -0,0 +1,986 @@
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class that holds skeleton of generated class compiled to UTF-8 byte segments and slots filled from
+ * {@link LineGenerationOptions}, so rendering is mostly copying of ready bytes.
+ *
+ * Template is text with tags in double braces:
+ * {{className}}, {{package}} (folders joined with '.'), {{nl}} (line separator of current platform),
+ * sections {{#hasPackage}}, {{#javadoc}}, {{#main}} rendered when condition is true,
+ * {{^hasPackage}}, {{^javadoc}}, {{^main}} rendered when it's false,
+ * {{#fields}} repeated for every field, with {{field}} inside,
+ * {{#methods}} repeated for every method, with {{signature}}, {{returnType}}, {{#returns}} / {{^returns}}
+ * (return type is not void) and {{#params}} repeated for every arg, with {{paramType}} and {{paramName}} inside.
+ * Every section is closed by {{/name}}, fields and methods sections can't be nested in other repeated sections.
+ *
+ * Template is compiled once for every combination of package, javadoc and main flags, so sections depending on them
+ * are resolved before rendering and literals around them are merged into single segments.
+ * Literals on both sides of section edges are fused too: text before and after section, and text at end and start
+ * of repeated section, are copied at once for every way section can be entered, repeated or left.
+ * Section holding no other sections, like fields or args of default template, is rendered by one step with its own
+ * loop over slots, so only sections holding other sections are interpreted operation by operation.
+ */
+public class ClassTemplate
+{
+    /**
+     * line separator used between methods, same as one written by PrintWriter.println
+     */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /**
+     * template that generator always used
+     */
+    static final String DEFAULT_TEMPLATE =
+            "{{#hasPackage}}package {{package}};\n\n{{/hasPackage}}" +
+            "{{#javadoc}}/**\n *\n */\n{{/javadoc}}" +
+            "class {{className}}\n{\n" +
+            "{{#fields}}{{#javadoc}}\t/**\n\t *\n\t */\n{{/javadoc}}\t{{field}}\n{{/fields}}" +
+            "{{#methods}}{{nl}}{{#javadoc}}\t/**\n\t *\n{{#params}}\t * @param {{paramName}}\n{{/params}}" +
+            "{{#returns}}\t * @return {{returnType}}\n{{/returns}}\t*/\n{{/javadoc}}\t{{signature}}\n\t{\n\n\t}\n{{/methods}}" +
+            "{{#main}}{{nl}}{{#javadoc}}\t/**\n\t * Main method of the program\n\t * @param args Command line arguments\n\t */\n{{/javadoc}}" +
+            "\tpublic static void main(String[] args)\n\t{\n\n\t}\n{{/main}}" +
+            "}";
+
+    /**
+     * operations of compiled template, each followed by its argument and indexes of two literals, see {@link #code}
+     */
+    static final int LITERAL = 0, CLASS_NAME = 1, PACKAGE = 2, FIELD = 3, SIGNATURE = 4, RETURN_TYPE = 5,
+            PARAM_TYPE = 6, PARAM_NAME = 7, HAS_PACKAGE = 8, JAVADOC = 9, MAIN = 10, RETURNS = 11, NOT_RETURNS = 12,
+            FIELDS = 13, METHODS = 14, PARAMS = 15, END_FIELDS = 16, END_METHODS = 17, END_PARAMS = 18, FLAT = 19;
+
+    /**
+     * number of ints taken by one operation in {@link #code}
+     */
+    static final int OPERATION_SIZE = 4;
+
+    /**
+     * positions in description of flat section, see {@link #flats}
+     */
+    static final int FLAT_KIND = 0, FLAT_SKIPPED = 1, FLAT_ENTERED = 2, FLAT_REPEATED = 3, FLAT_LEFT = 4, FLAT_SLOTS = 5;
+
+    /**
+     * compiled default template
+     */
+    static final ClassTemplate DEFAULT = compile(DEFAULT_TEMPLATE);
+
+    /**
+     * compiled template for every combination of flags, see {@link #variant}: operation, its argument and indexes
+     * of two literals, -1 where there is no literal. Slot writes first literal before its value.
+     * Section writes first literal when it's entered and second one when it's skipped, jumping to its argument,
+     * position right after section. Section end writes first literal when section is repeated, jumping to its argument,
+     * position of first operation inside section, and second one when section is left.
+     * Flat section writes whole section, its argument is index of its description in {@link #flats}.
+     * Literals are attached to operations, so plain text between tags doesn't cost separate step of rendering.
+     */
+    private int[][] code;
+
+    /**
+     * UTF-8 bytes of literal parts of template, for every combination of flags
+     */
+    private byte[][][] literals;
+
+    /**
+     * sections without other sections inside, for every combination of flags: kind of section, indexes of literals
+     * written when section is skipped, entered, repeated and left, then slots with index of literal between every two
+     */
+    private int[][][] flats;
+
+    /**
+     * hash of text of template and line separator, classes rendered from the same line with templates of different
+     * hashes can differ, see {@link IncrementalManifest}
+     */
+    final long hash;
+
+    /**
+     * Constructor of ClassTemplate
+     *
+     * @param code compiled template for every combination of flags
+     * @param literals UTF-8 bytes of literal parts of template for every combination of flags
+     * @param flats sections without other sections inside for every combination of flags
+     * @param hash hash of text of template and line separator
+     */
+    private ClassTemplate(int[][] code, byte[][][] literals, int[][][] flats, long hash)
+    {
+        this.code = code;
+        this.literals = literals;
+        this.flats = flats;
+        this.hash = hash;
+    }
+
+    /**
+     * Reads template from UTF-8 file and compiles it
+     *
+     * @param file template file name
+     * @param console stream that problems of template are printed to
+     * @return compiled template or null if file can't be read or isn't correct template
+     */
+    public static ClassTemplate load(String file, PrintStream console)
+    {
+        try
+        {
+            return compile(new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8));
+        }
+        catch(IllegalArgumentException e)
+        {
+            console.println("Wrong template " + file + ": " + e.getMessage());
+            return null;
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Compiles template to flat lists of operations, so rendering is one loop without recursion
+     *
+     * @param template text of template
+     * @return compiled template
+     * @throws IllegalArgumentException if template has unknown or misplaced tags or sections that are not closed
+     */
+    public static ClassTemplate compile(String template)
+    {
+        int[][] code = new int[8][];
+        byte[][][] literals = new byte[8][][];
+        int[][][] flats = new int[8][][];
+
+        for(int variant = 0; variant < 8; ++variant)
+        {
+            TemplateCompiler compiler = new TemplateCompiler(variant);
+            compile(template, compiler);
+            code[variant] = compiler.code();
+            literals[variant] = compiler.literals();
+            flats[variant] = compiler.flats();
+        }
+
+        return new ClassTemplate(code, literals, flats, IncrementalManifest.hash(template + LINE_SEPARATOR));
+    }
+
+    /**
+     * Reads tags of template and passes them to compiler
+     *
+     * @param template text of template
+     * @param compiler compiler of one combination of flags
+     * @throws IllegalArgumentException if template has unknown or misplaced tags
+     */
+    private static void compile(String template, TemplateCompiler compiler)
+    {
+        StringBuilder literal = new StringBuilder();
+        int pos = 0;
+
+        while(pos < template.length())
+        {
+            int open = template.indexOf("{{", pos);
+            if(open < 0)
+            {
+                literal.append(template, pos, template.length());
+                break;
+            }
+
+            int close = template.indexOf("}}", open + 2);
+            if(close < 0)
+            {
+                throw new IllegalArgumentException("tag at " + open + " is not closed");
+            }
+
+            literal.append(template, pos, open);
+            pos = close + 2;
+
+            String tag = template.substring(open + 2, close).trim();
+
+            if(tag.equals("nl"))
+            {
+                literal.append(LINE_SEPARATOR);
+                continue;
+            }
+
+            compiler.literal(literal);
+
+            if(tag.startsWith("/"))
+            {
+                compiler.closeSection(tag);
+            }
+            else if(tag.startsWith("#") || tag.startsWith("^"))
+            {
+                int kind = sectionKind(tag.substring(1));
+                boolean inverted = tag.startsWith("^");
+
+                if(kind < 0 || (inverted && kind >= FIELDS))
+                {
+                    throw new IllegalArgumentException("unknown section {{" + tag + "}}");
+                }
+                compiler.openSection(inverted && kind == RETURNS ? NOT_RETURNS : kind, inverted, tag);
+            }
+            else
+            {
+                int kind = slotKind(tag);
+                if(kind < 0)
+                {
+                    throw new IllegalArgumentException("unknown tag {{" + tag + "}}");
+                }
+                compiler.slot(kind, tag);
+            }
+        }
+
+        compiler.literal(literal);
+    }
+
+    /**
+     * Finds combination of flags of class
+     *
+     * @param line LineGenerationOptions object holding flags
+     * @return number of compiled template for these flags
+     */
+    static int variant(LineGenerationOptions line)
+    {
+        return (line.packageCount() > 0 ? 1 : 0) | (line.isJavadocGeneration() ? 2 : 0) | (line.isMainGeneration() ? 4 : 0);
+    }
+
+    /**
+     * Renders class to output
+     *
+     * @param line LineGenerationOptions object holding all necessary information
+     * @param out output that encoded class is appended to
+     */
+    public void render(LineGenerationOptions line, ByteOutput out)
+    {
+        int variant = variant(line);
+        int[] code = this.code[variant];
+        byte[][] literals = this.literals[variant];
+        int index = 0;
+        int param = 0;
+        int pc = 0;
+
+        while(pc < code.length)
+        {
+            int operation = code[pc];
+            int argument = code[pc + 1];
+            int literal = code[pc + 2];
+            int other = code[pc + 3];
+            pc += OPERATION_SIZE;
+
+            switch(operation)
+            {
+                case LITERAL:
+                    out.put(literals[literal]);
+                    break;
+                case FLAT:
+                    renderFlat(flats[variant][argument], literals, line, index, param, out);
+                    break;
+                case RETURNS:
+                case NOT_RETURNS:
+                    if(line.isVoid(index) == (operation == NOT_RETURNS))
+                    {
+                        put(literals, literal, out);
+                    }
+                    else
+                    {
+                        put(literals, other, out);
+                        pc = argument;
+                    }
+                    break;
+                case FIELDS:
+                case METHODS:
+                    index = 0;
+                    if(count(operation, line, index) > 0)
+                    {
+                        put(literals, literal, out);
+                    }
+                    else
+                    {
+                        put(literals, other, out);
+                        pc = argument;
+                    }
+                    break;
+                case PARAMS:
+                    param = 0;
+                    if(line.argumentCount(index) > 0)
+                    {
+                        put(literals, literal, out);
+                    }
+                    else
+                    {
+                        put(literals, other, out);
+                        pc = argument;
+                    }
+                    break;
+                case END_FIELDS:
+                case END_METHODS:
+                    if(++index < count(operation - END_FIELDS + FIELDS, line, index))
+                    {
+                        put(literals, literal, out);
+                        pc = argument;
+                    }
+                    else
+                    {
+                        put(literals, other, out);
+                    }
+                    break;
+                case END_PARAMS:
+                    if(++param < line.argumentCount(index))
+                    {
+                        put(literals, literal, out);
+                        pc = argument;
+                    }
+                    else
+                    {
+                        put(literals, other, out);
+                    }
+                    break;
+                default:
+                    put(literals, literal, out);
+                    writeSlot(operation, line, index, param, out);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Renders section without other sections inside, with all its repetitions
+     *
+     * @param flat description of section, see {@link #flats}
+     * @param literals UTF-8 bytes of literal parts of template
+     * @param line LineGenerationOptions object holding all necessary information
+     * @param index index of current method, for sections inside methods section
+     * @param param index of current arg, for sections inside args section
+     * @param out output that encoded class is appended to
+     */
+    private static void renderFlat(int[] flat, byte[][] literals, LineGenerationOptions line, int index, int param, ByteOutput out)
+    {
+        int kind = flat[FLAT_KIND];
+        int count = count(kind, line, index);
+
+        if(count == 0)
+        {
+            put(literals, flat[FLAT_SKIPPED], out);
+            return;
+        }
+
+        put(literals, flat[FLAT_ENTERED], out);
+        for(int i = 0; i < count; ++i)
+        {
+            if(i > 0)
+            {
+                put(literals, flat[FLAT_REPEATED], out);
+            }
+
+            int slotIndex = kind == FIELDS || kind == METHODS ? i : index;
+            int slotParam = kind == PARAMS ? i : param;
+            for(int slot = FLAT_SLOTS; slot < flat.length; slot += 2)
+            {
+                writeSlot(flat[slot], line, slotIndex, slotParam, out);
+                if(slot + 1 < flat.length)
+                {
+                    put(literals, flat[slot + 1], out);
+                }
+            }
+        }
+        put(literals, flat[FLAT_LEFT], out);
+    }
+
+    /**
+     * Counts how many times section is rendered
+     *
+     * @param kind kind of section
+     * @param line LineGenerationOptions object holding all necessary information
+     * @param index index of current method, for sections inside methods section
+     * @return number of repetitions of section, 0 or 1 for conditional section
+     */
+    private static int count(int kind, LineGenerationOptions line, int index)
+    {
+        switch(kind)
+        {
+            case FIELDS:
+                return line.fieldCount();
+            case METHODS:
+                return line.methodCount();
+            case PARAMS:
+                return line.argumentCount(index);
+            case RETURNS:
+                return line.isVoid(index) ? 0 : 1;
+            default:
+                return line.isVoid(index) ? 1 : 0;
+        }
+    }
+
+    /**
+     * Writes value of slot
+     *
+     * @param kind kind of slot
+     * @param line LineGenerationOptions object holding all necessary information
+     * @param index index of current field or method
+     * @param param index of current arg
+     * @param out output that encoded class is appended to
+     */
+    private static void writeSlot(int kind, LineGenerationOptions line, int index, int param, ByteOutput out)
+    {
+        switch(kind)
+        {
+            case CLASS_NAME:
+                line.writeClassName(out);
+                break;
+            case PACKAGE:
+                for(int i = 0; i < line.packageCount(); ++i)
+                {
+                    if(i > 0)
+                    {
+                        out.put((byte) '.');
+                    }
+                    out.put(line.getPackageSymbol(i).bytes);
+                }
+                break;
+            case FIELD:
+                line.writeField(index, out);
+                break;
+            case SIGNATURE:
+                line.writeSignature(index, out);
+                break;
+            case RETURN_TYPE:
+                out.put(line.getReturnType(index).bytes);
+                break;
+            case PARAM_TYPE:
+                line.writeArgumentType(index, param, out);
+                break;
+            case PARAM_NAME:
+                line.writeArgumentName(index, param, out);
+                break;
+        }
+    }
+
+    /**
+     * Writes literal if there is one
+     *
+     * @param literals UTF-8 bytes of literal parts of template
+     * @param literal index of literal, -1 if there is no literal
+     * @param out output that encoded class is appended to
+     */
+    private static void put(byte[][] literals, int literal, ByteOutput out)
+    {
+        if(literal >= 0)
+        {
+            out.put(literals[literal]);
+        }
+    }
+
+    /**
+     * Finds kind of section
+     *
+     * @param name name of section
+     * @return kind of section or -1 if there is no such section
+     */
+    static int sectionKind(String name)
+    {
+        switch(name)
+        {
+            case "hasPackage":
+                return HAS_PACKAGE;
+            case "javadoc":
+                return JAVADOC;
+            case "main":
+                return MAIN;
+            case "returns":
+                return RETURNS;
+            case "fields":
+                return FIELDS;
+            case "methods":
+                return METHODS;
+            case "params":
+                return PARAMS;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Finds kind of slot
+     *
+     * @param name name of slot
+     * @return kind of slot or -1 if there is no such slot
+     */
+    static int slotKind(String name)
+    {
+        switch(name)
+        {
+            case "className":
+                return CLASS_NAME;
+            case "package":
+                return PACKAGE;
+            case "field":
+                return FIELD;
+            case "signature":
+                return SIGNATURE;
+            case "returnType":
+                return RETURN_TYPE;
+            case "paramType":
+                return PARAM_TYPE;
+            case "paramName":
+                return PARAM_NAME;
+            default:
+                return -1;
+        }
+    }
+}
+
+/**
+ * Builds operations of {@link ClassTemplate} for one combination of flags while template is read,
+ * checks that tags are placed in right sections
+ */
+class TemplateCompiler
+{
+    /**
+     * combination of flags, see {@link ClassTemplate#variant}
+     */
+    private int variant;
+
+    /**
+     * whole template with sections resolved by flags left out, built while template is read
+     */
+    private TemplateSection root = new TemplateSection(-1);
+
+    /**
+     * operations and their arguments
+     */
+    private ArrayList<Integer> code = new ArrayList<>();
+
+    /**
+     * UTF-8 bytes of literal parts of template
+     */
+    private ArrayList<byte[]> literals = new ArrayList<>();
+
+    /**
+     * descriptions of sections without other sections inside
+     */
+    private ArrayList<int[]> flats = new ArrayList<>();
+
+    /**
+     * sections that are not closed yet and are part of compiled template, innermost first
+     */
+    private ArrayDeque<TemplateSection> open = new ArrayDeque<>();
+
+    /**
+     * kinds of sections that are not closed yet
+     */
+    private ArrayDeque<Integer> openKinds = new ArrayDeque<>();
+
+    /**
+     * names of sections that are not closed yet
+     */
+    private ArrayDeque<String> openNames = new ArrayDeque<>();
+
+    /**
+     * for every section that is not closed yet, true if it's part of compiled template, false if it's resolved by flags
+     */
+    private ArrayDeque<Boolean> openCompiled = new ArrayDeque<>();
+
+    /**
+     * number of open sections whose content is dropped, because their flag doesn't match this combination
+     */
+    private int skipped;
+
+    /**
+     * Constructor of TemplateCompiler
+     *
+     * @param variant combination of flags, see {@link ClassTemplate#variant}
+     */
+    TemplateCompiler(int variant)
+    {
+        this.variant = variant;
+        open.push(root);
+    }
+
+    /**
+     * Adds collected literal text to current section
+     *
+     * @param literal collected text, cleared afterwards
+     */
+    void literal(StringBuilder literal)
+    {
+        if(skipped == 0 && literal.length() > 0)
+        {
+            open.peek().addText(literal.toString());
+        }
+        literal.setLength(0);
+    }
+
+    /**
+     * Adds slot
+     *
+     * @param kind kind of slot
+     * @param tag text of tag, used in error message
+     */
+    void slot(int kind, String tag)
+    {
+        checkScope(tag);
+        if(skipped == 0)
+        {
+            open.peek().items.add(kind);
+        }
+    }
+
+    /**
+     * Opens section. Sections of package, javadoc and main flags are resolved for this combination of flags,
+     * content of other sections is collected until section is closed.
+     *
+     * @param kind kind of section
+     * @param inverted true if section is rendered when its condition is false
+     * @param tag text of tag, used in error message
+     */
+    void openSection(int kind, boolean inverted, String tag)
+    {
+        checkScope(tag);
+
+        openKinds.push(kind);
+        openNames.push(tag.substring(1));
+
+        if(skipped > 0)
+        {
+            ++skipped;
+            openCompiled.push(false);
+        }
+        else if(kind == ClassTemplate.HAS_PACKAGE || kind == ClassTemplate.JAVADOC || kind == ClassTemplate.MAIN)
+        {
+            int flag = kind == ClassTemplate.HAS_PACKAGE ? 1 : kind == ClassTemplate.JAVADOC ? 2 : 4;
+            if(((variant & flag) != 0) == inverted)
+            {
+                skipped = 1;
+            }
+            openCompiled.push(false);
+        }
+        else
+        {
+            TemplateSection section = new TemplateSection(kind);
+            open.peek().items.add(section);
+            open.push(section);
+            openCompiled.push(true);
+        }
+    }
+
+    /**
+     * Closes section
+     *
+     * @param tag text of closing tag
+     */
+    void closeSection(String tag)
+    {
+        if(openNames.isEmpty() || !openNames.peek().equals(tag.substring(1)))
+        {
+            throw new IllegalArgumentException("unexpected {{" + tag + "}}");
+        }
+
+        openKinds.pop();
+        openNames.pop();
+
+        if(openCompiled.pop())
+        {
+            open.pop();
+        }
+        else
+        {
+            skipped = Math.max(0, skipped - 1);
+        }
+    }
+
+    /**
+     * Gets compiled operations, compiles template when called first time
+     *
+     * @return operations and their arguments
+     * @throws IllegalArgumentException if some section is not closed
+     */
+    int[] code()
+    {
+        if(!openNames.isEmpty())
+        {
+            throw new IllegalArgumentException("section {{#" + openNames.peek() + "}} is not closed");
+        }
+
+        if(code.isEmpty())
+        {
+            String rest = emit(root.items, "");
+            if(!rest.isEmpty())
+            {
+                add(ClassTemplate.LITERAL, 0, rest, "");
+            }
+        }
+
+        int[] result = new int[code.size()];
+        for(int i = 0; i < result.length; ++i)
+        {
+            result[i] = code.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Gets bytes of literals
+     *
+     * @return UTF-8 bytes of literal parts of template
+     */
+    byte[][] literals()
+    {
+        return literals.toArray(new byte[0][]);
+    }
+
+    /**
+     * Gets descriptions of sections without other sections inside
+     *
+     * @return descriptions of flat sections, see {@link ClassTemplate}
+     */
+    int[][] flats()
+    {
+        return flats.toArray(new int[0][]);
+    }
+
+    /**
+     * Adds operations of items of section. Literal text is carried to next operation, text right after section
+     * is written by section itself, so it's fused with text on every path through section.
+     *
+     * @param items literals, slots and sections
+     * @param pending literal text written before items
+     * @return literal text after last operation, not written yet
+     */
+    private String emit(List<Object> items, String pending)
+    {
+        for(int i = 0; i < items.size(); ++i)
+        {
+            Object item = items.get(i);
+
+            if(item instanceof String)
+            {
+                pending += item;
+            }
+            else if(item instanceof Integer)
+            {
+                add((Integer) item, 0, pending, "");
+                pending = "";
+            }
+            else
+            {
+                String after = i + 1 < items.size() && items.get(i + 1) instanceof String ? (String) items.get(++i) : "";
+                emitSection((TemplateSection) item, pending, after);
+                pending = "";
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Adds operations of section
+     *
+     * @param section section to add
+     * @param before literal text written before section
+     * @param after literal text written after section
+     */
+    private void emitSection(TemplateSection section, String before, String after)
+    {
+        List<Object> items = section.items;
+        String head = !items.isEmpty() && items.get(0) instanceof String ? (String) items.get(0) : "";
+        List<Object> body = items.subList(head.isEmpty() ? 0 : 1, items.size());
+        int kind = section.kind;
+
+        if(section.isFlat())
+        {
+            ArrayList<Integer> flat = new ArrayList<>();
+            String text = "";
+            for(Object item : body)
+            {
+                if(item instanceof String)
+                {
+                    text += item;
+                }
+                else
+                {
+                    if(flat.size() > 0)
+                    {
+                        flat.add(literal(text));
+                    }
+                    flat.add((Integer) item);
+                    text = "";
+                }
+            }
+
+            int[] description = new int[ClassTemplate.FLAT_SLOTS + flat.size()];
+            description[ClassTemplate.FLAT_KIND] = kind;
+            description[ClassTemplate.FLAT_SKIPPED] = literal(before + after);
+            description[ClassTemplate.FLAT_ENTERED] = literal(before + head);
+            description[ClassTemplate.FLAT_REPEATED] = literal(text + head);
+            description[ClassTemplate.FLAT_LEFT] = literal(text + after);
+            for(int i = 0; i < flat.size(); ++i)
+            {
+                description[ClassTemplate.FLAT_SLOTS + i] = flat.get(i);
+            }
+
+            flats.add(description);
+            add(ClassTemplate.FLAT, flats.size() - 1, "", "");
+            return;
+        }
+
+        int start = code.size();
+        add(kind, 0, before + head, before + after);
+        String tail = emit(body, "");
+
+        if(kind == ClassTemplate.FIELDS || kind == ClassTemplate.METHODS || kind == ClassTemplate.PARAMS)
+        {
+            add(kind - ClassTemplate.FIELDS + ClassTemplate.END_FIELDS, start + ClassTemplate.OPERATION_SIZE, tail + head, tail + after);
+        }
+        else if(!(tail + after).isEmpty())
+        {
+            add(ClassTemplate.LITERAL, 0, tail + after, "");
+        }
+        code.set(start + 1, code.size());
+    }
+
+    /**
+     * Adds operation with its literals
+     *
+     * @param operation operation to add
+     * @param argument argument of operation
+     * @param literal first literal of operation, empty if there is none
+     * @param other second literal of operation, empty if there is none
+     */
+    private void add(int operation, int argument, String literal, String other)
+    {
+        code.add(operation);
+        code.add(argument);
+        code.add(literal(literal));
+        code.add(literal(other));
+    }
+
+    /**
+     * Adds literal text
+     *
+     * @param text literal text
+     * @return index of literal, -1 if text is empty
+     */
+    private int literal(String text)
+    {
+        if(text.isEmpty())
+        {
+            return -1;
+        }
+        literals.add(text.getBytes(StandardCharsets.UTF_8));
+        return literals.size() - 1;
+    }
+    /**
+     * Checks if tag is placed inside section it needs. Field and method sections can't be nested in repeated sections
+     * and arg section has to be placed in method section, because they share indexes of current field, method and arg.
+     *
+     * @param tag text of tag
+     * @throws IllegalArgumentException if tag is misplaced
+     */
+    private void checkScope(String tag)
+    {
+        boolean inFields = openKinds.contains(ClassTemplate.FIELDS);
+        boolean inMethods = openKinds.contains(ClassTemplate.METHODS);
+        boolean inParams = openKinds.contains(ClassTemplate.PARAMS);
+
+        switch(tag.replaceFirst("^[#^]", ""))
+        {
+            case "field":
+                require(inFields, tag, "{{#fields}}");
+                break;
+            case "signature":
+            case "returnType":
+            case "returns":
+                require(inMethods, tag, "{{#methods}}");
+                break;
+            case "params":
+                require(inMethods && !inParams, tag, "{{#methods}} and outside {{#params}}");
+                break;
+            case "paramType":
+            case "paramName":
+                require(inParams, tag, "{{#params}}");
+                break;
+            case "fields":
+            case "methods":
+                if(inFields || inMethods)
+                {
+                    throw new IllegalArgumentException("{{" + tag + "}} can't be placed inside another repeated section");
+                }
+                break;
+        }
+    }
+
+    /**
+     * Throws exception when tag is misplaced
+     *
+     * @param placed true if tag is placed correctly
+     * @param tag text of tag
+     * @param place description of correct place of tag
+     * @throws IllegalArgumentException if tag is misplaced
+     */
+    private static void require(boolean placed, String tag, String place)
+    {
+        if(!placed)
+        {
+            throw new IllegalArgumentException("{{" + tag + "}} has to be placed inside " + place);
+        }
+    }
+}
+
+/**
+ * Section of template read by {@link TemplateCompiler}, with literal text, slots and sections inside
+ */
+class TemplateSection
+{
+    /**
+     * kind of section, -1 for whole template
+     */
+    final int kind;
+
+    /**
+     * literal text as String, slots as Integer kind and sections inside, adjacent texts are merged
+     */
+    final ArrayList<Object> items = new ArrayList<>();
+
+    /**
+     * Constructor of TemplateSection
+     *
+     * @param kind kind of section, -1 for whole template
+     */
+    TemplateSection(int kind)
+    {
+        this.kind = kind;
+    }
+
+    /**
+     * Adds literal text, merged with text added right before it
+     *
+     * @param text literal text
+     */
+    void addText(String text)
+    {
+        int last = items.size() - 1;
+        if(last >= 0 && items.get(last) instanceof String)
+        {
+            items.set(last, items.get(last) + text);
+        }
+        else
+        {
+            items.add(text);
+        }
+    }
+
+    /**
+     * Checks if section holds no other sections, so it can be rendered by one step
+     *
+     * @return true if there are only literals and slots inside
+     */
+    boolean isFlat()
+    {
+        for(Object item : items)
+        {
+            if(item instanceof TemplateSection)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,713 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Policy that makes files written by {@link FileSink} survive crash of process or machine.
+ * Without policy files are written in place and left to operating system, so crash can leave half-written classes.
+ * <p>
+ * Atomic policy writes every class to temporary file next to it, flushes it to disk, renames it over class file
+ * and flushes directory holding it, so class file holds old or new content, never part of it. Directories above it
+ * are flushed once per run. Flushing every file is slow on large runs.
+ * <p>
+ * Group policy writes classes to temporary files without flushing and commits them in groups of N files,
+ * or of files written in T milliseconds since previous commit: flushes all files of group, renames them over
+ * class files and flushes their directories, so renames are on disk too. Files of one group are flushed
+ * by several threads at once, so file system joins their flushes in few journal commits and disk handles them
+ * together, whole group costs much less than flushing its files one after another.
+ * Group is committed by write that fills it or by timer when T milliseconds passed, last group is committed
+ * when sink is closed.
+ * <p>
+ * Temporary files are named like class file followed by ".tmp-", id of run and number. Every run keeps journal
+ * ".durability-" followed by its id in root, listing directories it wrote temporary files to, locked while run
+ * goes on. When run starts, it deletes temporary files listed by journals that aren't locked anymore, which were
+ * left by runs that crashed, and leaves files of runs still going in the same root alone, like other requests
+ * of {@link GeneratorDaemon} or other shards. Finished run deletes its journal.
+ * <p>
+ * Failure to flush directory is reported, except on Windows, which can't open directories and keeps renames durable
+ * on its own.
+ */
+public class DurabilityPolicy
+{
+    /**
+     * default number of files committed together
+     */
+    static final int DEFAULT_GROUP_FILES = 1000;
+
+    /**
+     * default time in milliseconds after which written files are committed even if group isn't full
+     */
+    static final long DEFAULT_GROUP_MILLIS = 1000;
+
+    /**
+     * added to name of class file to get name of temporary file, followed by number
+     */
+    private static final String TEMP_SUFFIX = ".tmp-";
+
+    /**
+     * start of name of journal in root, followed by id of run
+     */
+    private static final String JOURNAL_PREFIX = ".durability-";
+
+    /**
+     * number of threads flushing files of group at once
+     */
+    private static final int FLUSH_THREADS = 16;
+
+    /**
+     * Determines if directories can't be flushed, because system can't open them
+     */
+    private static final boolean WINDOWS = System.getProperty("os.name", "").startsWith("Windows");
+
+    /**
+     * directory that classes are generated in, directories up to it are flushed
+     */
+    private Path root;
+
+    /**
+     * number of files committed together, 0 if every file is committed on its own
+     */
+    final int groupFiles;
+
+    /**
+     * time in milliseconds after which written files are committed even if group isn't full
+     */
+    final long groupMillis;
+
+    /**
+     * number of last temporary file, so every write has its own temporary file
+     */
+    private AtomicLong tempFiles = new AtomicLong();
+
+    /**
+     * id of run, part of names of its temporary files and journal
+     */
+    private String run = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+
+    /**
+     * journal of run, locked until policy is closed, null until policy is started or if journal couldn't be created
+     */
+    private FileChannel journal;
+
+    /**
+     * Determines if policy was started, guarded by this
+     */
+    private boolean started = false;
+
+    /**
+     * directories already listed in journal
+     */
+    private ConcurrentHashMap<Path, Boolean> journalDirectories = new ConcurrentHashMap<>();
+
+    /**
+     * temporary files waiting for commit by class file they replace, in order of writing
+     */
+    private LinkedHashMap<Path, Path> pending = new LinkedHashMap<>();
+
+    /**
+     * time of previous commit, from System.nanoTime
+     */
+    private long lastCommit = System.nanoTime();
+
+    /**
+     * held during commit, so groups are renamed in order they were taken
+     */
+    private final Object commitLock = new Object();
+
+    /**
+     * Determines if commit by timer is waiting to run, guarded by this
+     */
+    private boolean timerScheduled = false;
+
+    /**
+     * Determines if commit by timer failed, so sink reports it when it's closed
+     */
+    private volatile boolean timerFailed = false;
+
+    /**
+     * directories above class files that were already flushed by atomic policy, so they are flushed once per run
+     */
+    private ConcurrentHashMap<Path, Boolean> flushedDirectories = new ConcurrentHashMap<>();
+
+    /**
+     * threads that flush files of group at once and run commits by timer, created when policy is started,
+     * null for atomic policy
+     */
+    private ScheduledThreadPoolExecutor flushers;
+
+    /**
+     * Constructor of DurabilityPolicy
+     *
+     * @param root directory that classes are generated in
+     * @param groupFiles number of files committed together, 0 if every file should be committed on its own
+     * @param groupMillis time in milliseconds after which written files are committed even if group isn't full
+     */
+    DurabilityPolicy(Path root, int groupFiles, long groupMillis)
+    {
+        this.root = root.toAbsolutePath();
+        this.groupFiles = groupFiles;
+        this.groupMillis = groupMillis;
+    }
+
+    /**
+     * Reads policy given as "atomic", "group", "group:N" or "group:N:T"
+     *
+     * @param text name of policy, with number of files and time in milliseconds for group policy
+     * @param root directory that classes are generated in
+     * @return policy or null if text is not valid policy
+     */
+    static DurabilityPolicy parse(String text, Path root)
+    {
+        if(text.equals("atomic"))
+        {
+            return new DurabilityPolicy(root, 0, 0);
+        }
+        if(!text.matches("group(:[1-9][0-9]{0,8}(:[0-9]{1,9})?)?"))
+        {
+            return null;
+        }
+
+        String[] parts = text.split(":");
+        int files = parts.length > 1 ? Integer.parseInt(parts[1]) : DEFAULT_GROUP_FILES;
+        long millis = parts.length > 2 ? Long.parseLong(parts[2]) : DEFAULT_GROUP_MILLIS;
+        return new DurabilityPolicy(root, files, millis);
+    }
+
+    /**
+     * Writes class file following policy. With group policy file gets its content when its group is committed.
+     * Safe to call from several threads, as long as the same file isn't written by two threads at once.
+     *
+     * @param file class file
+     * @param content bytes to write, buffer is read to its limit
+     * @return true if file was written, false if it or group it committed couldn't be written
+     */
+    public boolean write(Path file, ByteBuffer content)
+    {
+        Path temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX + run + "-" + tempFiles.incrementAndGet());
+        if(!journal(temp.toAbsolutePath().getParent()))
+        {
+            return false;
+        }
+
+        if(groupFiles == 0)
+        {
+            return FileHandler.writeFile(temp, content, true) && rename(temp, file) && forceDirectories(file);
+        }
+
+        if(!FileHandler.writeFile(temp, content))
+        {
+            return false;
+        }
+
+        Path replaced;
+        boolean full;
+        boolean startTimer;
+        synchronized(this)
+        {
+            replaced = pending.put(file, temp);
+            full = pending.size() >= groupFiles || System.nanoTime() - lastCommit >= groupMillis * 1000000;
+            startTimer = !full && !timerScheduled;
+            timerScheduled |= startTimer;
+        }
+
+        if(startTimer)
+        {
+            scheduleCommit();
+        }
+        if(replaced != null && !delete(replaced))
+        {
+            return false;
+        }
+        return !full || commit();
+    }
+
+    /**
+     * Schedules commit by timer at time when T milliseconds pass since previous commit
+     */
+    private void scheduleCommit()
+    {
+        long delay;
+        synchronized(this)
+        {
+            delay = lastCommit + groupMillis * 1000000 - System.nanoTime();
+        }
+
+        try
+        {
+            flushers.schedule(this::commitOnTime, Math.max(0, delay), TimeUnit.NANOSECONDS);
+        }
+        catch(RejectedExecutionException e)
+        {
+            // policy is closed, close committed waiting files
+        }
+    }
+
+    /**
+     * Commits waiting files if T milliseconds passed since previous commit, otherwise waits until they pass.
+     * Runs on timer, so files are committed in time even when nothing is written anymore.
+     */
+    private void commitOnTime()
+    {
+        boolean due;
+        synchronized(this)
+        {
+            if(pending.isEmpty())
+            {
+                timerScheduled = false;
+                return;
+            }
+            due = System.nanoTime() - lastCommit >= groupMillis * 1000000;
+            timerScheduled = !due;
+        }
+
+        if(!due)
+        {
+            scheduleCommit();
+        }
+        else if(!commit())
+        {
+            timerFailed = true;
+        }
+    }
+
+    /**
+     * Commits files written since previous commit: flushes them, renames them over class files
+     * and flushes directories holding them
+     *
+     * @return true if all files were committed, false if not
+     */
+    public boolean commit()
+    {
+        synchronized(commitLock)
+        {
+            LinkedHashMap<Path, Path> group;
+            synchronized(this)
+            {
+                group = pending;
+                pending = new LinkedHashMap<>();
+                lastCommit = System.nanoTime();
+            }
+
+            if(group.isEmpty())
+            {
+                return true;
+            }
+
+            GeneratorMetrics metrics = GeneratorMetrics.current;
+            long start = metrics != null ? System.nanoTime() : 0;
+
+            HashSet<Path> directories = new HashSet<>();
+            boolean committed = forceAll(group.values());
+
+            for(Map.Entry<Path, Path> file : group.entrySet())
+            {
+                committed = rename(file.getValue(), file.getKey()) && committed;
+
+                Path directory = file.getKey().toAbsolutePath().getParent();
+                while(directory != null && directory.startsWith(root) && directories.add(directory))
+                {
+                    directory = directory.getParent();
+                }
+            }
+
+            for(Path directory : directories)
+            {
+                committed = forceDirectory(directory) && committed;
+            }
+
+            if(metrics != null)
+            {
+                metrics.stage("commit", "ns").since(start);
+                metrics.stage("commit.files", "files").record(group.size());
+            }
+            return committed;
+        }
+    }
+
+    /**
+     * Commits files that are still waiting and stops flushing threads, called when sink is closed.
+     * Journal is deleted if all files were committed, otherwise it's left for next run, which deletes files left behind.
+     *
+     * @return true if all files were committed, including ones committed by timer, false if not
+     */
+    public boolean close()
+    {
+        boolean committed = commit();
+        if(flushers != null)
+        {
+            flushers.shutdown();
+        }
+        committed = committed && !timerFailed;
+
+        synchronized(this)
+        {
+            if(journal != null)
+            {
+                Path file = root.resolve(JOURNAL_PREFIX + run);
+                if(committed)
+                {
+                    delete(file);
+                }
+                close(journal);
+                journal = null;
+            }
+        }
+        return committed;
+    }
+
+    /**
+     * Starts run: starts flushing threads of group policy, deletes temporary files left by runs that crashed
+     * in the same root and creates journal of this run.
+     * Called before first file is written, by {@link #write} if it wasn't called before.
+     * Journal that can't be created is reported, files are still written following policy then,
+     * only files left by crash of this run aren't deleted by next one.
+     *
+     * @return number of deleted temporary files, or -1 if journal couldn't be created
+     */
+    public synchronized long start()
+    {
+        if(started)
+        {
+            return 0;
+        }
+        started = true;
+
+        if(groupFiles > 0)
+        {
+            flushers = new ScheduledThreadPoolExecutor(FLUSH_THREADS, task ->
+            {
+                Thread thread = new Thread(task, "durability-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flushers.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        }
+
+        long deleted = 0;
+        try
+        {
+            Files.createDirectories(root);
+
+            // journal is locked under another name, so other runs never find it unlocked
+            Path file = root.resolve(JOURNAL_PREFIX + run);
+            Path created = root.resolve(".new" + JOURNAL_PREFIX + run);
+            FileChannel channel = FileChannel.open(created, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            try
+            {
+                channel.lock();
+                Files.move(created, file, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch(Exception e)
+            {
+                close(channel);
+                delete(created);
+                throw e;
+            }
+            journal = channel;
+
+            try(DirectoryStream<Path> journals = Files.newDirectoryStream(root, JOURNAL_PREFIX + "*"))
+            {
+                for(Path other : journals)
+                {
+                    if(!other.equals(file))
+                    {
+                        deleted += deleteAbandoned(other);
+                    }
+                }
+            }
+            return deleted;
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * Adds directory of temporary file to journal of run, if it isn't listed there already.
+     * Journal is flushed to disk, so temporary files left by crash of machine are found too.
+     *
+     * @param directory directory holding temporary file
+     * @return true if directory is listed in journal or there is no journal, false if journal couldn't be written
+     */
+    private boolean journal(Path directory)
+    {
+        if(journalDirectories.containsKey(directory))
+        {
+            return true;
+        }
+
+        synchronized(this)
+        {
+            if(!started)
+            {
+                start();
+            }
+            if(journal == null || journalDirectories.containsKey(directory))
+            {
+                return true;
+            }
+
+            try
+            {
+                ByteBuffer line = ByteBuffer.wrap((directory + "\n").getBytes(StandardCharsets.UTF_8));
+                while(line.hasRemaining())
+                {
+                    journal.write(line);
+                }
+                journal.force(false);
+                journalDirectories.put(directory, Boolean.TRUE);
+                return true;
+            }
+            catch(Exception e)
+            {
+                e.printStackTrace();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Deletes temporary files listed by journal of another run and journal itself, if run isn't going anymore.
+     * Run that goes on holds lock of its journal, in this or other process.
+     *
+     * @param file journal of other run
+     * @return number of deleted temporary files
+     * @throws IOException if journal or directories listed by it can't be read
+     */
+    private long deleteAbandoned(Path file) throws IOException
+    {
+        String otherRun = file.getFileName().toString().substring(JOURNAL_PREFIX.length());
+        long deleted = 0;
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            FileLock lock;
+            try
+            {
+                lock = channel.tryLock();
+            }
+            catch(OverlappingFileLockException e)
+            {
+                lock = null;
+            }
+            if(lock == null)
+            {
+                return 0;
+            }
+
+            ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+            while(content.hasRemaining() && channel.read(content) >= 0)
+            {
+                // reads whole journal
+            }
+
+            for(String directory : new String(content.array(), 0, content.position(), StandardCharsets.UTF_8).split("\n"))
+            {
+                if(directory.isEmpty())
+                {
+                    continue;
+                }
+
+                try(DirectoryStream<Path> temps = Files.newDirectoryStream(root.resolve(directory), "*" + TEMP_SUFFIX + otherRun + "-*"))
+                {
+                    for(Path temp : temps)
+                    {
+                        deleted += delete(temp) ? 1 : 0;
+                    }
+                }
+                catch(NoSuchFileException e)
+                {
+                    // directory was deleted since
+                }
+            }
+        }
+        catch(NoSuchFileException e)
+        {
+            // journal was deleted by run that finished or by another run that started
+            return deleted;
+        }
+
+        delete(file);
+        return deleted;
+    }
+
+    /**
+     * Flushes content of files to disk, several files at once, so file system can join flushes in one journal commit
+     *
+     * @param files files to flush
+     * @return true if all files were flushed, false if not
+     */
+    private boolean forceAll(Collection<Path> files)
+    {
+        ArrayList<Future<Boolean>> flushes = new ArrayList<>(files.size());
+        for(Path file : files)
+        {
+            flushes.add(flushers.submit(() -> force(file)));
+        }
+
+        boolean flushed = true;
+        for(Future<Boolean> flush : flushes)
+        {
+            try
+            {
+                flushed = flush.get() && flushed;
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            catch(Exception e)
+            {
+                e.printStackTrace();
+                flushed = false;
+            }
+        }
+        return flushed;
+    }
+
+    /**
+     * Flushes content of file to disk
+     *
+     * @param file file to flush
+     * @return true if file was flushed, false if not
+     */
+    private static boolean force(Path file)
+    {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+        {
+            channel.force(true);
+            return true;
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Flushes directory holding class file after rename, and once per run every directory above it up to root,
+     * so directories created for class are on disk too
+     *
+     * @param file class file
+     * @return true if directories were flushed, false if not
+     */
+    private boolean forceDirectories(Path file)
+    {
+        Path directory = file.toAbsolutePath().getParent();
+        boolean flushed = forceDirectory(directory);
+
+        for(Path parent = directory.getParent(); parent != null && parent.startsWith(root); parent = parent.getParent())
+        {
+            flushed = flushedDirectories.computeIfAbsent(parent, key -> forceDirectory(key) ? Boolean.TRUE : null) != null && flushed;
+        }
+        return flushed;
+    }
+
+    /**
+     * Flushes entries of directory to disk. Windows can't open directories, its file systems keep renames
+     * durable on their own, so failure is ignored there.
+     *
+     * @param directory directory to flush
+     * @return true if directory was flushed or system can't flush directories, false if not
+     */
+    private static boolean forceDirectory(Path directory)
+    {
+        try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ))
+        {
+            channel.force(true);
+            return true;
+        }
+        catch(IOException e)
+        {
+            if(WINDOWS)
+            {
+                return true;
+            }
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Renames temporary file over class file in one step
+     *
+     * @param temp temporary file
+     * @param file class file
+     * @return true if file was renamed, false if not
+     */
+    private static boolean rename(Path temp, Path file)
+    {
+        try
+        {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Closes journal, which releases its lock
+     *
+     * @param channel journal to close
+     */
+    private static void close(FileChannel channel)
+    {
+        try
+        {
+            channel.close();
+        }
+        catch(IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Deletes temporary file replaced by later write of the same class, or left by crash, or finished journal
+     *
+     * @param temp temporary file
+     * @return true if file doesn't exist anymore
+     */
+    private static boolean delete(Path temp)
+    {
+        try
+        {
+            Files.deleteIfExists(temp);
+            return true;
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+    }
+}
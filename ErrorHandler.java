@@ -1,161 +1,478 @@
-import java.io.FileOutputStream;
-
-/**
- * Class that handles error array using chain of rasponsibilities
- */
-public class ErrorHandler
-{
-    /**
-     * Checks if errors occurred and writes eventual errors to file
-     *
-     * @param errors array of boolean values of occurred errors
-     * @param outputFileName file name to write errors to
-     * @return true if errors occurred false if not
-     */
-    public static boolean handleErrors(boolean[] errors, String outputFileName)
-    {
-        Error first = new defaultError("Input file don't exist", 0);
-        first.add(new defaultError("Not enough arguments to launch", 1));
-        first.add(new defaultError("Too much arguments", 2));
-
-        FileOutputStream outStream;
-
-        try
-        {
-            outStream = new FileOutputStream(outputFileName);
-            return first.handleError(errors, outStream);
-        }
-        catch(Exception e)
-        {
-            e.printStackTrace();
-            return true;
-        }
-    }
-
-    /**
-     * Test method for this class
-     *
-     * @param args cmd args
-     */
-    public static void main(String[] args)
-    {
-        boolean[] errors = {true, false, false};
-        String outputFileName = "JavaGeneratorErrors.txt";
-        System.out.println(handleErrors(errors, outputFileName));
-    }
-}
-
-/**
- * Interface for classes that want to connect to chain of responsibilities
- */
-interface Error
-{
-    /**
-     * Method adds Error object to the end of chain
-     *
-     * @param errToAdd new Error object that we want to add to the end of chain
-     */
-    void add(Error errToAdd);
-
-    /**
-     * handles checking for errors
-     *
-     * @param errors boolean array that we want to operate on
-     * @param outputFile file that we want to write errors
-     * @return true if errors occurred false if not
-     */
-    boolean handleError(boolean[] errors, FileOutputStream outputFile);
-}
-
-/**
- * Class implements default add method along with handleNext method that helps in creating handleError method in derived classes
- */
-abstract class AddErrorHandlerToChain implements Error
-{
-    /**
-     * holds reference to next Error
-     */
-    Error nextErr;
-
-    public void add(Error errToAdd)
-    {
-        if(nextErr != null)
-        {
-            nextErr.add(errToAdd);
-        }
-        else
-        {
-            nextErr = errToAdd;
-        }
-    }
-
-    /**
-     * Method checks for end of chain
-     *
-     * @param errors boolean array that we want to operate on
-     * @param outputFile file that we want to write errors
-     * @return null if end of chain, or recursive call of next handleError if it's not end of chain
-     */
-    protected boolean handleNext(boolean[] errors, FileOutputStream outputFile)
-    {
-        if(nextErr != null)
-        {
-            return nextErr.handleError(errors, outputFile);
-        }
-        else
-        {
-            return false;
-        }
-    }
-}
-
-/**
- * Default error class
- */
-class defaultError extends AddErrorHandlerToChain
-{
-    /**
-     * what should be written to file if error occurs
-     */
-    private String output;
-
-    /**
-     * index of error in errors array
-     */
-    private int errorIndex;
-
-    /**
-     * Constructor of defaultError
-     *
-     * @param output what should be written to file if error occurs
-     * @param errorIndex index of error in errors array
-     */
-    defaultError(String output, int errorIndex)
-    {
-        this.output = output;
-        this.errorIndex = errorIndex;
-    }
-
-    /**
-     * Checks for one particular error
-     *
-     * @param errors boolean array that we want to operate on
-     * @param outputFile file that we want to write errors
-     * @return true if errors occurred false if not
-     */
-    public boolean handleError(boolean[] errors, FileOutputStream outputFile)
-    {
-        if(errors[errorIndex])
-        {
-            try{outputFile.write(output.getBytes());}
-            catch(Exception e){e.printStackTrace();}
-
-            handleNext(errors, outputFile);
-            return true;
-        }
-        else
-        {
-            return handleNext(errors, outputFile);
-        }
-    }
-}
\ No newline at end of file
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Class that collects diagnostics of whole run, like wrong arguments or spec lines that couldn't be parsed,
+ * and writes them to error file in batches. Safe to use from several parsing threads at once.
+ * Only first diagnostics up to limit are written, the rest are only counted. In fail fast mode generation
+ * should stop after first diagnostic, see {@link #shouldStop()}.
+ * Error file is created only when first batch is written, so run without errors doesn't leave it behind.
+ * Every batch is sorted by line before it's written and batches are written in order they were filled,
+ * so diagnostics reported by several threads come out in order of lines, apart from lines straddling two batches.
+ */
+public class ErrorHandler
+{
+    /**
+     * default name of error file
+     */
+    static final String DEFAULT_FILE = "JavaGeneratorErrors.txt";
+
+    /**
+     * default number of diagnostics written to error file
+     */
+    static final int DEFAULT_LIMIT = 1000;
+
+    /**
+     * number of diagnostics kept in memory before they are written
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * text that chain of handlers puts in place of package, it's not part of spec line
+     */
+    private static final String CLASS_NAME_MARK = "%classname%=";
+
+    /**
+     * end of last line of error file that tells how many diagnostics were over limit
+     */
+    private static final String MORE_ERRORS = " more errors were not reported";
+
+    /**
+     * order of diagnostics in batch: by line and column, diagnostics not tied to line go last, since they are
+     * reported before lines are read or after all of them
+     */
+    private static final Comparator<Diagnostic> LINE_ORDER = Comparator
+            .comparingLong((Diagnostic diagnostic) -> diagnostic.line > 0 ? diagnostic.line : Long.MAX_VALUE)
+            .thenComparingInt(diagnostic -> diagnostic.column);
+
+    /**
+     * error file
+     */
+    private Path file;
+
+    /**
+     * number of diagnostics written to error file
+     */
+    private int limit;
+
+    /**
+     * Determines if generation should stop after first diagnostic
+     */
+    private boolean failFast;
+
+    /**
+     * diagnostics waiting to be written
+     */
+    private ArrayList<Diagnostic> batch = new ArrayList<>();
+
+    /**
+     * number of all reported diagnostics, including ones over limit
+     */
+    private AtomicLong count = new AtomicLong();
+
+    /**
+     * number of diagnostics over limit, that were only counted
+     */
+    private AtomicLong unreported = new AtomicLong();
+
+    /**
+     * writer of error file, null until first batch is written
+     */
+    private BufferedWriter writer;
+
+    /**
+     * Determines if error file couldn't be written
+     */
+    private boolean writeFailed;
+
+    /**
+     * lock held while error file is written, so threads can fill next batch meanwhile
+     */
+    private final Object writerLock = new Object();
+
+    /**
+     * number of batches taken to be written, guarded by this
+     */
+    private long filledBatches = 0;
+
+    /**
+     * number of batches already written, guarded by writerLock
+     */
+    private long writtenBatches = 0;
+
+    /**
+     * Constructor of ErrorHandler
+     *
+     * @param file error file
+     * @param limit number of diagnostics written to error file
+     * @param failFast true if generation should stop after first diagnostic
+     */
+    public ErrorHandler(Path file, int limit, boolean failFast)
+    {
+        this.file = file;
+        this.limit = limit;
+        this.failFast = failFast;
+    }
+
+    /**
+     * Reports diagnostic, batch is written to file when it's full
+     *
+     * @param diagnostic diagnostic to report
+     */
+    public void report(Diagnostic diagnostic)
+    {
+        if(count.incrementAndGet() > limit)
+        {
+            unreported.incrementAndGet();
+            return;
+        }
+
+        ArrayList<Diagnostic> full = null;
+        long number = 0;
+
+        synchronized(this)
+        {
+            batch.add(diagnostic);
+            if(batch.size() >= BATCH_SIZE)
+            {
+                full = batch;
+                number = filledBatches++;
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+
+        if(full != null)
+        {
+            full.sort(LINE_ORDER);
+            write(full, number);
+        }
+    }
+
+    /**
+     * Reports error that isn't tied to spec line
+     *
+     * @param reason description of error
+     */
+    public void report(String reason)
+    {
+        report(new Diagnostic(0, 0, reason, null));
+    }
+
+    /**
+     * Checks if line was parsed completely, reports parts of line that couldn't be parsed
+     *
+     * @param lineNumber number of line in spec, starting from 1
+     * @param specLine line of spec
+     * @param options options parsed from line
+     */
+    public void checkLine(long lineNumber, CharSequence specLine, LineGenerationOptions options)
+    {
+        String leftover = options.problem;
+
+        if(!options.hasClassName())
+        {
+            report(new Diagnostic(lineNumber, 1, "Missing class name", specLine.toString()));
+        }
+        else if(leftover != null && !leftover.trim().isEmpty())
+        {
+            String text = leftover.replace(CLASS_NAME_MARK, "").trim();
+            int column = specLine.toString().indexOf(text);
+            report(new Diagnostic(lineNumber, column < 0 ? 0 : column + 1, "Unparsed text", text));
+        }
+    }
+
+    /**
+     * Reports diagnostics read from error files written by other runs, like shards of the same spec.
+     * Diagnostics are reported in order of lines, numbers of diagnostics that were over limit are added up.
+     *
+     * @param files error files, missing ones are skipped
+     * @return true if every existing file was read, false if not
+     */
+    public boolean merge(List<Path> files)
+    {
+        ArrayList<Diagnostic> diagnostics = new ArrayList<>();
+        long overLimit = 0;
+
+        for(Path errorFile : files)
+        {
+            if(!Files.isRegularFile(errorFile))
+            {
+                continue;
+            }
+
+            try(BufferedReader reader = Files.newBufferedReader(errorFile, StandardCharsets.UTF_8))
+            {
+                String line;
+                while((line = reader.readLine()) != null)
+                {
+                    if(line.endsWith(MORE_ERRORS) && line.matches("[0-9]+ .*"))
+                    {
+                        overLimit += Long.parseLong(line.substring(0, line.indexOf(' ')));
+                    }
+                    else
+                    {
+                        diagnostics.add(Diagnostic.parse(line));
+                    }
+                }
+            }
+            catch(Exception e)
+            {
+                e.printStackTrace();
+                return false;
+            }
+        }
+
+        diagnostics.sort(Comparator.comparingLong((Diagnostic diagnostic) -> diagnostic.line).thenComparingInt(diagnostic -> diagnostic.column));
+        for(Diagnostic diagnostic : diagnostics)
+        {
+            report(diagnostic);
+        }
+        count.addAndGet(overLimit);
+        unreported.addAndGet(overLimit);
+        return true;
+    }
+
+    /**
+     * Checks if generation should stop because of reported diagnostics
+     *
+     * @return true if fail fast mode is on and something was reported
+     */
+    public boolean shouldStop()
+    {
+        return failFast && count.get() > 0;
+    }
+
+    /**
+     * Gets number of reported diagnostics, including ones over limit
+     *
+     * @return number of diagnostics
+     */
+    public long count()
+    {
+        return count.get();
+    }
+
+    /**
+     * Gets error file
+     *
+     * @return path of error file
+     */
+    public Path getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Writes batch to error file after all batches filled before it, opens file when it's written first time
+     *
+     * @param diagnostics batch to write
+     * @param number number of batch in order batches were filled
+     */
+    private void write(ArrayList<Diagnostic> diagnostics, long number)
+    {
+        synchronized(writerLock)
+        {
+            boolean interrupted = false;
+            while(writtenBatches != number)
+            {
+                try
+                {
+                    writerLock.wait();
+                }
+                catch(InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+
+            try
+            {
+                if(!writeFailed)
+                {
+                    if(writer == null)
+                    {
+                        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+                    }
+                    for(Diagnostic diagnostic : diagnostics)
+                    {
+                        writer.write(diagnostic.toString());
+                        writer.write('\n');
+                    }
+                }
+            }
+            catch(Exception e)
+            {
+                e.printStackTrace();
+                writeFailed = true;
+            }
+            finally
+            {
+                ++writtenBatches;
+                writerLock.notifyAll();
+                if(interrupted)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes remaining diagnostics along with number of diagnostics over limit and closes error file
+     *
+     * @return true if errors occurred false if not
+     */
+    public boolean close()
+    {
+        if(count.get() == 0)
+        {
+            return false;
+        }
+
+        ArrayList<Diagnostic> rest;
+        long number;
+        synchronized(this)
+        {
+            rest = batch;
+            number = filledBatches++;
+            batch = new ArrayList<>();
+        }
+
+        rest.sort(LINE_ORDER);
+        if(unreported.get() > 0)
+        {
+            rest.add(new Diagnostic(0, 0, unreported.get() + MORE_ERRORS, null));
+        }
+        write(rest, number);
+
+        synchronized(writerLock)
+        {
+            try
+            {
+                if(writer != null)
+                {
+                    writer.close();
+                    writer = null;
+                }
+            }
+            catch(Exception e)
+            {
+                e.printStackTrace();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Test method for this class
+     *
+     * @param args cmd args
+     */
+    public static void main(String[] args)
+    {
+        ErrorHandler errors = new ErrorHandler(Paths.get(DEFAULT_FILE), DEFAULT_LIMIT, false);
+        String line = "pl.agh.Test public void x() garbage a=b";
+
+        errors.report("Input file don't exist");
+        errors.checkLine(1, line, LineHandler.handleLine(new LineGenerationOptions(), line));
+        System.out.println(errors.close());
+    }
+}
+
+/**
+ * One problem found during run
+ */
+class Diagnostic
+{
+    /**
+     * beginning of written diagnostic that holds line number and column
+     */
+    private static final Pattern POSITION = Pattern.compile("Line ([0-9]+)(?:, column ([0-9]+))?: ");
+
+    /**
+     * number of spec line, starting from 1, 0 if problem isn't tied to line
+     */
+    final long line;
+
+    /**
+     * column where problem starts, starting from 1, 0 if it's not known
+     */
+    final int column;
+
+    /**
+     * description of problem
+     */
+    final String reason;
+
+    /**
+     * part of line that caused problem, null if there is none
+     */
+    final String text;
+
+    /**
+     * Constructor of Diagnostic
+     *
+     * @param line number of spec line, 0 if problem isn't tied to line
+     * @param column column where problem starts, 0 if it's not known
+     * @param reason description of problem
+     * @param text part of line that caused problem, null if there is none
+     */
+    Diagnostic(long line, int column, String reason, String text)
+    {
+        this.line = line;
+        this.column = column;
+        this.reason = reason;
+        this.text = text;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder result = new StringBuilder();
+        if(line > 0)
+        {
+            result.append("Line ").append(line);
+            if(column > 0)
+            {
+                result.append(", column ").append(column);
+            }
+            result.append(": ");
+        }
+        result.append(reason);
+        if(text != null)
+        {
+            result.append(": ").append(text);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Reads diagnostic from line of error file, only line number and column are read,
+     * the rest of line is kept as reason so diagnostic is written the same way
+     *
+     * @param text line of error file
+     * @return diagnostic
+     */
+    static Diagnostic parse(String text)
+    {
+        Matcher position = POSITION.matcher(text);
+        if(!position.lookingAt())
+        {
+            return new Diagnostic(0, 0, text, null);
+        }
+
+        long line = Long.parseLong(position.group(1));
+        int column = position.group(2) != null ? Integer.parseInt(position.group(2)) : 0;
+        return new Diagnostic(line, column, text.substring(position.end()), null);
+    }
+}
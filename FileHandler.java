@@ -1,66 +1,184 @@
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.PrintWriter;
-import java.util.Scanner;
-
-/**
- * Class handles file operations
- */
-public class FileHandler
-{
-    /**
-     * Opens file and returns scanner to it
-     *
-     * @param inputFileName file name to open
-     * @return scanner to opened file
-     */
-    public static Scanner getInputFile(String inputFileName)
-    {
-        try
-        {
-            Scanner scan = new Scanner(new File(inputFileName));
-            return scan;
-        }
-        catch(Exception e)
-        {
-            e.printStackTrace();
-            return null;
-        }
-    }
-
-    /**
-     * Method creates dirs
-     *
-     * @param directory path to create
-     */
-    public static void mkDir(String directory)
-    {
-        File dirs = new File(directory);
-        if (!dirs.exists()) {
-            if (dirs.mkdirs()) {
-                System.out.println("Package directories are created!");
-            } else {
-                System.out.println("Failed to create package directories!");
-            }
-        }
-    }
-
-    /**
-     * Opens/Creates file and returns PrintWriter to it
-     *
-     * @param file file name to create or open
-     * @return PrintWriter for opened file
-     */
-    public static PrintWriter openFile(String file)
-    {
-        try
-        {
-            PrintWriter writer = new PrintWriter(file, "UTF-8");
-            return writer;
-        } catch (Exception e)
-        {
-            e.printStackTrace();
-            return null;
-        }
-    }
-}
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Scanner;
+
+/**
+ * Class handles file operations
+ */
+public class FileHandler
+{
+    /**
+     * Opens file and returns scanner to it
+     *
+     * @param inputFileName file name to open
+     * @return scanner to opened file
+     */
+    public static Scanner getInputFile(String inputFileName)
+    {
+        try
+        {
+            Scanner scan = new Scanner(new File(inputFileName));
+            return scan;
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Opens file and returns memory mapped reader of its lines
+     *
+     * @param inputFileName file name to open
+     * @return reader of opened file
+     */
+    public static SpecReader getSpecReader(String inputFileName)
+    {
+        return getSpecReader(inputFileName, null);
+    }
+
+    /**
+     * Opens file and returns memory mapped reader of lines of one shard
+     *
+     * @param inputFileName file name to open
+     * @param shard shard of file to read, null if whole file should be read
+     * @return reader of opened file
+     */
+    public static SpecReader getSpecReader(String inputFileName, SpecShard shard)
+    {
+        try
+        {
+            return SpecReader.open(inputFileName, shard);
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Method creates dirs. Safe to call from several threads for the same directory.
+     *
+     * @param directory path to create
+     */
+    public static void mkDir(String directory)
+    {
+        mkDir(Paths.get(directory));
+    }
+
+    /**
+     * Method creates directory along with its parents. Safe to call from several threads for the same directory.
+     *
+     * @param directory path to create
+     * @return true if directory exists, false if it couldn't be created
+     */
+    public static boolean mkDir(Path directory)
+    {
+        GeneratorMetrics metrics = GeneratorMetrics.current;
+        long start = metrics != null ? System.nanoTime() : 0;
+
+        try
+        {
+            Files.createDirectories(directory);
+            if(metrics != null)
+            {
+                metrics.mkdir.since(start);
+            }
+            return true;
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Opens/Creates file and returns PrintWriter to it
+     *
+     * @param file file name to create or open
+     * @return PrintWriter for opened file
+     */
+    public static PrintWriter openFile(String file)
+    {
+        try
+        {
+            PrintWriter writer = new PrintWriter(file, "UTF-8");
+            return writer;
+        } catch (Exception e)
+        {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Creates/Overwrites file with given content using single FileChannel write
+     *
+     * @param file file name to create or overwrite
+     * @param content bytes to write, buffer is read to its limit
+     * @return true if file was written, false if not
+     */
+    public static boolean writeFile(String file, ByteBuffer content)
+    {
+        return writeFile(Paths.get(file), content);
+    }
+
+    /**
+     * Creates/Overwrites file with given content using single FileChannel write
+     *
+     * @param file path of file to create or overwrite
+     * @param content bytes to write, buffer is read to its limit
+     * @return true if file was written, false if not
+     */
+    public static boolean writeFile(Path file, ByteBuffer content)
+    {
+        return writeFile(file, content, false);
+    }
+
+    /**
+     * Creates/Overwrites file with given content using single FileChannel write
+     *
+     * @param file path of file to create or overwrite
+     * @param content bytes to write, buffer is read to its limit
+     * @param force true if content should be flushed to disk before file is closed
+     * @return true if file was written, false if not
+     */
+    public static boolean writeFile(Path file, ByteBuffer content, boolean force)
+    {
+        GeneratorMetrics metrics = GeneratorMetrics.current;
+        long start = metrics != null ? System.nanoTime() : 0;
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            while(content.hasRemaining())
+            {
+                channel.write(content);
+            }
+            if(force)
+            {
+                channel.force(true);
+            }
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+
+        if(metrics != null)
+        {
+            metrics.write.since(start);
+        }
+        return true;
+    }
+}
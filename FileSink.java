@@ -0,0 +1,165 @@
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sink that writes every class to its own file in package directories
+ */
+public class FileSink implements OutputSink
+{
+    /**
+     * directory that packages are placed in
+     */
+    private Path root;
+
+    /**
+     * manifest of previous run, null if every file should be written
+     */
+    private IncrementalManifest manifest;
+
+    /**
+     * Determines if files generated by previous run from lines that no longer exist should be deleted
+     */
+    private boolean deleteStale;
+
+    /**
+     * stream that report of incremental mode is printed to
+     */
+    private PrintStream console;
+
+    /**
+     * policy that makes written files survive crash, null if files are written in place and left to operating system
+     */
+    private DurabilityPolicy durability;
+
+    /**
+     * package directories already created by this sink, by package path with '/' between directories,
+     * so every directory is created once no matter how many classes it holds
+     */
+    private ConcurrentHashMap<String, Path> directories = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor of FileSink
+     *
+     * @param root directory that packages are placed in
+     * @param manifest manifest of previous run, null if every file should be written
+     * @param deleteStale true if files generated by previous run from lines that no longer exist should be deleted
+     */
+    public FileSink(Path root, IncrementalManifest manifest, boolean deleteStale)
+    {
+        this(root, manifest, deleteStale, System.out);
+    }
+
+    /**
+     * Constructor of FileSink
+     *
+     * @param root directory that packages are placed in
+     * @param manifest manifest of previous run, null if every file should be written
+     * @param deleteStale true if files generated by previous run from lines that no longer exist should be deleted
+     * @param console stream that report of incremental mode is printed to
+     */
+    public FileSink(Path root, IncrementalManifest manifest, boolean deleteStale, PrintStream console)
+    {
+        this(root, manifest, deleteStale, console, null);
+    }
+
+    /**
+     * Constructor of FileSink
+     *
+     * @param root directory that packages are placed in
+     * @param manifest manifest of previous run, null if every file should be written
+     * @param deleteStale true if files generated by previous run from lines that no longer exist should be deleted
+     * @param console stream that report of incremental mode is printed to
+     * @param durability policy that makes written files survive crash, null if files should be written in place
+     */
+    public FileSink(Path root, IncrementalManifest manifest, boolean deleteStale, PrintStream console, DurabilityPolicy durability)
+    {
+        this.durability = durability;
+        this.console = console;
+        this.root = root;
+        this.manifest = manifest;
+        this.deleteStale = deleteStale;
+    }
+
+    /**
+     * Checks if manifest shows that file was generated from the same spec line with the same template
+     * and wasn't changed on disk since then
+     *
+     * @param line LineGenerationOptions object that class would be rendered from
+     * @param specLine line of spec that class was parsed from
+     * @return true if file doesn't have to be rendered nor written, false if it has to be written
+     */
+    @Override
+    public boolean isUpToDate(LineGenerationOptions line, CharSequence specLine)
+    {
+        return manifest != null && manifest.isUpToDate(OutputHandler.entryName(line), specLine);
+    }
+
+    /**
+     * Writes class to file, unless manifest shows that file didn't change
+     *
+     * @param line LineGenerationOptions object that class was rendered from
+     * @param specLine line of spec that class was parsed from
+     * @param content UTF-8 bytes of class
+     * @return true if file was written or didn't have to be written, false if it couldn't be written
+     */
+    public boolean write(LineGenerationOptions line, CharSequence specLine, ByteBuffer content)
+    {
+        String name = OutputHandler.entryName(line);
+        ManifestEntry entry = null;
+
+        if(manifest != null)
+        {
+            entry = manifest.entry(specLine, content);
+            if(manifest.isUpToDate(name, entry))
+            {
+                return true;
+            }
+        }
+
+        Path directory = directories.computeIfAbsent(name.substring(0, name.lastIndexOf('/') + 1), packagePath ->
+        {
+            Path created = line.packageDirectory(root);
+            return FileHandler.mkDir(created) ? created : null;
+        });
+
+        if(directory == null)
+        {
+            return false;
+        }
+
+        Path file = directory.resolve(line.getClassName() + ".java");
+        if(durability != null ? !durability.write(file, content) : !FileHandler.writeFile(file, content))
+        {
+            return false;
+        }
+
+        if(manifest != null)
+        {
+            manifest.written(name, entry);
+        }
+        return true;
+    }
+
+    /**
+     * Commits files that are still waiting if durability policy is set, then removes stale files
+     * and saves manifest if incremental mode is on. Manifest is saved only if all files were committed,
+     * so it never lists content that isn't on disk.
+     *
+     * @return true if files were committed and manifest was saved or there is no manifest, false if not
+     */
+    public boolean close()
+    {
+        boolean committed = durability == null || durability.close();
+
+        if(manifest == null)
+        {
+            return committed;
+        }
+
+        manifest.removeStale(deleteStale);
+        console.println(manifest.report());
+        return committed && manifest.save();
+    }
+}
@@ -0,0 +1,96 @@
+import java.nio.ByteBuffer;
+
+/**
+ * One line of spec passed through stages of {@link GeneratorPipeline}, every stage fills next field.
+ * Subscribers of {@link GeneratorPipeline#publish} get it after render stage, with rendered class or description
+ * of failure.
+ */
+public class GeneratedClass
+{
+    /**
+     * number of line in spec
+     */
+    final long number;
+
+    /**
+     * line of spec
+     */
+    final CharSequence line;
+
+    /**
+     * options parsed from line, null before parse stage
+     */
+    LineGenerationOptions options;
+
+    /**
+     * rendered class, null before render stage
+     */
+    ByteBuffer content;
+
+    /**
+     * description of exception thrown by one of stages, null if line didn't fail
+     */
+    String failure;
+
+    /**
+     * Constructor of GeneratedClass
+     *
+     * @param number number of line in spec
+     * @param line line of spec
+     */
+    GeneratedClass(long number, CharSequence line)
+    {
+        this.number = number;
+        this.line = line;
+    }
+
+    /**
+     * Gets number of line that class was generated from
+     *
+     * @return number of line in spec, starting from 1
+     */
+    public long getLineNumber()
+    {
+        return number;
+    }
+
+    /**
+     * Gets line that class was generated from
+     *
+     * @return line of spec
+     */
+    public CharSequence getSpecLine()
+    {
+        return line;
+    }
+
+    /**
+     * Gets options parsed from line
+     *
+     * @return options of class, null if line failed before it was parsed
+     */
+    public LineGenerationOptions getOptions()
+    {
+        return options;
+    }
+
+    /**
+     * Gets rendered class
+     *
+     * @return read only buffer with UTF-8 bytes of class, null if line failed
+     */
+    public ByteBuffer getContent()
+    {
+        return content != null ? content.asReadOnlyBuffer() : null;
+    }
+
+    /**
+     * Gets description of failure of line
+     *
+     * @return description of exception thrown by one of stages, null if class was generated
+     */
+    public String getFailure()
+    {
+        return failure;
+    }
+}
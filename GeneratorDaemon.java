@@ -0,0 +1,804 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resident generator that takes requests through Unix domain socket or loopback port, so repeated generations
+ * don't pay for JVM startup, class loading and cold JIT. Every request runs with its own {@link UserHandler} on one
+ * of limited number of threads, so several requests can be served at once. Requests that find all threads busy
+ * wait in bounded queue, when queue is full they are refused. Request has to be sent and answer read within
+ * read timeout, so clients that stop talking don't hold threads of daemon.
+ * <p>
+ * Daemon runs generator with rights of its owner, so only owner may send requests. When daemon starts it writes random
+ * token to file readable only by its owner, SOCKET_FILE.token next to socket file or ~/.generator-daemon-N.token
+ * for port N, and every request has to start with that token. Socket file is also made accessible only by its owner.
+ * <p>
+ * Usage:
+ * java GeneratorDaemon SOCKET_FILE|--port=N [--regex-parser] [--template=FILE] [--metrics] [--parse-cache[=N]]
+ * [--read-timeout=SECONDS] starts daemon, switches given here apply to every request and parse cache is shared
+ * by all of them.
+ * java GeneratorDaemon --client SOCKET_FILE|--port=N SPEC_FILE OUT_DIR [switches] sends one request and prints answer,
+ * SPEC_FILE "-" sends lines of standard input inline, they have to be read within read timeout of daemon,
+ * java GeneratorDaemon --client SOCKET_FILE|--port=N metrics|shutdown asks for metrics or stops daemon.
+ * <p>
+ * Protocol is UTF-8 text, one command per line. Request starts with line "TOKEN token" and is ended by line "END":
+ * OUT dir - directory that classes are generated in, created if it doesn't exist
+ * SPEC file - spec file to generate classes from, "-" is refused as daemon would read its own standard input
+ * LINE text - line of spec given inline, used when there is no SPEC, can be repeated
+ * SWITCH switch - switch of {@link UserHandler} like --incremental or --threads=N, can be repeated
+ * METRICS - asks for metrics of all requests as JSON, daemon has to be started with --metrics
+ * SHUTDOWN - stops daemon after requests that are already running
+ * Answer starts with line "OK" or "ERROR", followed by everything generator printed, connection is closed after it.
+ */
+public class GeneratorDaemon
+{
+    /**
+     * switches that change state shared by all requests, they can only be given when daemon starts
+     */
+    private static final String[] DAEMON_SWITCHES = {"--regex-parser", "--template", "--metrics", "--parse-cache"};
+
+    /**
+     * number of requests served at once
+     */
+    private static final int MAX_RUNNING_REQUESTS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * number of requests waiting for free thread, further requests are refused
+     */
+    private static final int MAX_QUEUED_REQUESTS = 64;
+
+    /**
+     * number of random bytes of token
+     */
+    private static final int TOKEN_BYTES = 32;
+
+    /**
+     * seconds that client has to send whole request and read whole answer in
+     */
+    private static long readTimeout = 60;
+
+    /**
+     * channel that requests are accepted from
+     */
+    private ServerSocketChannel server;
+
+    /**
+     * socket file of daemon, null if daemon listens on port
+     */
+    private Path socketFile;
+
+    /**
+     * file holding token of daemon
+     */
+    private Path tokenFile;
+
+    /**
+     * UTF-8 bytes of token that every request has to start with
+     */
+    private byte[] token;
+
+    /**
+     * threads that serve requests
+     */
+    private ExecutorService requests = new ThreadPoolExecutor(MAX_RUNNING_REQUESTS, MAX_RUNNING_REQUESTS, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(MAX_QUEUED_REQUESTS));
+
+    /**
+     * thread that closes connections of clients that don't send request or read answer in time
+     */
+    private ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * Constructor of GeneratorDaemon
+     *
+     * @param server channel that requests are accepted from, already bound
+     * @param socketFile socket file of daemon, null if daemon listens on port
+     * @param tokenFile file holding token of daemon
+     * @param token token that every request has to start with
+     */
+    private GeneratorDaemon(ServerSocketChannel server, Path socketFile, Path tokenFile, String token)
+    {
+        this.server = server;
+        this.socketFile = socketFile;
+        this.tokenFile = tokenFile;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Starts daemon or sends request to it
+     *
+     * @param args arguments passed in cmd
+     */
+    public static void main(String[] args)
+    {
+        if(args.length >= 3 && args[0].equals("--client"))
+        {
+            String[] request = new String[args.length - 2];
+            System.arraycopy(args, 2, request, 0, request.length);
+            System.exit(send(args[1], request) ? 0 : 1);
+        }
+
+        if(args.length < 1 || !readDaemonSwitches(args))
+        {
+            System.out.println("Usage: java GeneratorDaemon SOCKET_FILE|--port=N [--regex-parser] [--template=FILE] [--metrics] [--parse-cache[=N]] [--read-timeout=SECONDS]");
+            System.out.println("       java GeneratorDaemon --client SOCKET_FILE|--port=N SPEC_FILE OUT_DIR [switches]");
+            System.out.println("       java GeneratorDaemon --client SOCKET_FILE|--port=N metrics|shutdown");
+            return;
+        }
+
+        GeneratorDaemon daemon = start(args[0]);
+        if(daemon != null)
+        {
+            System.out.println("Generator daemon listening on " + args[0]);
+            daemon.serve();
+        }
+    }
+
+    /**
+     * Reads switches that apply to every request
+     *
+     * @param args arguments passed in cmd, first one is address
+     * @return true if all switches were correct, false if not
+     */
+    private static boolean readDaemonSwitches(String[] args)
+    {
+        for(int i = 1; i < args.length; ++i)
+        {
+            if(args[i].equals("--regex-parser"))
+            {
+                LineHandler.regexChain = true;
+            }
+            else if(args[i].equals("--metrics"))
+            {
+                GeneratorMetrics.current = new GeneratorMetrics(true);
+            }
+            else if(args[i].equals("--parse-cache"))
+            {
+                LineHandler.parseCache = new ParseCache(ParseCache.DEFAULT_CAPACITY);
+            }
+            else if(args[i].matches("--parse-cache=[1-9][0-9]{0,8}"))
+            {
+                LineHandler.parseCache = new ParseCache(Integer.parseInt(args[i].substring("--parse-cache=".length())));
+            }
+            else if(args[i].matches("--read-timeout=[1-9][0-9]{0,8}"))
+            {
+                readTimeout = Long.parseLong(args[i].substring("--read-timeout=".length()));
+            }
+            else if(args[i].startsWith("--template=") && args[i].length() > "--template=".length())
+            {
+                ClassTemplate template = ClassTemplate.load(args[i].substring("--template=".length()), System.out);
+                if(template == null)
+                {
+                    return false;
+                }
+                OutputHandler.template = template;
+            }
+            else
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds address from argument
+     *
+     * @param address socket file or --port=N for loopback port
+     * @return address of daemon
+     */
+    private static SocketAddress address(String address)
+    {
+        if(address.matches("--port=[0-9]{1,5}"))
+        {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address.substring("--port=".length())));
+        }
+        return UnixDomainSocketAddress.of(address);
+    }
+
+    /**
+     * Finds file holding token of daemon listening on address
+     *
+     * @param address socket file or --port=N for loopback port
+     * @return SOCKET_FILE.token or ~/.generator-daemon-N.token for port N
+     */
+    private static Path tokenFile(String address)
+    {
+        if(address.matches("--port=[0-9]{1,5}"))
+        {
+            return Paths.get(System.getProperty("user.home"), ".generator-daemon-" + address.substring("--port=".length()) + ".token");
+        }
+        return Paths.get(address + ".token");
+    }
+
+    /**
+     * Creates random token and writes it to new file readable only by its owner, file left by previous daemon is replaced
+     *
+     * @param tokenFile file that token is written to
+     * @return created token
+     * @throws IOException if file can't be written
+     */
+    private static String createToken(Path tokenFile) throws IOException
+    {
+        byte[] random = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(random);
+        String token = HexFormat.of().formatHex(random);
+
+        Files.deleteIfExists(tokenFile);
+        try
+        {
+            Files.createFile(tokenFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        catch(UnsupportedOperationException e)
+        {
+            // file system without POSIX permissions, file inherits rights of its directory
+            Files.createFile(tokenFile);
+        }
+
+        Files.write(tokenFile, token.getBytes(StandardCharsets.UTF_8));
+        return token;
+    }
+
+    /**
+     * Lets only owner of socket file connect to it
+     *
+     * @param socketFile socket file of daemon
+     * @throws IOException if permissions can't be set
+     */
+    private static void restrictToOwner(Path socketFile) throws IOException
+    {
+        try
+        {
+            Files.setPosixFilePermissions(socketFile, PosixFilePermissions.fromString("rw-------"));
+        }
+        catch(UnsupportedOperationException e)
+        {
+            // file system without POSIX permissions, token still has to be given
+        }
+    }
+
+    /**
+     * Binds daemon to address, socket and token files left by previous daemon are replaced
+     *
+     * @param address socket file or --port=N for loopback port
+     * @return daemon ready to serve or null if address couldn't be bound
+     */
+    public static GeneratorDaemon start(String address)
+    {
+        try
+        {
+            SocketAddress socketAddress = address(address);
+            Path socketFile = socketAddress instanceof UnixDomainSocketAddress ? ((UnixDomainSocketAddress) socketAddress).getPath() : null;
+            ServerSocketChannel server;
+            if(socketFile != null)
+            {
+                Files.deleteIfExists(socketFile);
+                server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            }
+            else
+            {
+                server = ServerSocketChannel.open();
+            }
+
+            server.bind(socketAddress);
+            if(socketFile != null)
+            {
+                restrictToOwner(socketFile);
+            }
+
+            Path tokenFile = tokenFile(address);
+            return new GeneratorDaemon(server, socketFile, tokenFile, createToken(tokenFile));
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Accepts requests until daemon is shut down, every request is served by one of threads of daemon
+     */
+    public void serve()
+    {
+        try
+        {
+            while(true)
+            {
+                SocketChannel client = server.accept();
+                try
+                {
+                    requests.execute(() -> handle(client));
+                }
+                catch(RejectedExecutionException e)
+                {
+                    refuse(client, "Daemon is busy, try again later");
+                }
+            }
+        }
+        catch(ClosedChannelException e)
+        {
+            // daemon was shut down
+        }
+        catch(IOException e)
+        {
+            e.printStackTrace();
+        }
+
+        requests.shutdown();
+        try
+        {
+            requests.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        deadlines.shutdownNow();
+    }
+
+    /**
+     * Stops accepting requests, requests that are already running are finished
+     */
+    public void shutdown()
+    {
+        try
+        {
+            server.close();
+            if(socketFile != null)
+            {
+                Files.deleteIfExists(socketFile);
+            }
+            Files.deleteIfExists(tokenFile);
+        }
+        catch(IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads request from client, runs it and sends answer.
+     * Request has to be read and answer sent within read timeout, otherwise connection is closed.
+     *
+     * @param client connection of client
+     */
+    private void handle(SocketChannel client)
+    {
+        try(SocketChannel channel = client)
+        {
+            ScheduledFuture<?> deadline = deadline(channel);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            String first = reader.readLine();
+            boolean authorized = authorized(first);
+            DaemonRequest request = authorized ? DaemonRequest.read(reader) : null;
+            if(!deadline.cancel(false) || first == null)
+            {
+                return;
+            }
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            PrintStream console = new PrintStream(buffer, true, StandardCharsets.UTF_8);
+            boolean failed = true;
+            if(authorized)
+            {
+                failed = run(request, console);
+            }
+            else
+            {
+                console.println("Request doesn't start with token of daemon");
+            }
+            console.flush();
+
+            deadline = deadline(channel);
+            OutputStream out = Channels.newOutputStream(channel);
+            out.write((failed ? "ERROR\n" : "OK\n").getBytes(StandardCharsets.UTF_8));
+            buffer.writeTo(out);
+            out.flush();
+            deadline.cancel(false);
+        }
+        catch(AsynchronousCloseException e)
+        {
+            // client didn't send request or read answer within read timeout
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Closes connection after read timeout, unless returned deadline is cancelled first
+     *
+     * @param channel connection of client
+     * @return deadline of connection, cancel fails if connection was already closed
+     */
+    private ScheduledFuture<?> deadline(SocketChannel channel)
+    {
+        return deadlines.schedule(() ->
+        {
+            try
+            {
+                channel.close();
+            }
+            catch(IOException e)
+            {
+                e.printStackTrace();
+            }
+        }, readTimeout, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Checks if first line of request holds token of daemon
+     *
+     * @param line first line of request
+     * @return true if line is "TOKEN token" with token of daemon, false if not
+     */
+    private boolean authorized(String line)
+    {
+        if(line == null || !line.startsWith("TOKEN "))
+        {
+            return false;
+        }
+        return MessageDigest.isEqual(token, line.substring("TOKEN ".length()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Answers ERROR to request that won't be served and closes connection
+     *
+     * @param client connection of client
+     * @param reason reason sent to client
+     */
+    private static void refuse(SocketChannel client, String reason)
+    {
+        try(SocketChannel channel = client)
+        {
+            channel.write(StandardCharsets.UTF_8.encode("ERROR\n" + reason + "\n"));
+        }
+        catch(IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs request
+     *
+     * @param request request to run
+     * @param console stream that generator output is printed to
+     * @return true if errors occurred, false if not
+     */
+    private boolean run(DaemonRequest request, PrintStream console)
+    {
+        if(request.problem != null)
+        {
+            console.println(request.problem);
+            return true;
+        }
+
+        if(request.shutdown)
+        {
+            shutdown();
+            return false;
+        }
+
+        if(request.metrics)
+        {
+            GeneratorMetrics metrics = GeneratorMetrics.current;
+            if(metrics == null)
+            {
+                console.println("Daemon was started without --metrics");
+                return true;
+            }
+            console.print(metrics.toJson());
+            return false;
+        }
+
+        if(request.out == null)
+        {
+            console.println("Request has no OUT directory");
+            return true;
+        }
+
+        if(UserHandler.STANDARD_STREAM.equals(request.spec))
+        {
+            console.println("SPEC " + request.spec + " would read standard input of daemon, send lines inline with LINE");
+            return true;
+        }
+
+        for(String option : request.switches)
+        {
+            for(String daemonSwitch : DAEMON_SWITCHES)
+            {
+                if(option.startsWith(daemonSwitch))
+                {
+                    console.println("Switch " + option + " can only be given when daemon starts");
+                    return true;
+                }
+            }
+
+            if(option.startsWith("--shard") && request.spec == null)
+            {
+                console.println("Switch " + option + " needs SPEC file");
+                return true;
+            }
+
+            if(option.equals("--stdout") || option.equals("--archive=" + UserHandler.STANDARD_STREAM))
+            {
+                console.println("Switch " + option + " can't be used by daemon, classes would be written to its standard output");
+                return true;
+            }
+        }
+
+        Path out = Paths.get(request.out).toAbsolutePath();
+        if(!FileHandler.mkDir(out))
+        {
+            console.println("Couldn't create directory " + out);
+            return true;
+        }
+
+        UserHandler userHandler = new UserHandler(out, console);
+        String[] unknown = userHandler.readSwitches(request.switches.toArray(new String[0]));
+        if(unknown.length > 0)
+        {
+            console.println("Unknown switch " + unknown[0]);
+            return true;
+        }
+
+        boolean failed = request.spec != null ? userHandler.generate(request.spec) : userHandler.generate(new LineListSource(request.lines));
+
+        ParseCache cache = LineHandler.parseCache;
+        if(cache != null)
+        {
+            console.println(cache.report());
+        }
+        return failed;
+    }
+
+    /**
+     * Sends request to daemon and prints answer
+     *
+     * @param address socket file or --port=N for loopback port
+     * @param request spec file and output directory followed by switches, or single command metrics or shutdown
+     * @return true if daemon answered OK, false if not or if token of daemon couldn't be read
+     */
+    private static boolean send(String address, String[] request)
+    {
+        StringBuilder text = new StringBuilder();
+
+        try
+        {
+            text.append("TOKEN ").append(new String(Files.readAllBytes(tokenFile(address)), StandardCharsets.UTF_8).trim()).append('\n');
+        }
+        catch(IOException e)
+        {
+            System.out.println("Couldn't read token of daemon from " + tokenFile(address));
+            return false;
+        }
+
+        if(request.length == 1 && (request[0].equals("metrics") || request[0].equals("shutdown")))
+        {
+            text.append(request[0].toUpperCase()).append('\n');
+        }
+        else if(request.length >= 2)
+        {
+            if(!request[0].equals(UserHandler.STANDARD_STREAM))
+            {
+                text.append("SPEC ").append(Paths.get(request[0]).toAbsolutePath()).append('\n');
+            }
+            text.append("OUT ").append(Paths.get(request[1]).toAbsolutePath()).append('\n');
+            for(int i = 2; i < request.length; ++i)
+            {
+                text.append("SWITCH ").append(request[i]).append('\n');
+            }
+        }
+        else
+        {
+            System.out.println("Request needs SPEC_FILE and OUT_DIR");
+            return false;
+        }
+
+        try(SocketChannel channel = SocketChannel.open(address(address)))
+        {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+            if(request.length >= 2 && request[0].equals(UserHandler.STANDARD_STREAM))
+            {
+                sendLines(new StreamSpecReader(System.in), out);
+            }
+            out.write("END\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            String status = reader.readLine();
+            String line;
+            while((line = reader.readLine()) != null)
+            {
+                System.out.println(line);
+            }
+            return "OK".equals(status);
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Sends every line of source as inline line of request
+     *
+     * @param source source of spec lines, closed afterwards
+     * @param out stream of request
+     * @throws IOException if source can't be read or request can't be sent
+     */
+    private static void sendLines(SpecSource source, OutputStream out) throws IOException
+    {
+        try
+        {
+            CharSequence line;
+            while((line = source.nextLine()) != null)
+            {
+                out.write(("LINE " + line + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        finally
+        {
+            source.close();
+        }
+    }
+}
+
+/**
+ * One request read from client
+ */
+class DaemonRequest
+{
+    /**
+     * directory that classes are generated in
+     */
+    String out;
+
+    /**
+     * spec file, null if lines are given inline
+     */
+    String spec;
+
+    /**
+     * lines of spec given inline
+     */
+    ArrayList<String> lines = new ArrayList<>();
+
+    /**
+     * switches of {@link UserHandler}
+     */
+    ArrayList<String> switches = new ArrayList<>();
+
+    /**
+     * Determines if client asked for metrics
+     */
+    boolean metrics;
+
+    /**
+     * Determines if client asked daemon to stop
+     */
+    boolean shutdown;
+
+    /**
+     * description of wrong command, null if request is correct
+     */
+    String problem;
+
+    /**
+     * Reads request until line "END" or end of stream
+     *
+     * @param reader reader of client connection
+     * @return read request
+     * @throws IOException if connection can't be read
+     */
+    static DaemonRequest read(BufferedReader reader) throws IOException
+    {
+        DaemonRequest request = new DaemonRequest();
+        String line;
+
+        while((line = reader.readLine()) != null && !line.equals("END"))
+        {
+            int space = line.indexOf(' ');
+            String command = space < 0 ? line : line.substring(0, space);
+            String argument = space < 0 ? "" : line.substring(space + 1);
+
+            if(command.equals("OUT"))
+            {
+                request.out = argument;
+            }
+            else if(command.equals("SPEC"))
+            {
+                request.spec = argument;
+            }
+            else if(command.equals("LINE"))
+            {
+                request.lines.add(argument);
+            }
+            else if(command.equals("SWITCH"))
+            {
+                request.switches.add(argument);
+            }
+            else if(command.equals("METRICS"))
+            {
+                request.metrics = true;
+            }
+            else if(command.equals("SHUTDOWN"))
+            {
+                request.shutdown = true;
+            }
+            else if(request.problem == null)
+            {
+                request.problem = "Unknown command " + command;
+            }
+        }
+
+        return request;
+    }
+}
+
+/**
+ * Source of spec lines given inline in request
+ */
+class LineListSource implements SpecSource
+{
+    /**
+     * lines that are not read yet
+     */
+    private Iterator<String> lines;
+
+    /**
+     * Constructor of LineListSource
+     *
+     * @param lines lines of spec
+     */
+    LineListSource(ArrayList<String> lines)
+    {
+        this.lines = lines.iterator();
+    }
+
+    public CharSequence nextLine()
+    {
+        return lines.hasNext() ? lines.next() : null;
+    }
+
+    public void close()
+    {
+    }
+}
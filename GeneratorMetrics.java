@@ -0,0 +1,261 @@
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Class that collects counters and latency histograms of every stage of generation: reading spec, parsing
+ * (tokenizer, chain of responsibilities and every handler of chain), rendering and filesystem work.
+ * Instrumented code reads {@link #current} once and does nothing else when it's null, so disabled metrics cost
+ * one null check per stage. Enabled metrics cost two {@link System#nanoTime()} calls and few uncontended adds per stage.
+ * Every stage can be watched through JMX while generator runs and is written as JSON when it ends.
+ */
+public class GeneratorMetrics
+{
+    /**
+     * metrics of running generation, null when metrics are disabled
+     */
+    static GeneratorMetrics current = null;
+
+    /**
+     * domain of registered MBeans
+     */
+    private static final String JMX_DOMAIN = "Generator";
+
+    /**
+     * time of reading one spec line
+     */
+    final Histogram read;
+
+    /**
+     * time of parsing one line, by tokenizer or by chain
+     */
+    final Histogram parse;
+
+    /**
+     * time of one tokenizer attempt, including lines tokenizer gave up on
+     */
+    final Histogram tokenize;
+
+    /**
+     * time of parsing one line with chain of responsibilities
+     */
+    final Histogram chain;
+
+    /**
+     * number of passes through chain needed to parse one line
+     */
+    final Histogram chainPasses;
+
+    /**
+     * time of rendering one class
+     */
+    final Histogram render;
+
+    /**
+     * time of passing one rendered class to sink
+     */
+    final Histogram sink;
+
+    /**
+     * time of creating one package directory
+     */
+    final Histogram mkdir;
+
+    /**
+     * time of writing one file
+     */
+    final Histogram write;
+
+    /**
+     * histograms by name
+     */
+    private ConcurrentHashMap<String, Histogram> stages = new ConcurrentHashMap<>();
+
+    /**
+     * histograms in order they were created, so report follows order of generation
+     */
+    private ArrayList<Histogram> order = new ArrayList<>();
+
+    /**
+     * server that histograms are registered in, null if they shouldn't be visible through JMX
+     */
+    private MBeanServer server;
+
+    /**
+     * time when metrics were created
+     */
+    private long started = System.nanoTime();
+
+    /**
+     * Constructor of GeneratorMetrics
+     *
+     * @param jmx true if histograms should be registered in platform MBean server
+     */
+    public GeneratorMetrics(boolean jmx)
+    {
+        this.server = jmx ? ManagementFactory.getPlatformMBeanServer() : null;
+        this.read = stage("read", "ns");
+        this.parse = stage("parse", "ns");
+        this.tokenize = stage("tokenize", "ns");
+        this.chain = stage("chain", "ns");
+        this.chainPasses = stage("chain.passes", "passes");
+        this.render = stage("render", "ns");
+        this.sink = stage("sink", "ns");
+        this.mkdir = stage("mkdir", "ns");
+        this.write = stage("write", "ns");
+    }
+
+    /**
+     * Finds histogram of stage, creates and registers it if it doesn't exist yet
+     *
+     * @param name name of stage
+     * @param unit unit of recorded values
+     * @return histogram of stage
+     */
+    Histogram stage(String name, String unit)
+    {
+        Histogram histogram = stages.get(name);
+        return histogram != null ? histogram : stages.computeIfAbsent(name, key -> create(key, unit));
+    }
+
+    /**
+     * Finds time histogram of handler of chain
+     *
+     * @param handlerClass class of handler of chain
+     * @return histogram of handler
+     */
+    Histogram handler(Class<?> handlerClass)
+    {
+        return stage("handler." + handlerClass.getSimpleName(), "ns");
+    }
+
+    /**
+     * Creates histogram and registers it in MBean server
+     *
+     * @param name name of stage
+     * @param unit unit of recorded values
+     * @return new histogram
+     */
+    private Histogram create(String name, String unit)
+    {
+        Histogram histogram = new Histogram(name, unit);
+
+        synchronized(order)
+        {
+            order.add(histogram);
+        }
+
+        if(server != null)
+        {
+            try
+            {
+                ObjectName objectName = objectName(name);
+                if(server.isRegistered(objectName))
+                {
+                    server.unregisterMBean(objectName);
+                }
+                server.registerMBean(histogram, objectName);
+            }
+            catch(Exception e)
+            {
+                e.printStackTrace();
+            }
+        }
+
+        return histogram;
+    }
+
+    /**
+     * Removes histograms from MBean server
+     */
+    public void close()
+    {
+        if(server == null)
+        {
+            return;
+        }
+
+        for(Histogram histogram : histograms())
+        {
+            try
+            {
+                server.unregisterMBean(objectName(histogram.name));
+            }
+            catch(Exception e)
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Builds name that histogram is registered with
+     *
+     * @param name name of stage
+     * @return name of MBean
+     * @throws Exception when name is not valid
+     */
+    private static ObjectName objectName(String name) throws Exception
+    {
+        return new ObjectName(JMX_DOMAIN + ":type=Stage,name=" + ObjectName.quote(name));
+    }
+
+    /**
+     * Gets copy of histograms in order they were created
+     *
+     * @return histograms of all stages
+     */
+    private ArrayList<Histogram> histograms()
+    {
+        synchronized(order)
+        {
+            return new ArrayList<>(order);
+        }
+    }
+
+    /**
+     * Summary of all stages as JSON object
+     *
+     * @return JSON with time of whole run and histogram of every stage
+     */
+    public String toJson()
+    {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"elapsedNs\": ").append(System.nanoTime() - started).append(",\n  \"stages\": {");
+
+        String separator = "\n";
+        for(Histogram histogram : histograms())
+        {
+            json.append(separator).append("    \"").append(histogram.name).append("\": ");
+            histogram.appendJson(json);
+            separator = ",\n";
+        }
+
+        return json.append("\n  }\n}\n").toString();
+    }
+
+    /**
+     * Writes summary of all stages as JSON to file
+     *
+     * @param file file name to create or overwrite
+     * @return true if file was written, false if not
+     */
+    public boolean writeJson(String file)
+    {
+        try
+        {
+            Files.write(Paths.get(file), toJson().getBytes(StandardCharsets.UTF_8));
+            return true;
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,521 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Generates classes by chain of {@link Flow} stages: publisher of spec lines, processor that parses lines,
+ * processor that renders classes and subscriber that passes classes to {@link OutputSink}.
+ * Every stage asks for next item only after it handed previous one to the next stage, and every stage buffers
+ * at most given number of items, so reading stops when sink is slower than spec and memory stays bounded
+ * no matter how long spec is. Every stage runs on its own thread, items keep order of spec lines,
+ * so last line in spec wins like in sequential mode.
+ * <p>
+ * Rendered classes can be taken by any {@link Flow.Subscriber} through {@link #publish}, for example to send them
+ * somewhere else than to files, {@link #generate} is subscriber that passes them to {@link OutputSink}.
+ */
+public class GeneratorPipeline
+{
+    /**
+     * default number of items buffered by every stage
+     */
+    static final int DEFAULT_BUFFER_SIZE = 256;
+
+    /**
+     * number of items buffered by every stage
+     */
+    private int bufferSize;
+
+    /**
+     * table that package folders and return types are shared through
+     */
+    private SymbolTable symbols;
+
+    /**
+     * collector of problems found in spec lines, null if lines shouldn't be checked
+     */
+    private ErrorHandler diagnostics;
+
+    /**
+     * shard of spec generated by this run, null if whole spec is generated
+     */
+    private SpecShard shard;
+
+    /**
+     * executor that runs stages
+     */
+    private ExecutorService executor = Executors.newCachedThreadPool();
+
+    /**
+     * Constructor of GeneratorPipeline
+     *
+     * @param bufferSize number of items buffered by every stage
+     * @param symbols table that package folders and return types are shared through
+     * @param diagnostics collector of problems found in spec lines, null if lines shouldn't be checked
+     * @param shard shard of spec generated by this run, null if whole spec is generated
+     */
+    public GeneratorPipeline(int bufferSize, SymbolTable symbols, ErrorHandler diagnostics, SpecShard shard)
+    {
+        this.bufferSize = bufferSize;
+        this.symbols = symbols;
+        this.diagnostics = diagnostics;
+        this.shard = shard;
+    }
+
+    /**
+     * Creates publisher of classes rendered from all lines of source, in order of lines.
+     * Source is read when subscriber subscribes, publisher accepts only one subscriber and pipeline can't be used
+     * again after it. Lines that failed are published too, with description of failure. Lines of other shards
+     * and lines after fail fast mode stopped generation are not published. When subscriber cancels subscription,
+     * reading of source stops.
+     *
+     * @param source source of class generation options
+     * @return publisher of rendered classes
+     */
+    public Flow.Publisher<GeneratedClass> publish(SpecSource source)
+    {
+        LinePublisher lines = new LinePublisher();
+        ParseProcessor parser = new ParseProcessor();
+        RenderProcessor renderer = new RenderProcessor();
+
+        parser.subscribe(renderer);
+        lines.subscribe(parser);
+        return new ClassPublisher(source, lines, renderer);
+    }
+
+    /**
+     * Generates classes from all lines of source, blocks until every class is written
+     *
+     * @param source source of class generation options
+     * @param sink sink that receives rendered classes
+     * @param console stream that parsed options and errors are printed to
+     * @param printOptions true if parsed options of every line should be printed
+     * @return true if errors occurred, false if not
+     */
+    public boolean generate(SpecSource source, OutputSink sink, PrintStream console, boolean printOptions)
+    {
+        SinkSubscriber writer = new SinkSubscriber(sink, console, printOptions);
+
+        try
+        {
+            publish(source).subscribe(writer);
+            return writer.await();
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Publisher returned by {@link #publish}, starts reading of source when subscriber subscribes
+     * and stops threads of pipeline when subscriber gets its last signal
+     */
+    class ClassPublisher implements Flow.Publisher<GeneratedClass>
+    {
+        /**
+         * source of class generation options
+         */
+        private SpecSource source;
+
+        /**
+         * first stage of pipeline
+         */
+        private LinePublisher lines;
+
+        /**
+         * last stage of pipeline
+         */
+        private RenderProcessor renderer;
+
+        /**
+         * Determines if publisher already has subscriber
+         */
+        private AtomicBoolean subscribed = new AtomicBoolean();
+
+        /**
+         * Constructor of ClassPublisher
+         *
+         * @param source source of class generation options
+         * @param lines first stage of pipeline
+         * @param renderer last stage of pipeline
+         */
+        ClassPublisher(SpecSource source, LinePublisher lines, RenderProcessor renderer)
+        {
+            this.source = source;
+            this.lines = lines;
+            this.renderer = renderer;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super GeneratedClass> subscriber)
+        {
+            if(!subscribed.compareAndSet(false, true))
+            {
+                subscriber.onSubscribe(new Flow.Subscription()
+                {
+                    @Override
+                    public void request(long n)
+                    {
+                    }
+
+                    @Override
+                    public void cancel()
+                    {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("Pipeline already has subscriber"));
+                return;
+            }
+
+            renderer.subscribe(new LastSubscriber(subscriber));
+            executor.execute(() -> lines.read(source, renderer));
+        }
+    }
+
+    /**
+     * Subscriber given to {@link #publish}, pipeline stops its threads after subscriber got its last signal
+     */
+    class LastSubscriber implements Flow.Subscriber<GeneratedClass>
+    {
+        /**
+         * subscriber that signals are passed to
+         */
+        private Flow.Subscriber<? super GeneratedClass> subscriber;
+
+        /**
+         * Constructor of LastSubscriber
+         *
+         * @param subscriber subscriber that signals are passed to
+         */
+        LastSubscriber(Flow.Subscriber<? super GeneratedClass> subscriber)
+        {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription)
+        {
+            subscriber.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(GeneratedClass item)
+        {
+            subscriber.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable)
+        {
+            try
+            {
+                subscriber.onError(throwable);
+            }
+            finally
+            {
+                executor.shutdown();
+            }
+        }
+
+        @Override
+        public void onComplete()
+        {
+            try
+            {
+                subscriber.onComplete();
+            }
+            finally
+            {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Publisher of spec lines. Submitting line blocks while buffer of parser is full.
+     */
+    class LinePublisher extends SubmissionPublisher<GeneratedClass>
+    {
+        /**
+         * Constructor of LinePublisher
+         */
+        LinePublisher()
+        {
+            super(executor, bufferSize);
+        }
+
+        /**
+         * Publishes every line of source until source ends, generation is stopped by fail fast mode
+         * or subscriber of last stage cancels its subscription
+         *
+         * @param source source of class generation options
+         * @param last last stage of pipeline
+         */
+        void read(SpecSource source, RenderProcessor last)
+        {
+            try
+            {
+                long lineNumber = source.linesBefore();
+                CharSequence line;
+
+                while((diagnostics == null || !diagnostics.shouldStop()) && last.hasSubscribers() && (line = source.nextLine()) != null)
+                {
+                    submit(new GeneratedClass(++lineNumber, line));
+                }
+                close();
+            }
+            catch(IOException e)
+            {
+                closeExceptionally(e);
+            }
+
+            if(!last.hasSubscribers())
+            {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Stage between two other stages, handles one item at a time and asks for next one after handing it over
+     */
+    abstract class Stage extends SubmissionPublisher<GeneratedClass> implements Flow.Processor<GeneratedClass, GeneratedClass>
+    {
+        /**
+         * subscription to previous stage
+         */
+        private Flow.Subscription subscription;
+
+        /**
+         * Constructor of Stage
+         */
+        Stage()
+        {
+            super(executor, bufferSize);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription)
+        {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(GeneratedClass item)
+        {
+            boolean keep = true;
+
+            if(item.failure == null)
+            {
+                try
+                {
+                    keep = process(item);
+                }
+                catch(Exception e)
+                {
+                    item.failure = e.toString();
+                }
+            }
+
+            if(keep)
+            {
+                submit(item);
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable)
+        {
+            closeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete()
+        {
+            close();
+        }
+
+        /**
+         * Handles item
+         *
+         * @param item item to handle
+         * @return true if item should be passed to next stage, false if it should be dropped
+         */
+        abstract boolean process(GeneratedClass item);
+    }
+
+    /**
+     * Stage that parses lines and checks them for problems. Every line gets new options, since they are used by other threads.
+     */
+    class ParseProcessor extends Stage
+    {
+        /**
+         * parser used by thread of this stage
+         */
+        private LineParser parser = new LineParser(symbols, false);
+
+        @Override
+        boolean process(GeneratedClass item)
+        {
+            if(diagnostics != null && diagnostics.shouldStop())
+            {
+                return false;
+            }
+
+            item.options = parser.parse(item.line);
+            if(shard != null && !shard.owns(item.options))
+            {
+                return false;
+            }
+
+            if(diagnostics != null)
+            {
+                diagnostics.checkLine(item.number, item.line, item.options);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Stage that renders classes to bytes
+     */
+    class RenderProcessor extends Stage
+    {
+        @Override
+        boolean process(GeneratedClass item)
+        {
+            item.content = OutputHandler.renderBytes(item.options);
+            return true;
+        }
+    }
+
+    /**
+     * Last stage, passes rendered classes to sink and prints errors of lines
+     */
+    class SinkSubscriber implements Flow.Subscriber<GeneratedClass>
+    {
+        /**
+         * sink that receives rendered classes
+         */
+        private OutputSink sink;
+
+        /**
+         * stream that parsed options and errors are printed to
+         */
+        private PrintStream console;
+
+        /**
+         * Determines if parsed options of every line should be printed
+         */
+        private boolean printOptions;
+
+        /**
+         * subscription to render stage
+         */
+        private Flow.Subscription subscription;
+
+        /**
+         * Determines if any line failed
+         */
+        private boolean failed = false;
+
+        /**
+         * completed with value of failed when all items were written
+         */
+        private CompletableFuture<Boolean> done = new CompletableFuture<>();
+
+        /**
+         * Constructor of SinkSubscriber
+         *
+         * @param sink sink that receives rendered classes
+         * @param console stream that parsed options and errors are printed to
+         * @param printOptions true if parsed options of every line should be printed
+         */
+        SinkSubscriber(OutputSink sink, PrintStream console, boolean printOptions)
+        {
+            this.sink = sink;
+            this.console = console;
+            this.printOptions = printOptions;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription)
+        {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(GeneratedClass item)
+        {
+            try
+            {
+                if(item.failure != null)
+                {
+                    console.println("Line " + item.number + ": " + item.failure);
+                    failed = true;
+                }
+                else if(!sink.isUpToDate(item.options, item.line) && !OutputHandler.writeRendered(item.options, item.line, item.content, sink))
+                {
+                    console.println("Line " + item.number + ": Couldn't write class " + item.options.getClassName());
+                    failed = true;
+                }
+
+                if(printOptions && item.options != null)
+                {
+                    console.println("\n\n" + item.options);
+                }
+            }
+            catch(Exception e)
+            {
+                console.println("Line " + item.number + ": " + e);
+                failed = true;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable)
+        {
+            console.println("Couldn't read input file: " + throwable);
+            done.complete(true);
+        }
+
+        @Override
+        public void onComplete()
+        {
+            done.complete(failed);
+        }
+
+        /**
+         * Waits until all items were written
+         *
+         * @return true if errors occurred, false if not
+         */
+        boolean await()
+        {
+            try
+            {
+                return done.get();
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                console.println("Generation interrupted");
+                return true;
+            }
+            catch(Exception e)
+            {
+                e.printStackTrace();
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of values with power of two buckets, safe to record from several threads without locking
+ */
+class Histogram implements HistogramMXBean
+{
+    /**
+     * number of buckets, bucket i holds values from 2^(i-1) to 2^i - 1 and bucket 0 holds 0
+     */
+    private static final int BUCKETS = 64;
+
+    /**
+     * name of stage
+     */
+    final String name;
+
+    /**
+     * unit of recorded values
+     */
+    private final String unit;
+
+    /**
+     * number of recorded values
+     */
+    private LongAdder count = new LongAdder();
+
+    /**
+     * sum of recorded values
+     */
+    private LongAdder total = new LongAdder();
+
+    /**
+     * largest recorded value
+     */
+    private AtomicLong max = new AtomicLong();
+
+    /**
+     * number of values in every bucket
+     */
+    private AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Constructor of Histogram
+     *
+     * @param name name of stage
+     * @param unit unit of recorded values
+     */
+    Histogram(String name, String unit)
+    {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    /**
+     * Records value
+     *
+     * @param value value to record, negative values are recorded as 0
+     */
+    void record(long value)
+    {
+        value = Math.max(0, value);
+        count.increment();
+        total.add(value);
+        buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+
+        long largest = max.get();
+        while(value > largest && !max.compareAndSet(largest, value))
+        {
+            largest = max.get();
+        }
+    }
+
+    /**
+     * Records time that passed since given moment
+     *
+     * @param start result of {@link System#nanoTime()} taken when stage started
+     */
+    void since(long start)
+    {
+        record(System.nanoTime() - start);
+    }
+
+    /**
+     * Finds value that given part of recorded values doesn't exceed
+     *
+     * @param part part of values, from 0 to 1
+     * @return upper bound of bucket holding that value, never more than largest value
+     */
+    long percentile(double part)
+    {
+        long needed = (long) Math.ceil(part * count.sum());
+        long seen = 0;
+
+        for(int i = 0; i < BUCKETS; ++i)
+        {
+            seen += buckets.get(i);
+            if(seen >= needed && seen > 0)
+            {
+                return Math.min(max.get(), i == 0 ? 0 : (1L << i) - 1);
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Appends histogram as JSON object
+     *
+     * @param json builder to append to
+     */
+    void appendJson(StringBuilder json)
+    {
+        json.append("{\"unit\": \"").append(unit)
+                .append("\", \"count\": ").append(getCount())
+                .append(", \"total\": ").append(getTotal())
+                .append(", \"mean\": ").append(Math.round(getMean() * 10) / 10.0)
+                .append(", \"max\": ").append(getMax())
+                .append(", \"p50\": ").append(getP50())
+                .append(", \"p90\": ").append(getP90())
+                .append(", \"p99\": ").append(getP99())
+                .append('}');
+    }
+
+    public String getUnit()
+    {
+        return unit;
+    }
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    public long getTotal()
+    {
+        return total.sum();
+    }
+
+    public double getMean()
+    {
+        long values = count.sum();
+        return values == 0 ? 0 : (double) total.sum() / values;
+    }
+
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    public long getP50()
+    {
+        return percentile(0.5);
+    }
+
+    public long getP90()
+    {
+        return percentile(0.9);
+    }
+
+    public long getP99()
+    {
+        return percentile(0.99);
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Management interface of one {@link GeneratorMetrics} histogram, registered in platform MBean server as
+ * "Generator:type=Stage,name=NAME". Values are in nanoseconds for stages and in passes for chain passes,
+ * percentiles are upper bounds of power of two buckets.
+ */
+public interface HistogramMXBean
+{
+    /**
+     * Gets unit of recorded values
+     *
+     * @return "ns" for stage times, other unit for counted values
+     */
+    String getUnit();
+
+    /**
+     * Gets number of recorded values
+     *
+     * @return number of values
+     */
+    long getCount();
+
+    /**
+     * Gets sum of recorded values
+     *
+     * @return sum of values
+     */
+    long getTotal();
+
+    /**
+     * Gets mean of recorded values
+     *
+     * @return mean value, 0 if nothing was recorded
+     */
+    double getMean();
+
+    /**
+     * Gets largest recorded value
+     *
+     * @return largest value, 0 if nothing was recorded
+     */
+    long getMax();
+
+    /**
+     * Gets median of recorded values
+     *
+     * @return 50th percentile
+     */
+    long getP50();
+
+    /**
+     * Gets 90th percentile of recorded values
+     *
+     * @return 90th percentile
+     */
+    long getP90();
+
+    /**
+     * Gets 99th percentile of recorded values
+     *
+     * @return 99th percentile
+     */
+    long getP99();
+}
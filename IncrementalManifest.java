@@ -0,0 +1,487 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class that keeps hashes of spec lines and generated files between runs, so files that didn't change are not written again.
+ * Class whose spec line and template are the same as in previous run is not even rendered, class whose line changed
+ * is rendered and written only if its content changed. Either way file on disk has to have the length and modification
+ * time it had after previous run, so file edited by hand is generated again.
+ * Manifest is a text file placed next to generated files, one line per file: spec line hash, file hash, file length,
+ * file modification time in milliseconds and file name relative to manifest directory, with '/' between directories.
+ * Every shard of sharded run writes its own manifest, see {@link SpecShard}.
+ */
+public class IncrementalManifest
+{
+    /**
+     * name of manifest file
+     */
+    static final String FILE_NAME = ".generator-manifest";
+
+    /**
+     * first line of manifest file, manifest with other first line is ignored
+     */
+    private static final String HEADER = "# generator manifest 3";
+
+    /**
+     * directory of generated files
+     */
+    private Path root;
+
+    /**
+     * path of manifest file
+     */
+    private Path manifestFile;
+
+    /**
+     * Determines if manifest covers only part of files, so files missing in it are not stale
+     */
+    private boolean part;
+
+    /**
+     * entries read from manifest written by previous run
+     */
+    private Map<String, ManifestEntry> previous = new ConcurrentHashMap<>();
+
+    /**
+     * entries of files generated by this run
+     */
+    private Map<String, ManifestEntry> current = new ConcurrentHashMap<>();
+
+    /**
+     * number of files that didn't exist in previous run
+     */
+    private AtomicInteger added = new AtomicInteger();
+
+    /**
+     * number of files that were written again because they changed
+     */
+    private AtomicInteger updated = new AtomicInteger();
+
+    /**
+     * number of files that were not written because they didn't change
+     */
+    private AtomicInteger skipped = new AtomicInteger();
+
+    /**
+     * number of files generated only by previous run, whose spec lines were deleted
+     */
+    private int stale;
+
+    /**
+     * number of stale files that were deleted
+     */
+    private int removed;
+
+    /**
+     * Constructor of IncrementalManifest
+     *
+     * @param root directory of generated files
+     */
+    private IncrementalManifest(Path root)
+    {
+        this.root = root;
+        this.manifestFile = root.resolve(FILE_NAME);
+    }
+
+    /**
+     * Reads manifest from given directory, missing or broken manifest means that every file is treated as new
+     *
+     * @param root directory of generated files
+     * @return manifest of previous run
+     */
+    public static IncrementalManifest load(Path root)
+    {
+        IncrementalManifest manifest = new IncrementalManifest(root);
+
+        if(!read(manifest.manifestFile, manifest.previous))
+        {
+            manifest.previous.clear();
+        }
+        return manifest;
+    }
+
+    /**
+     * Creates manifest without entries of previous run, so every file is treated as new
+     *
+     * @param root directory of generated files
+     * @return empty manifest
+     */
+    public static IncrementalManifest create(Path root)
+    {
+        return new IncrementalManifest(root);
+    }
+
+    /**
+     * Makes this manifest cover only files of one shard: it's saved to its own file and files generated
+     * by previous run that are missing in it are not stale, they are found by {@link #merge} instead
+     *
+     * @param fileName name of manifest file of shard
+     * @return this manifest
+     */
+    public IncrementalManifest asPart(String fileName)
+    {
+        manifestFile = root.resolve(fileName);
+        part = true;
+        return this;
+    }
+
+    /**
+     * Combines manifests of shards. Entries of manifest of previous run are kept as previous ones,
+     * so files missing in every shard can be removed as stale and numbers of added, updated and skipped files
+     * are counted for whole run. If several shards wrote the same file, entry of last shard is kept.
+     *
+     * @param root directory of generated files
+     * @param parts manifest files of shards, in order of shards
+     * @param conflicts list that files written by several shards are added to
+     * @return merged manifest or null if manifest of any shard couldn't be read
+     */
+    static IncrementalManifest merge(Path root, List<Path> parts, List<String> conflicts)
+    {
+        IncrementalManifest manifest = load(root);
+        Map<String, ManifestEntry> entries = new HashMap<>();
+
+        for(Path part : parts)
+        {
+            entries.clear();
+            if(!read(part, entries))
+            {
+                return null;
+            }
+
+            for(Map.Entry<String, ManifestEntry> entry : entries.entrySet())
+            {
+                ManifestEntry old = manifest.previous.get(entry.getKey());
+                if(manifest.current.containsKey(entry.getKey()))
+                {
+                    conflicts.add(entry.getKey());
+                    manifest.current.put(entry.getKey(), entry.getValue());
+                }
+                else if(old != null && old.outputHash == entry.getValue().outputHash && old.length == entry.getValue().length)
+                {
+                    manifest.current.put(entry.getKey(), entry.getValue());
+                    manifest.skipped.incrementAndGet();
+                }
+                else
+                {
+                    manifest.written(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Reads entries of manifest file
+     *
+     * @param file manifest file
+     * @param entries map that entries are put in
+     * @return true if file was read, false if it's missing, broken or has different header
+     */
+    private static boolean read(Path file, Map<String, ManifestEntry> entries)
+    {
+        if(!Files.isRegularFile(file))
+        {
+            return false;
+        }
+
+        try(BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            if(!HEADER.equals(reader.readLine()))
+            {
+                return false;
+            }
+
+            String line;
+            while((line = reader.readLine()) != null)
+            {
+                String[] parts = line.split("\t", 5);
+                if(parts.length == 5)
+                {
+                    entries.put(parts[4], new ManifestEntry(Long.parseUnsignedLong(parts[0], 16), Long.parseUnsignedLong(parts[1], 16),
+                            Long.parseLong(parts[2]), Long.parseLong(parts[3])));
+                }
+            }
+            return true;
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Computes entry of generated file
+     *
+     * @param specLine line of spec that file was generated from
+     * @param content content of file, buffer position is not changed
+     * @return entry describing file
+     */
+    public ManifestEntry entry(CharSequence specLine, ByteBuffer content)
+    {
+        return new ManifestEntry(specHash(specLine), hash(content), content.remaining(), ManifestEntry.UNKNOWN);
+    }
+
+    /**
+     * Checks if file generated by previous run was generated from the same spec line with the same template
+     * and wasn't changed since then, if so file is counted as skipped. Called before class is rendered.
+     *
+     * @param file file name relative to manifest directory
+     * @param specLine line of spec that file would be generated from
+     * @return true if file doesn't have to be rendered nor written
+     */
+    public boolean isUpToDate(String file, CharSequence specLine)
+    {
+        ManifestEntry old = previous.get(file);
+
+        if(old != null && old.specHash == specHash(specLine) && isOnDisk(file, old))
+        {
+            current.put(file, old);
+            skipped.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if file generated by previous run is the same as new one and wasn't changed since then,
+     * if so file is counted as skipped. Called after class is rendered, when spec line changed.
+     *
+     * @param file file name relative to manifest directory
+     * @param entry entry of new file
+     * @return true if file doesn't have to be written
+     */
+    public boolean isUpToDate(String file, ManifestEntry entry)
+    {
+        ManifestEntry old = previous.get(file);
+
+        if(old != null && old.outputHash == entry.outputHash && old.length == entry.length && isOnDisk(file, old))
+        {
+            current.put(file, new ManifestEntry(entry.specHash, entry.outputHash, entry.length, old.modified));
+            skipped.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if file still has length and modification time it had when previous run saved manifest
+     *
+     * @param file file name relative to manifest directory
+     * @param old entry of file in previous manifest
+     * @return true if file exists and wasn't changed
+     */
+    private boolean isOnDisk(String file, ManifestEntry old)
+    {
+        if(old.modified == ManifestEntry.UNKNOWN)
+        {
+            return false;
+        }
+
+        try
+        {
+            BasicFileAttributes attributes = Files.readAttributes(root.resolve(file), BasicFileAttributes.class);
+            return attributes.isRegularFile() && attributes.size() == old.length && attributes.lastModifiedTime().toMillis() == old.modified;
+        }
+        catch(IOException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Reads modification time of file written by this run
+     *
+     * @param file file name relative to manifest directory
+     * @return modification time in milliseconds or {@link ManifestEntry#UNKNOWN} if file can't be read
+     */
+    private long modified(String file)
+    {
+        try
+        {
+            return Files.getLastModifiedTime(root.resolve(file)).toMillis();
+        }
+        catch(IOException e)
+        {
+            return ManifestEntry.UNKNOWN;
+        }
+    }
+
+    /**
+     * Records file written by this run
+     *
+     * @param file file name relative to manifest directory
+     * @param entry entry of written file
+     */
+    public void written(String file, ManifestEntry entry)
+    {
+        current.put(file, entry);
+
+        if(previous.containsKey(file))
+        {
+            updated.incrementAndGet();
+        }
+        else
+        {
+            added.incrementAndGet();
+        }
+    }
+
+    /**
+     * Finds files generated by previous run that were not generated by this run.
+     * Deleted files are forgotten, the rest stay in manifest so they can be deleted later.
+     * Manifest of shard has no stale files, since other shards may have generated them.
+     *
+     * @param delete true if such files should be deleted
+     */
+    public void removeStale(boolean delete)
+    {
+        if(part)
+        {
+            return;
+        }
+
+        for(Map.Entry<String, ManifestEntry> entry : previous.entrySet())
+        {
+            if(!current.containsKey(entry.getKey()))
+            {
+                ++stale;
+
+                if(delete && delete(root.resolve(entry.getKey())))
+                {
+                    ++removed;
+                }
+                else
+                {
+                    current.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes manifest of this run, replaces previous one only when whole manifest is written.
+     * Modification times of files written by this run are read now, after every file reached its final place.
+     *
+     * @return true if manifest was written, false if not
+     */
+    public boolean save()
+    {
+        Path tempFile = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+
+        try(PrintWriter writer = new PrintWriter(Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)))
+        {
+            writer.print(HEADER + "\n");
+            for(Map.Entry<String, ManifestEntry> entry : current.entrySet())
+            {
+                ManifestEntry value = entry.getValue();
+                long modified = value.modified != ManifestEntry.UNKNOWN ? value.modified : modified(entry.getKey());
+                writer.print(Long.toHexString(value.specHash) + "\t" + Long.toHexString(value.outputHash) + "\t" + value.length + "\t"
+                        + modified + "\t" + entry.getKey() + "\n");
+            }
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+
+        try
+        {
+            Files.move(tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Deletes file
+     *
+     * @param file file to delete
+     * @return true if file doesn't exist anymore
+     */
+    private static boolean delete(Path file)
+    {
+        try
+        {
+            Files.deleteIfExists(file);
+            return true;
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Summary of this run
+     *
+     * @return numbers of added, updated, skipped and stale files
+     */
+    public String report()
+    {
+        return "Added: " + added + ", updated: " + updated + ", skipped: " + skipped + ", stale: " + stale + ", removed: " + removed;
+    }
+
+    /**
+     * Computes hash of spec line together with hash of template that classes are rendered with,
+     * so changing template makes every class render again
+     *
+     * @param specLine line of spec
+     * @return hash of line and template
+     */
+    static long specHash(CharSequence specLine)
+    {
+        return hash(specLine) * 31 + OutputHandler.template.hash;
+    }
+
+    /**
+     * Computes 64 bit FNV-1a hash of characters of text
+     *
+     * @param text text to hash
+     * @return hash of text
+     */
+    static long hash(CharSequence text)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for(int i = 0; i < text.length(); ++i)
+        {
+            hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Computes 64 bit FNV-1a hash of remaining bytes of buffer
+     *
+     * @param content buffer to hash, its position is not changed
+     * @return hash of bytes
+     */
+    static long hash(ByteBuffer content)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for(int i = content.position(); i < content.limit(); ++i)
+        {
+            hash = (hash ^ (content.get(i) & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+}
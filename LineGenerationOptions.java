@@ -1,67 +1,1034 @@
-import java.util.ArrayList;
-
-/**
- * Created by djwojtas on 2016-11-03.
- */
-public class LineGenerationOptions
-{
-    /**
-     * holds class name
-     */
-    String className;
-
-    /**
-     * holds folder structure for package
-     */
-    ArrayList<String> packageStructure = new ArrayList<>();
-
-    /**
-     * Determines if javadoc should be generated
-     */
-    Boolean javadocGeneration = true;
-
-    /**
-     * Determines if main class should be generated
-     */
-    Boolean mainGeneration = true;
-
-    /**
-     * Contains methods with their return value and args.
-     * First level holds [method, method method] etc
-     * Second level Holds [method signature, return type, arg name, arg type, arg name, arg type, ...]
-     */
-    ArrayList<ArrayList<String>> additionalMethods = new ArrayList<>();
-
-    /**
-     * Holds fields declarations;
-     */
-    ArrayList<String> fields = new ArrayList<>();
-
-    /**
-     * Holds parts of line that couldn't be parsed
-     */
-    String problem;
-
-    @Override
-    public String toString()
-    {
-        return (className + "\n" + packageStructure + "\n" + javadocGeneration + "\n" + mainGeneration + "\n" + additionalMethods + "\n" + fields);
-    }
-
-    /**
-     * Method generates path from packageStructure
-     *
-     * @return String holding path to package
-     */
-    public String generatePath()
-    {
-        String path = "";
-
-        for (String folder : packageStructure)
-        {
-            path = path + folder + "\\";
-        }
-
-        return path;
-    }
-}
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Created by djwojtas on 2016-11-03.
+ *
+ * Every name held by this class is stored in one byte arena, lists of names are kept as pairs of start and end
+ * offsets into that arena, and flags are packed into one byte. Parsers accept only ASCII letters, digits, spaces
+ * and punctuation, so one byte per character is enough. Package folders and return types repeat across lines,
+ * so they are kept as {@link Symbol} objects shared through {@link SymbolTable}.
+ * ASCII bytes of arena are also valid UTF-8, so they are written to rendered classes without encoding.
+ */
+public class LineGenerationOptions
+{
+    /**
+     * flag set when javadoc should be generated
+     */
+    private static final byte JAVADOC = 1;
+
+    /**
+     * flag set when main method should be generated
+     */
+    private static final byte MAIN = 2;
+
+    /**
+     * shared empty array, used until first name is added
+     */
+    private static final int[] NO_SPANS = new int[0];
+
+    /**
+     * shared empty array, used until first symbol is added
+     */
+    private static final Symbol[] NO_SYMBOLS = new Symbol[0];
+
+    /**
+     * written in place of class name that is not set
+     */
+    private static final byte[] NULL_NAME = {'n', 'u', 'l', 'l'};
+
+    /**
+     * shared empty arena, used until first name is added
+     */
+    private static final byte[] NO_TEXT = new byte[0];
+
+    /**
+     * holds characters of all names
+     */
+    private byte[] text = NO_TEXT;
+
+    /**
+     * number of used bytes of text
+     */
+    private int textLength;
+
+    /**
+     * packed JAVADOC and MAIN flags
+     */
+    private byte flags = JAVADOC | MAIN;
+
+    /**
+     * start of class name in text, -1 if class name is not set
+     */
+    private int classStart = -1;
+
+    /**
+     * end of class name in text
+     */
+    private int classEnd;
+
+    /**
+     * holds folder structure for package
+     */
+    private Symbol[] packages = NO_SYMBOLS;
+
+    /**
+     * number of folders of package
+     */
+    private int packageCount;
+
+    /**
+     * holds fields declarations, as start and end of every declaration
+     */
+    private int[] fields = NO_SPANS;
+
+    /**
+     * number of fields
+     */
+    private int fieldCount;
+
+    /**
+     * Holds parts of methods as start and end of every part.
+     * Parts of one method are [method signature, arg type, arg name, arg type, arg name, ...]
+     */
+    private int[] methodParts = NO_SPANS;
+
+    /**
+     * number of parts of all methods
+     */
+    private int methodPartCount;
+
+    /**
+     * index of first part of every method
+     */
+    private int[] methods = NO_SPANS;
+
+    /**
+     * return type of every method
+     */
+    private Symbol[] returnTypes = NO_SYMBOLS;
+
+    /**
+     * number of methods
+     */
+    private int methodCount;
+
+    /**
+     * Holds parts of line that couldn't be parsed
+     */
+    String problem;
+
+    /**
+     * Sets class name
+     *
+     * @param className name of class
+     */
+    public void setClassName(CharSequence className)
+    {
+        setClassName(className, 0, className.length());
+    }
+
+    /**
+     * Sets class name to part of line, without creating String of it
+     *
+     * @param line line holding class name
+     * @param start position where class name starts
+     * @param end position right after class name
+     */
+    public void setClassName(CharSequence line, int start, int end)
+    {
+        classStart = textLength;
+        classEnd = append(line, start, end);
+    }
+
+    /**
+     * Checks if class name is set
+     *
+     * @return true if class name is set
+     */
+    public boolean hasClassName()
+    {
+        return classStart >= 0;
+    }
+
+    /**
+     * Gets class name
+     *
+     * @return name of class or null if it's not set
+     */
+    public String getClassName()
+    {
+        return classStart < 0 ? null : new String(text, classStart, classEnd - classStart, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Appends class name to buffer, "null" if it's not set
+     *
+     * @param out buffer to append to
+     */
+    public void appendClassName(StringBuilder out)
+    {
+        if(classStart < 0)
+        {
+            out.append("null");
+        }
+        else
+        {
+            appendText(classStart, classEnd, out);
+        }
+    }
+
+    /**
+     * Writes class name as UTF-8, "null" if it's not set
+     *
+     * @param out output to write to
+     */
+    void writeClassName(ByteOutput out)
+    {
+        if(classStart < 0)
+        {
+            out.put(NULL_NAME);
+        }
+        else
+        {
+            out.put(text, classStart, classEnd - classStart);
+        }
+    }
+
+    /**
+     * Adds folder at the end of package structure
+     *
+     * @param folder name of folder
+     */
+    public void addPackage(CharSequence folder)
+    {
+        addPackage(new Symbol(folder.toString()));
+    }
+
+    /**
+     * Adds folder at the end of package structure
+     *
+     * @param folder symbol of folder name
+     */
+    public void addPackage(Symbol folder)
+    {
+        packages = addSymbol(packages, packageCount++, folder);
+    }
+
+    /**
+     * Gets number of folders of package
+     *
+     * @return number of folders, 0 for default package
+     */
+    public int packageCount()
+    {
+        return packageCount;
+    }
+
+    /**
+     * Gets name of folder of package
+     *
+     * @param index index of folder
+     * @return name of folder
+     */
+    public String getPackage(int index)
+    {
+        return packages[index].text;
+    }
+
+    /**
+     * Gets symbol of folder of package
+     *
+     * @param index index of folder
+     * @return symbol of folder name
+     */
+    public Symbol getPackageSymbol(int index)
+    {
+        return packages[index];
+    }
+
+    /**
+     * Appends name of folder of package to buffer
+     *
+     * @param index index of folder
+     * @param out buffer to append to
+     */
+    public void appendPackage(int index, StringBuilder out)
+    {
+        out.append(packages[index].text);
+    }
+
+    /**
+     * Adds field declaration "type name;"
+     *
+     * @param type type of field
+     * @param name name of field
+     */
+    public void addField(CharSequence type, CharSequence name)
+    {
+        int start = textLength;
+        append(type, 0, type.length());
+        appendChar(' ');
+        append(name, 0, name.length());
+        fields = addSpan(fields, fieldCount++, start, appendChar(';'));
+    }
+
+    /**
+     * Adds field declaration "type name;" made of parts of line, without creating Strings of them
+     *
+     * @param line line holding type and name
+     * @param typeStart position where type starts
+     * @param typeEnd position right after type
+     * @param nameStart position where name starts
+     * @param nameEnd position right after name
+     */
+    public void addField(CharSequence line, int typeStart, int typeEnd, int nameStart, int nameEnd)
+    {
+        int start = textLength;
+        append(line, typeStart, typeEnd);
+        appendChar(' ');
+        append(line, nameStart, nameEnd);
+        fields = addSpan(fields, fieldCount++, start, appendChar(';'));
+    }
+
+    /**
+     * Gets number of fields
+     *
+     * @return number of fields
+     */
+    public int fieldCount()
+    {
+        return fieldCount;
+    }
+
+    /**
+     * Appends field declaration to buffer
+     *
+     * @param index index of field
+     * @param out buffer to append to
+     */
+    public void appendField(int index, StringBuilder out)
+    {
+        appendText(fields[2 * index], fields[2 * index + 1], out);
+    }
+
+    /**
+     * Writes field declaration as UTF-8
+     *
+     * @param index index of field
+     * @param out output to write to
+     */
+    void writeField(int index, ByteOutput out)
+    {
+        out.put(text, fields[2 * index], fields[2 * index + 1] - fields[2 * index]);
+    }
+
+    /**
+     * Adds method without args, args are added by {@link #addArgument}
+     *
+     * @param signature whole declaration of method
+     * @param returnType return type of method
+     */
+    public void addMethod(CharSequence signature, CharSequence returnType)
+    {
+        addMethod(signature, new Symbol(returnType.toString()));
+    }
+
+    /**
+     * Adds method without args, args are added by {@link #addArgument}
+     *
+     * @param signature whole declaration of method
+     * @param returnType symbol of return type of method
+     */
+    public void addMethod(CharSequence signature, Symbol returnType)
+    {
+        addMethod(signature, 0, signature.length(), returnType);
+    }
+
+    /**
+     * Adds method declared by part of line, without creating String of it. Args are added by {@link #addArgument}
+     *
+     * @param line line holding declaration of method
+     * @param start position where declaration starts
+     * @param end position right after declaration
+     * @param returnType symbol of return type of method
+     */
+    public void addMethod(CharSequence line, int start, int end, Symbol returnType)
+    {
+        returnTypes = addSymbol(returnTypes, methodCount, returnType);
+        methods = addIndex(methods, methodCount++, methodPartCount);
+        addMethodPart(line, start, end);
+    }
+
+    /**
+     * Adds arg to last added method
+     *
+     * @param type type of arg
+     * @param name name of arg
+     */
+    public void addArgument(CharSequence type, CharSequence name)
+    {
+        addMethodPart(type, 0, type.length());
+        addMethodPart(name, 0, name.length());
+    }
+
+    /**
+     * Adds arg made of parts of line to last added method, without creating Strings of them
+     *
+     * @param line line holding type and name
+     * @param typeStart position where type starts
+     * @param typeEnd position right after type
+     * @param nameStart position where name starts
+     * @param nameEnd position right after name
+     */
+    public void addArgument(CharSequence line, int typeStart, int typeEnd, int nameStart, int nameEnd)
+    {
+        addMethodPart(line, typeStart, typeEnd);
+        addMethodPart(line, nameStart, nameEnd);
+    }
+
+    /**
+     * Gets number of methods
+     *
+     * @return number of methods
+     */
+    public int methodCount()
+    {
+        return methodCount;
+    }
+
+    /**
+     * Appends whole declaration of method to buffer
+     *
+     * @param index index of method
+     * @param out buffer to append to
+     */
+    public void appendSignature(int index, StringBuilder out)
+    {
+        appendMethodPart(index, 0, out);
+    }
+
+    /**
+     * Writes whole declaration of method as UTF-8
+     *
+     * @param index index of method
+     * @param out output to write to
+     */
+    void writeSignature(int index, ByteOutput out)
+    {
+        writeMethodPart(index, 0, out);
+    }
+
+    /**
+     * Appends return type of method to buffer
+     *
+     * @param index index of method
+     * @param out buffer to append to
+     */
+    public void appendReturnType(int index, StringBuilder out)
+    {
+        out.append(returnTypes[index].text);
+    }
+
+    /**
+     * Gets symbol of return type of method
+     *
+     * @param index index of method
+     * @return symbol of return type
+     */
+    public Symbol getReturnType(int index)
+    {
+        return returnTypes[index];
+    }
+
+    /**
+     * Checks if method returns nothing
+     *
+     * @param index index of method
+     * @return true if return type is void
+     */
+    public boolean isVoid(int index)
+    {
+        return returnTypes[index].text.equals("void");
+    }
+
+    /**
+     * Gets number of args of method
+     *
+     * @param index index of method
+     * @return number of args
+     */
+    public int argumentCount(int index)
+    {
+        int end = index + 1 < methodCount ? methods[index + 1] : methodPartCount;
+        return (end - methods[index] - 1) / 2;
+    }
+
+    /**
+     * Appends type of arg of method to buffer
+     *
+     * @param index index of method
+     * @param argument index of arg
+     * @param out buffer to append to
+     */
+    public void appendArgumentType(int index, int argument, StringBuilder out)
+    {
+        appendMethodPart(index, 1 + 2 * argument, out);
+    }
+
+    /**
+     * Appends name of arg of method to buffer
+     *
+     * @param index index of method
+     * @param argument index of arg
+     * @param out buffer to append to
+     */
+    public void appendArgumentName(int index, int argument, StringBuilder out)
+    {
+        appendMethodPart(index, 2 + 2 * argument, out);
+    }
+
+    /**
+     * Writes type of arg of method as UTF-8
+     *
+     * @param index index of method
+     * @param argument index of arg
+     * @param out output to write to
+     */
+    void writeArgumentType(int index, int argument, ByteOutput out)
+    {
+        writeMethodPart(index, 1 + 2 * argument, out);
+    }
+
+    /**
+     * Writes name of arg of method as UTF-8
+     *
+     * @param index index of method
+     * @param argument index of arg
+     * @param out output to write to
+     */
+    void writeArgumentName(int index, int argument, ByteOutput out)
+    {
+        writeMethodPart(index, 2 + 2 * argument, out);
+    }
+
+    /**
+     * Determines if javadoc should be generated
+     *
+     * @return true if javadoc should be generated
+     */
+    public boolean isJavadocGeneration()
+    {
+        return (flags & JAVADOC) != 0;
+    }
+
+    /**
+     * Sets if javadoc should be generated
+     *
+     * @param javadocGeneration true if javadoc should be generated
+     */
+    public void setJavadocGeneration(boolean javadocGeneration)
+    {
+        flags = (byte) (javadocGeneration ? flags | JAVADOC : flags & ~JAVADOC);
+    }
+
+    /**
+     * Determines if main method should be generated
+     *
+     * @return true if main method should be generated
+     */
+    public boolean isMainGeneration()
+    {
+        return (flags & MAIN) != 0;
+    }
+
+    /**
+     * Sets if main method should be generated
+     *
+     * @param mainGeneration true if main method should be generated
+     */
+    public void setMainGeneration(boolean mainGeneration)
+    {
+        flags = (byte) (mainGeneration ? flags | MAIN : flags & ~MAIN);
+    }
+
+    /**
+     * Gets number of characters of all names
+     *
+     * @return size of used part of arena
+     */
+    public int textLength()
+    {
+        return textLength;
+    }
+
+    /**
+     * Clears object so it can be filled by next line. Arena and arrays are kept, so once they grew to size
+     * of largest line, filling object again allocates nothing.
+     */
+    void clear()
+    {
+        textLength = 0;
+        flags = JAVADOC | MAIN;
+        classStart = -1;
+        classEnd = 0;
+        packageCount = 0;
+        fieldCount = 0;
+        methodPartCount = 0;
+        methodCount = 0;
+        problem = null;
+    }
+
+    /**
+     * Shrinks arena and arrays of offsets to their used size, called when object is fully parsed
+     */
+    void trim()
+    {
+        if(text.length > textLength)
+        {
+            text = Arrays.copyOf(text, textLength);
+        }
+        packages = trim(packages, packageCount);
+        fields = trim(fields, 2 * fieldCount);
+        methodParts = trim(methodParts, 2 * methodPartCount);
+        methods = trim(methods, methodCount);
+        returnTypes = trim(returnTypes, methodCount);
+    }
+
+    /**
+     * Appends fields, methods, flags and problem of other object, so members parsed from one line can be reused
+     * by line that differs only in package and class name. Arena of other object is copied in one piece
+     * and its offsets are moved by position it was copied to.
+     *
+     * @param from object to copy members from
+     */
+    void copyMembers(LineGenerationOptions from)
+    {
+        int offset = textLength;
+        ensureText(from.textLength);
+        System.arraycopy(from.text, 0, text, offset, from.textLength);
+        textLength += from.textLength;
+
+        for(int i = 0; i < from.fieldCount; ++i)
+        {
+            fields = addSpan(fields, fieldCount++, from.fields[2 * i] + offset, from.fields[2 * i + 1] + offset);
+        }
+
+        int firstPart = methodPartCount;
+        for(int i = 0; i < from.methodCount; ++i)
+        {
+            returnTypes = addSymbol(returnTypes, methodCount, from.returnTypes[i]);
+            methods = addIndex(methods, methodCount++, firstPart + from.methods[i]);
+        }
+        for(int i = 0; i < from.methodPartCount; ++i)
+        {
+            methodParts = addSpan(methodParts, methodPartCount++, from.methodParts[2 * i] + offset, from.methodParts[2 * i + 1] + offset);
+        }
+
+        flags = from.flags;
+        problem = from.problem;
+    }
+
+    /**
+     * Writes fields, methods, flags and problem, so they can be read by {@link #readMembers} in another run
+     *
+     * @param out stream to write to
+     * @throws IOException if stream can't be written
+     */
+    void writeMembers(DataOutputStream out) throws IOException
+    {
+        out.writeByte(flags);
+        out.writeUTF(problem != null ? problem : "");
+        out.writeInt(textLength);
+        out.write(text, 0, textLength);
+
+        out.writeInt(fieldCount);
+        for(int i = 0; i < 2 * fieldCount; ++i)
+        {
+            out.writeInt(fields[i]);
+        }
+
+        out.writeInt(methodCount);
+        for(int i = 0; i < methodCount; ++i)
+        {
+            out.writeInt(methods[i]);
+            out.writeUTF(returnTypes[i].text);
+        }
+
+        out.writeInt(methodPartCount);
+        for(int i = 0; i < 2 * methodPartCount; ++i)
+        {
+            out.writeInt(methodParts[i]);
+        }
+    }
+
+    /**
+     * Reads fields, methods, flags and problem written by {@link #writeMembers}
+     *
+     * @param in stream to read from
+     * @param symbols table that return types are shared through, null if they shouldn't be shared
+     * @return object holding read members, without package and class name
+     * @throws IOException if stream can't be read or doesn't hold valid members
+     */
+    static LineGenerationOptions readMembers(DataInputStream in, SymbolTable symbols) throws IOException
+    {
+        LineGenerationOptions options = new LineGenerationOptions();
+        options.flags = in.readByte();
+        options.problem = in.readUTF();
+        options.textLength = checkCount(in.readInt(), Integer.MAX_VALUE);
+        options.text = new byte[options.textLength];
+        in.readFully(options.text);
+
+        options.fieldCount = checkCount(in.readInt(), options.textLength);
+        options.fields = new int[2 * options.fieldCount];
+        for(int i = 0; i < options.fields.length; ++i)
+        {
+            options.fields[i] = checkCount(in.readInt(), options.textLength);
+        }
+
+        options.methodCount = checkCount(in.readInt(), options.textLength);
+        options.methods = new int[options.methodCount];
+        options.returnTypes = new Symbol[options.methodCount];
+        for(int i = 0; i < options.methodCount; ++i)
+        {
+            options.methods[i] = in.readInt();
+            String returnType = in.readUTF();
+            options.returnTypes[i] = SymbolTable.intern(symbols, returnType, 0, returnType.length());
+        }
+
+        options.methodPartCount = checkCount(in.readInt(), options.textLength);
+        options.methodParts = new int[2 * options.methodPartCount];
+        for(int i = 0; i < options.methodParts.length; ++i)
+        {
+            options.methodParts[i] = checkCount(in.readInt(), options.textLength);
+        }
+        for(int i = 0; i < options.methodCount; ++i)
+        {
+            checkCount(options.methods[i], options.methodPartCount - 1);
+        }
+
+        return options;
+    }
+
+    /**
+     * Checks number read from stream
+     *
+     * @param value read number
+     * @param max largest valid number
+     * @return read number
+     * @throws IOException if number is negative or larger than max
+     */
+    private static int checkCount(int value, int max) throws IOException
+    {
+        if(value < 0 || value > max)
+        {
+            throw new IOException("Invalid number " + value);
+        }
+        return value;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder out = new StringBuilder();
+
+        appendClassName(out);
+        out.append("\n[");
+        for(int i = 0; i < packageCount; ++i)
+        {
+            appendPackage(i, out.append(i == 0 ? "" : ", "));
+        }
+        out.append("]\n").append(isJavadocGeneration()).append('\n').append(isMainGeneration()).append("\n[");
+        for(int i = 0; i < methodCount; ++i)
+        {
+            out.append(i == 0 ? "[" : ", [");
+            int end = i + 1 < methodCount ? methods[i + 1] : methodPartCount;
+            appendSignature(i, out);
+            out.append(", ").append(returnTypes[i].text);
+            for(int part = methods[i] + 1; part < end; ++part)
+            {
+                appendText(methodParts[2 * part], methodParts[2 * part + 1], out.append(", "));
+            }
+            out.append(']');
+        }
+        out.append("]\n[");
+        for(int i = 0; i < fieldCount; ++i)
+        {
+            appendField(i, out.append(i == 0 ? "" : ", "));
+        }
+        return out.append(']').toString();
+    }
+
+    /**
+     * Method generates path from packageStructure
+     *
+     * @return String holding path to package, with separator of current platform
+     */
+    public String generatePath()
+    {
+        StringBuilder path = new StringBuilder();
+
+        for (int i = 0; i < packageCount; ++i)
+        {
+            appendPackage(i, path);
+            path.append(File.separatorChar);
+        }
+
+        return path.toString();
+    }
+
+    /**
+     * Method resolves directory of package from packageStructure
+     *
+     * @param root directory that packages are placed in
+     * @return path to package directory
+     */
+    public Path packageDirectory(Path root)
+    {
+        Path directory = root;
+
+        for (int i = 0; i < packageCount; ++i)
+        {
+            directory = directory.resolve(packages[i].text);
+        }
+
+        return directory;
+    }
+
+    /**
+     * Adds one part of last added method. Args are written in method signature in the same order
+     * as they are added, so they are found there after previous part instead of being copied to arena again.
+     *
+     * @param line line holding part
+     * @param partStart position where part starts
+     * @param partEnd position right after part
+     */
+    private void addMethodPart(CharSequence line, int partStart, int partEnd)
+    {
+        int first = methods[methodCount - 1];
+        int start = -1;
+
+        if(methodPartCount > first)
+        {
+            int from = methodPartCount - 1 > first ? methodParts[2 * methodPartCount - 1] : methodParts[2 * first];
+            start = find(line, partStart, partEnd, from, methodParts[2 * first + 1]);
+        }
+
+        if(start < 0)
+        {
+            start = textLength;
+            methodParts = addSpan(methodParts, methodPartCount++, start, append(line, partStart, partEnd));
+        }
+        else
+        {
+            methodParts = addSpan(methodParts, methodPartCount++, start, start + partEnd - partStart);
+        }
+    }
+
+    /**
+     * Finds characters in part of arena
+     *
+     * @param line line holding characters to find
+     * @param charsStart position where characters start
+     * @param charsEnd position right after characters
+     * @param from start of searched part of arena
+     * @param to end of searched part of arena
+     * @return start of found characters or -1 if they are not there
+     */
+    private int find(CharSequence line, int charsStart, int charsEnd, int from, int to)
+    {
+        int length = charsEnd - charsStart;
+
+        for(int start = from; start + length <= to; ++start)
+        {
+            int i = 0;
+            while(i < length && text[start + i] == (byte) line.charAt(charsStart + i))
+            {
+                ++i;
+            }
+            if(i == length)
+            {
+                return start;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Appends one part of method to buffer
+     *
+     * @param index index of method
+     * @param part index of part inside method
+     * @param out buffer to append to
+     */
+    private void appendMethodPart(int index, int part, StringBuilder out)
+    {
+        int span = 2 * (methods[index] + part);
+        appendText(methodParts[span], methodParts[span + 1], out);
+    }
+
+    /**
+     * Writes one part of method as UTF-8
+     *
+     * @param index index of method
+     * @param part index of part inside method
+     * @param out output to write to
+     */
+    private void writeMethodPart(int index, int part, ByteOutput out)
+    {
+        int span = 2 * (methods[index] + part);
+        out.put(text, methodParts[span], methodParts[span + 1] - methodParts[span]);
+    }
+
+    /**
+     * Appends part of line to arena
+     *
+     * @param line line holding characters to append
+     * @param start position where characters start
+     * @param end position right after characters
+     * @return end of appended characters in arena
+     */
+    private int append(CharSequence line, int start, int end)
+    {
+        ensureText(end - start);
+        for(int i = start; i < end; ++i)
+        {
+            text[textLength++] = (byte) line.charAt(i);
+        }
+        return textLength;
+    }
+
+    /**
+     * Appends one character to arena
+     *
+     * @param c character to append
+     * @return end of appended character in arena
+     */
+    private int appendChar(char c)
+    {
+        ensureText(1);
+        text[textLength++] = (byte) c;
+        return textLength;
+    }
+
+    /**
+     * Grows arena if it can't hold given number of new characters
+     *
+     * @param extra number of new characters
+     */
+    private void ensureText(int extra)
+    {
+        if(textLength + extra > text.length)
+        {
+            text = Arrays.copyOf(text, Math.max(textLength + extra, Math.max(64, 2 * text.length)));
+        }
+    }
+
+    /**
+     * Appends characters of arena to buffer
+     *
+     * @param start start of characters in arena
+     * @param end end of characters in arena
+     * @param out buffer to append to
+     */
+    private void appendText(int start, int end, StringBuilder out)
+    {
+        for(int i = start; i < end; ++i)
+        {
+            out.append((char) (text[i] & 0xff));
+        }
+    }
+
+    /**
+     * Adds span at the end of array of spans, grows array if it's full
+     *
+     * @param spans array of spans
+     * @param count number of spans in array
+     * @param start start of new span
+     * @param end end of new span
+     * @return array holding new span
+     */
+    private static int[] addSpan(int[] spans, int count, int start, int end)
+    {
+        if(2 * count + 2 > spans.length)
+        {
+            spans = Arrays.copyOf(spans, Math.max(8, 2 * spans.length));
+        }
+        spans[2 * count] = start;
+        spans[2 * count + 1] = end;
+        return spans;
+    }
+
+    /**
+     * Adds value at the end of array, grows array if it's full
+     *
+     * @param values array of values
+     * @param count number of values in array
+     * @param value new value
+     * @return array holding new value
+     */
+    private static int[] addIndex(int[] values, int count, int value)
+    {
+        if(count + 1 > values.length)
+        {
+            values = Arrays.copyOf(values, Math.max(4, 2 * values.length));
+        }
+        values[count] = value;
+        return values;
+    }
+
+    /**
+     * Adds symbol at the end of array, grows array if it's full
+     *
+     * @param symbols array of symbols
+     * @param count number of symbols in array
+     * @param symbol new symbol
+     * @return array holding new symbol
+     */
+    private static Symbol[] addSymbol(Symbol[] symbols, int count, Symbol symbol)
+    {
+        if(count + 1 > symbols.length)
+        {
+            symbols = Arrays.copyOf(symbols, Math.max(4, 2 * symbols.length));
+        }
+        symbols[count] = symbol;
+        return symbols;
+    }
+
+    /**
+     * Shrinks array to given size
+     *
+     * @param symbols array to shrink
+     * @param size used size of array
+     * @return array of given size
+     */
+    private static Symbol[] trim(Symbol[] symbols, int size)
+    {
+        if(size == 0)
+        {
+            return NO_SYMBOLS;
+        }
+        return symbols.length > size ? Arrays.copyOf(symbols, size) : symbols;
+    }
+
+    /**
+     * Shrinks array to given size
+     *
+     * @param values array to shrink
+     * @param size used size of array
+     * @return array of given size
+     */
+    private static int[] trim(int[] values, int size)
+    {
+        if(size == 0)
+        {
+            return NO_SPANS;
+        }
+        return values.length > size ? Arrays.copyOf(values, size) : values;
+    }
+}
@@ -1,283 +1,624 @@
-import java.util.ArrayList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-/**
- * Class that handles parsing one line of user input to one {@link LineGenerationOptions} class that contains all
- * necessary data for {@link OutputHandler} to generate java files
- */
-public class LineHandler
-{
-    /**
-     * Function creates chain of responsibilities to parse line to {@link LineGenerationOptions}
-     *
-     * @param options LineGenerationOptions object that we want to operate on
-     * @param line line to parse
-     * @return LineGenerationOptions with filled fields by parsing line
-     */
-    public static LineGenerationOptions handleLine(LineGenerationOptions options, String line)
-    {
-        OptionHandler first = new PackageHandler();
-        first.add(new ClassNameHandler());
-        first.add(new MethodNameHandler());
-        first.add(new FieldHandler());
-        first.add(new JavaDocHandler());
-        first.add(new MainGenerationHanler());
-
-        line = first.handleOption(options, line);
-        String lastLine = "";
-
-        while(!line.equals(lastLine))
-        {
-            lastLine = line;
-            line = first.handleOption(options, line);
-        }
-
-        options.problem = line;
-
-        return options;
-    }
-
-    /**
-     * Test method for this class
-     *
-     * @param args cmd arguments
-     */
-    public static void main(String[] args)
-    {
-        LineGenerationOptions test = new LineGenerationOptions();
-        String line = "pl.agh.Test public static void dsf() public void xt(int x) int=x boolean=y nodoc nomain";
-
-        System.out.println("" + test);
-        System.out.println("\nProblem with: " + line);
-    }
-}
-
-
-/**
- * Interface for classes that want to connect to chain of responsibilities
- */
-interface OptionHandler
-{
-    /**
-     * Method adds OptionHandler object to the end of chain
-     *
-     * @param optionToAdd new OptionHandler object that we want to add to the end of chain
-     */
-    void add(OptionHandler optionToAdd);
-
-    /**
-     * handles parsing of line
-     *
-     * @param options LineGenerationOptions object that we want to operate on
-     * @param line line to parse
-     * @return filled LineGenerationOptions by object connected to this chain
-     */
-    String handleOption(LineGenerationOptions options, String line);
-}
-
-
-/**
- * Class implements default add method along with handleNextOption method that helps in creating handleOption method in derived classes
- */
-abstract class AddLineHandlerToChain implements OptionHandler
-{
-    /**
-     * holds reference to next OptionHandler
-     */
-    OptionHandler nextOption;
-
-    public void add(OptionHandler optionToAdd)
-    {
-        if(nextOption != null)
-        {
-            nextOption.add(optionToAdd);
-        }
-        else
-        {
-            nextOption = optionToAdd;
-        }
-    }
-
-    /**
-     * Method checks for end of chain
-     *
-     * @param options LineGenerationOptions object that we want to operate on
-     * @param line line to parse
-     * @return null if end of chain, or recursive call of next handleOption if it's not end of chain
-     */
-    public String handleNextOption(LineGenerationOptions options, String line)
-    {
-        if(nextOption != null)
-        {
-            return nextOption.handleOption(options, line);
-        }
-        else
-        {
-            return line;
-        }
-    }
-}
-
-
-/**
- * Handles package information parsing
- */
-class PackageHandler extends AddLineHandlerToChain
-{
-    public String handleOption(LineGenerationOptions options, String line)
-    {
-        String regexp = "^([a-zA-Z0-9]+\\.)+";
-        Matcher optionMatcher = Pattern.compile(regexp).matcher(line);
-        if(optionMatcher.find())
-        {
-            for(String folder : optionMatcher.group().replaceAll("\\.$", "").split("\\."))
-            {
-                options.packageStructure.add(folder);
-            }
-
-            line = line.replaceFirst(regexp, "%classname%=");
-            return handleNextOption(options, line);
-        }
-        else
-        {
-            line = line.replaceFirst("^\\.", "%classname%=");
-            return handleNextOption(options, line);
-        }
-    }
-}
-
-
-/**
- * Handles class name information parsing
- */
-class ClassNameHandler extends AddLineHandlerToChain
-{
-    public String handleOption(LineGenerationOptions options, String line)
-    {
-        String regexp = "^%classname%=[a-zA-Z0-9]+";
-        Matcher optionMatcher = Pattern.compile(regexp).matcher(line);
-        if(optionMatcher.find())
-        {
-            options.className = optionMatcher.group().replaceAll("%classname%=", "");
-
-            line = line.replaceFirst(regexp, "");
-            return handleNextOption(options, line);
-        }
-        else
-        {
-            return handleNextOption(options, line);
-        }
-    }
-}
-
-
-/**
- * Handles method names and their args parsing
- */
-class MethodNameHandler extends AddLineHandlerToChain
-{
-    public String handleOption(LineGenerationOptions options, String line)
-    {
-        String regexp = " (public |private |protected )?(static )?[a-zA-Z0-9]+ [a-zA-Z0-9]+\\(([a-zA-Z0-9]+ +[a-zA-Z0-9]+(, +)?)*\\)";
-        Matcher optionMatcher = Pattern.compile(regexp).matcher(line);
-        if(optionMatcher.find())
-        {
-            String fieldsString = optionMatcher.group().replaceAll("^ ", "");
-
-            options.additionalMethods.add(new ArrayList<>());
-            options.additionalMethods.get(options.additionalMethods.size()-1).add(fieldsString);
-
-            options.additionalMethods.get(options.additionalMethods.size()-1).add(fieldsString.replaceFirst(" ?(public |private |protected )?(static )?", "").replaceFirst(" [a-zA-Z0-9]+\\(([a-zA-Z0-9]+ +[a-zA-Z0-9]+(, +)?)*\\)", ""));
-
-            fieldsString = fieldsString.replaceFirst(" ?(public |private |protected )?(static )?[a-zA-Z0-9]+ [a-zA-Z0-9]+\\(", "").replaceFirst("\\)", "");
-
-            if(!fieldsString.isEmpty())
-            {
-                String[] fieldsArray = fieldsString.split(" ");
-
-                for (int i = 0; i < fieldsArray.length; ++i)
-                {
-                    options.additionalMethods.get(options.additionalMethods.size() - 1).add(fieldsArray[i++]);
-                    options.additionalMethods.get(options.additionalMethods.size() - 1).add(fieldsArray[i].replace(",", ""));
-                }
-            }
-
-            line = line.replaceFirst(regexp, "");
-            return handleNextOption(options, line);
-        }
-        else
-        {
-            return handleNextOption(options, line);
-        }
-    }
-}
-
-/**
- * Handles fields information parsing
- */
-class FieldHandler extends AddLineHandlerToChain
-{
-    public String handleOption(LineGenerationOptions options, String line)
-    {
-        String regexp = " [a-zA-Z0-9]+=[a-zA-Z0-9]+";
-        Matcher optionMatcher = Pattern.compile(regexp).matcher(line);
-        if(optionMatcher.find())
-        {
-            options.fields.add(optionMatcher.group().replaceAll("^ ", "").replaceAll("=", " ") + ";");
-
-            line = line.replaceFirst(regexp, "");
-            return handleNextOption(options, line);
-        }
-        else
-        {
-            return handleNextOption(options, line);
-        }
-    }
-}
-
-/**
- * Handles checking for javadoc generation
- */
-class JavaDocHandler extends AddLineHandlerToChain
-{
-    public String handleOption(LineGenerationOptions options, String line)
-    {
-        String regexp = " nodoc";
-        Matcher optionMatcher = Pattern.compile(regexp).matcher(line);
-        if(optionMatcher.find())
-        {
-            options.javadocGeneration = false;
-
-            line = line.replaceFirst(regexp, "");
-            return handleNextOption(options, line);
-        }
-        else
-        {
-            return handleNextOption(options, line);
-        }
-    }
-}
-
-/**
- * Handles checking for main method generation
- */
-class MainGenerationHanler extends AddLineHandlerToChain
-{
-    public String handleOption(LineGenerationOptions options, String line)
-    {
-        String regexp = " nomain";
-        Matcher optionMatcher = Pattern.compile(regexp).matcher(line);
-        if(optionMatcher.find())
-        {
-            options.mainGeneration = false;
-
-            line = line.replaceFirst(regexp, "");
-            return handleNextOption(options, line);
-        }
-        else
-        {
-            return handleNextOption(options, line);
-        }
-    }
-}
\ No newline at end of file
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Class that handles parsing one line of user input to one {@link LineGenerationOptions} class that contains all
+ * necessary data for {@link OutputHandler} to generate java files
+ */
+public class LineHandler
+{
+    /**
+     * Determines if every line should be parsed by chain of responsibilities instead of {@link LineTokenizer}
+     */
+    static boolean regexChain = false;
+
+    /**
+     * cache of parsed lines shared by whole run, null if every line should be parsed
+     */
+    static ParseCache parseCache = null;
+
+    /**
+     * Function parses line to {@link LineGenerationOptions} with {@link LineTokenizer},
+     * lines that tokenizer can't parse are parsed by chain of responsibilities
+     *
+     * @param options LineGenerationOptions object that we want to operate on
+     * @param line line to parse
+     * @return LineGenerationOptions with filled fields by parsing line
+     */
+    public static LineGenerationOptions handleLine(LineGenerationOptions options, CharSequence line)
+    {
+        return handleLine(options, line, null);
+    }
+
+    /**
+     * Function parses line to {@link LineGenerationOptions} with {@link LineTokenizer},
+     * lines that tokenizer can't parse are parsed by chain of responsibilities.
+     * When {@link #parseCache} is set, members of line are copied from cache if the same members were parsed before.
+     *
+     * @param options LineGenerationOptions object that we want to operate on
+     * @param line line to parse
+     * @param symbols table that package folders and return types are shared through, null if they shouldn't be shared
+     * @return LineGenerationOptions with filled fields by parsing line
+     */
+    public static LineGenerationOptions handleLine(LineGenerationOptions options, CharSequence line, SymbolTable symbols)
+    {
+        parse(options, line, symbols, null);
+        options.trim();
+        return options;
+    }
+
+    /**
+     * Parses line like {@link #handleLine(LineGenerationOptions, CharSequence, SymbolTable)}, but leaves arrays
+     * of options untrimmed, so they can be reused by next line, see {@link LineParser}
+     *
+     * @param options LineGenerationOptions object that we want to operate on
+     * @param line line to parse
+     * @param symbols table that package folders and return types are shared through, null if they shouldn't be shared
+     * @param chain chain of handlers built by {@link #createChain}, null if chain should be built when it's needed
+     */
+    static void parse(LineGenerationOptions options, CharSequence line, SymbolTable symbols, OptionHandler chain)
+    {
+        ParseCache cache = parseCache;
+        if(cache != null && cache.reuse(options, line, symbols))
+        {
+            return;
+        }
+
+        boolean tokenized;
+        GeneratorMetrics metrics = GeneratorMetrics.current;
+        if(metrics != null)
+        {
+            tokenized = handleLineMeasured(options, line, symbols, chain, metrics);
+        }
+        else
+        {
+            tokenized = !regexChain && LineTokenizer.tokenize(options, line, symbols);
+            if(!tokenized)
+            {
+                runChain(chain != null ? chain : createChain(symbols), options, line.toString());
+            }
+        }
+
+        if(cache != null && (tokenized || regexChain && LineTokenizer.tokenize(new LineGenerationOptions(), line)))
+        {
+            cache.add(line, options);
+        }
+    }
+
+    /**
+     * Parses line with tokenizer or chain like {@link #handleLine(LineGenerationOptions, CharSequence, SymbolTable)},
+     * records time of parsing and tokenizing
+     *
+     * @param options LineGenerationOptions object that we want to operate on
+     * @param line line to parse
+     * @param symbols table that package folders and return types are shared through, null if they shouldn't be shared
+     * @param chain chain of handlers built by {@link #createChain}, null if chain should be built when it's needed
+     * @param metrics metrics that times are recorded in
+     * @return true if line was parsed by tokenizer, false if it was parsed by chain
+     */
+    private static boolean handleLineMeasured(LineGenerationOptions options, CharSequence line, SymbolTable symbols, OptionHandler chain, GeneratorMetrics metrics)
+    {
+        long start = System.nanoTime();
+        boolean tokenized = false;
+
+        if(!regexChain)
+        {
+            tokenized = LineTokenizer.tokenize(options, line, symbols);
+            metrics.tokenize.since(start);
+        }
+        if(!tokenized)
+        {
+            runChain(chain != null ? chain : createChain(symbols), options, line.toString());
+        }
+
+        metrics.parse.since(start);
+        return tokenized;
+    }
+
+    /**
+     * Function creates chain of responsibilities to parse line to {@link LineGenerationOptions}
+     *
+     * @param options LineGenerationOptions object that we want to operate on
+     * @param line line to parse
+     * @return LineGenerationOptions with filled fields by parsing line
+     */
+    public static LineGenerationOptions handleLineWithChain(LineGenerationOptions options, String line)
+    {
+        return handleLineWithChain(options, line, null);
+    }
+
+    /**
+     * Function creates chain of responsibilities to parse line to {@link LineGenerationOptions}
+     *
+     * @param options LineGenerationOptions object that we want to operate on
+     * @param line line to parse
+     * @param symbols table that package folders and return types are shared through, null if they shouldn't be shared
+     * @return LineGenerationOptions with filled fields by parsing line
+     */
+    public static LineGenerationOptions handleLineWithChain(LineGenerationOptions options, String line, SymbolTable symbols)
+    {
+        return runChain(createChain(symbols), options, line);
+    }
+
+    /**
+     * Function creates chain of responsibilities. Handlers keep their matchers between lines,
+     * so chain can be used by one thread at a time. When {@link GeneratorMetrics} are enabled, every handler is timed.
+     *
+     * @param symbols table that package folders and return types are shared through, null if they shouldn't be shared
+     * @return first handler of chain
+     */
+    static OptionHandler createChain(SymbolTable symbols)
+    {
+        GeneratorMetrics metrics = GeneratorMetrics.current;
+
+        OptionHandler[] handlers = {new PackageHandler(symbols), new ClassNameHandler(), new MethodNameHandler(symbols),
+                new FieldHandler(), new JavaDocHandler(), new MainGenerationHanler()};
+
+        OptionHandler first = null;
+        for(OptionHandler handler : handlers)
+        {
+            if(metrics != null)
+            {
+                handler = new TimedOptionHandler(handler, metrics.handler(handler.getClass()));
+            }
+
+            if(first == null)
+            {
+                first = handler;
+            }
+            else
+            {
+                first.add(handler);
+            }
+        }
+
+        return first;
+    }
+
+    /**
+     * Function passes line through chain of responsibilities until chain doesn't change it anymore
+     *
+     * @param first first handler of chain
+     * @param options LineGenerationOptions object that we want to operate on
+     * @param line line to parse
+     * @return LineGenerationOptions with filled fields by parsing line
+     */
+    static LineGenerationOptions runChain(OptionHandler first, LineGenerationOptions options, String line)
+    {
+        GeneratorMetrics metrics = GeneratorMetrics.current;
+        long start = metrics != null ? System.nanoTime() : 0;
+
+        line = first.handleOption(options, line);
+        String lastLine = "";
+        int passes = 1;
+
+        while(!line.equals(lastLine))
+        {
+            lastLine = line;
+            line = first.handleOption(options, line);
+            ++passes;
+        }
+
+        options.problem = line;
+
+        if(metrics != null)
+        {
+            metrics.chainPasses.record(passes);
+            metrics.chain.since(start);
+        }
+
+        return options;
+    }
+
+    /**
+     * Test method for this class
+     *
+     * @param args cmd arguments
+     */
+    public static void main(String[] args)
+    {
+        LineGenerationOptions test = new LineGenerationOptions();
+        String line = "pl.agh.Test public static void dsf() public void xt(int x) int=x boolean=y nodoc nomain";
+
+        System.out.println("" + test);
+        System.out.println("\nProblem with: " + line);
+    }
+}
+
+
+/**
+ * Class implements default add method along with handleNextOption method that helps in creating handleOption method in derived classes
+ */
+abstract class AddLineHandlerToChain implements OptionHandler
+{
+    /**
+     * holds reference to next OptionHandler
+     */
+    OptionHandler nextOption;
+
+    public void add(OptionHandler optionToAdd)
+    {
+        if(nextOption != null)
+        {
+            nextOption.add(optionToAdd);
+        }
+        else
+        {
+            nextOption = optionToAdd;
+        }
+    }
+
+    /**
+     * Method checks for end of chain
+     *
+     * @param options LineGenerationOptions object that we want to operate on
+     * @param line line to parse
+     * @return null if end of chain, or recursive call of next handleOption if it's not end of chain
+     */
+    public String handleNextOption(LineGenerationOptions options, String line)
+    {
+        if(nextOption != null)
+        {
+            return nextOption.handleOption(options, line);
+        }
+        else
+        {
+            return line;
+        }
+    }
+
+    /**
+     * Replaces part of line found by matcher, like line.replaceFirst(regexp, replacement) would,
+     * without compiling regular expression again
+     *
+     * @param line line that matcher searched
+     * @param found matcher that found part to replace
+     * @param replacement text put in place of found part, taken literally
+     * @return line with replaced part
+     */
+    static String replaceFound(String line, Matcher found, String replacement)
+    {
+        return line.substring(0, found.start()) + replacement + line.substring(found.end());
+    }
+}
+
+
+/**
+ * Records time spent by handler of chain, without time spent by handlers after it.
+ * Used only when {@link GeneratorMetrics} are enabled.
+ */
+class TimedOptionHandler implements OptionHandler
+{
+    /**
+     * handler that is timed
+     */
+    private OptionHandler handler;
+
+    /**
+     * histogram that times are recorded in
+     */
+    private Histogram timing;
+
+    /**
+     * time spent by this handler together with handlers after it during last call, read by previous timed handler
+     */
+    private long lastTime;
+
+    /**
+     * timed handler placed right after this one, null if this one is last
+     */
+    private TimedOptionHandler nextTimed;
+
+    /**
+     * Constructor of TimedOptionHandler
+     *
+     * @param handler handler that is timed
+     * @param timing histogram that times are recorded in
+     */
+    TimedOptionHandler(OptionHandler handler, Histogram timing)
+    {
+        this.handler = handler;
+        this.timing = timing;
+    }
+
+    public void add(OptionHandler optionToAdd)
+    {
+        if(nextTimed == null && optionToAdd instanceof TimedOptionHandler)
+        {
+            nextTimed = (TimedOptionHandler) optionToAdd;
+        }
+        handler.add(optionToAdd);
+    }
+
+    public String handleOption(LineGenerationOptions options, String line)
+    {
+        TimedOptionHandler next = nextTimed;
+        if(next != null)
+        {
+            next.lastTime = 0;
+        }
+
+        long start = System.nanoTime();
+        String result = handler.handleOption(options, line);
+        lastTime = System.nanoTime() - start;
+
+        timing.record(lastTime - (next != null ? next.lastTime : 0));
+        return result;
+    }
+}
+
+
+/**
+ * Handles package information parsing
+ */
+class PackageHandler extends AddLineHandlerToChain
+{
+    /**
+     * matches package folders at the beginning of line
+     */
+    private static final Pattern PACKAGE = Pattern.compile("^([a-zA-Z0-9]+\\.)+");
+
+    /**
+     * table that package folders are shared through, null if they shouldn't be shared
+     */
+    private SymbolTable symbols;
+
+    /**
+     * matcher of package, reused by every line
+     */
+    private Matcher packageMatcher = PACKAGE.matcher("");
+
+    /**
+     * Constructor of PackageHandler
+     *
+     * @param symbols table that package folders are shared through, null if they shouldn't be shared
+     */
+    PackageHandler(SymbolTable symbols)
+    {
+        this.symbols = symbols;
+    }
+
+    public String handleOption(LineGenerationOptions options, String line)
+    {
+        Matcher optionMatcher = packageMatcher.reset(line);
+        if(optionMatcher.find())
+        {
+            int folderStart = 0;
+            for(int i = 0; i < optionMatcher.end(); ++i)
+            {
+                if(line.charAt(i) == '.')
+                {
+                    options.addPackage(SymbolTable.intern(symbols, line, folderStart, i));
+                    folderStart = i + 1;
+                }
+            }
+
+            line = replaceFound(line, optionMatcher, "%classname%=");
+            return handleNextOption(options, line);
+        }
+        else
+        {
+            line = line.startsWith(".") ? "%classname%=" + line.substring(1) : line;
+            return handleNextOption(options, line);
+        }
+    }
+}
+
+
+/**
+ * Handles class name information parsing
+ */
+class ClassNameHandler extends AddLineHandlerToChain
+{
+    /**
+     * matches class name marked by {@link PackageHandler}
+     */
+    private static final Pattern CLASS_NAME = Pattern.compile("^%classname%=[a-zA-Z0-9]+");
+
+    /**
+     * matcher of class name, reused by every line
+     */
+    private Matcher classNameMatcher = CLASS_NAME.matcher("");
+
+    public String handleOption(LineGenerationOptions options, String line)
+    {
+        Matcher optionMatcher = classNameMatcher.reset(line);
+        if(optionMatcher.find())
+        {
+            options.setClassName(line, "%classname%=".length(), optionMatcher.end());
+
+            line = replaceFound(line, optionMatcher, "");
+            return handleNextOption(options, line);
+        }
+        else
+        {
+            return handleNextOption(options, line);
+        }
+    }
+}
+
+
+/**
+ * Handles method names and their args parsing
+ */
+class MethodNameHandler extends AddLineHandlerToChain
+{
+    /**
+     * matches whole method
+     */
+    private static final Pattern METHOD = Pattern.compile(" (public |private |protected )?(static )?[a-zA-Z0-9]+ [a-zA-Z0-9]+\\(([a-zA-Z0-9]+ +[a-zA-Z0-9]+(, +)?)*\\)");
+
+    /**
+     * matches modifiers at the beginning of method
+     */
+    private static final Pattern MODIFIERS = Pattern.compile(" ?(public |private |protected )?(static )?");
+
+    /**
+     * matches name and args of method
+     */
+    private static final Pattern NAME_AND_ARGUMENTS = Pattern.compile(" [a-zA-Z0-9]+\\(([a-zA-Z0-9]+ +[a-zA-Z0-9]+(, +)?)*\\)");
+
+    /**
+     * matches everything before args of method
+     */
+    private static final Pattern BEFORE_ARGUMENTS = Pattern.compile(" ?(public |private |protected )?(static )?[a-zA-Z0-9]+ [a-zA-Z0-9]+\\(");
+
+    /**
+     * table that return types are shared through, null if they shouldn't be shared
+     */
+    private SymbolTable symbols;
+
+    /**
+     * matcher of method, reused by every line
+     */
+    private Matcher methodMatcher = METHOD.matcher("");
+
+    /**
+     * matcher of modifiers, reused by every method
+     */
+    private Matcher modifiersMatcher = MODIFIERS.matcher("");
+
+    /**
+     * matcher of name and args, reused by every method
+     */
+    private Matcher nameAndArgumentsMatcher = NAME_AND_ARGUMENTS.matcher("");
+
+    /**
+     * matcher of part before args, reused by every method
+     */
+    private Matcher beforeArgumentsMatcher = BEFORE_ARGUMENTS.matcher("");
+
+    /**
+     * Constructor of MethodNameHandler
+     *
+     * @param symbols table that return types are shared through, null if they shouldn't be shared
+     */
+    MethodNameHandler(SymbolTable symbols)
+    {
+        this.symbols = symbols;
+    }
+
+    public String handleOption(LineGenerationOptions options, String line)
+    {
+        Matcher optionMatcher = methodMatcher.reset(line);
+        if(optionMatcher.find())
+        {
+            options.addMethod(line, optionMatcher.start() + 1, optionMatcher.end(), returnType(line.substring(optionMatcher.start() + 1, optionMatcher.end())));
+
+            String fieldsString = beforeArgumentsMatcher.reset(line).region(optionMatcher.start() + 1, optionMatcher.end()).find()
+                    ? line.substring(beforeArgumentsMatcher.end(), optionMatcher.end()) : line.substring(optionMatcher.start() + 1, optionMatcher.end());
+            int close = fieldsString.indexOf(')');
+            if(close >= 0)
+            {
+                fieldsString = fieldsString.substring(0, close) + fieldsString.substring(close + 1);
+            }
+
+            if(!fieldsString.isEmpty())
+            {
+                String[] fieldsArray = fieldsString.split(" ");
+
+                for (int i = 0; i < fieldsArray.length; ++i)
+                {
+                    options.addArgument(fieldsArray[i++], fieldsArray[i].replace(",", ""));
+                }
+            }
+
+            line = replaceFound(line, optionMatcher, "");
+            return handleNextOption(options, line);
+        }
+        else
+        {
+            return handleNextOption(options, line);
+        }
+    }
+
+    /**
+     * Finds return type of method by removing its modifiers, name and args
+     *
+     * @param method whole method
+     * @return symbol of return type
+     */
+    private Symbol returnType(String method)
+    {
+        String returnType = modifiersMatcher.reset(method).replaceFirst("");
+        returnType = nameAndArgumentsMatcher.reset(returnType).replaceFirst("");
+        return SymbolTable.intern(symbols, returnType, 0, returnType.length());
+    }
+}
+
+/**
+ * Handles fields information parsing
+ */
+class FieldHandler extends AddLineHandlerToChain
+{
+    /**
+     * matches field
+     */
+    private static final Pattern FIELD = Pattern.compile(" [a-zA-Z0-9]+=[a-zA-Z0-9]+");
+
+    /**
+     * matcher of field, reused by every line
+     */
+    private Matcher fieldMatcher = FIELD.matcher("");
+
+    public String handleOption(LineGenerationOptions options, String line)
+    {
+        Matcher optionMatcher = fieldMatcher.reset(line);
+        if(optionMatcher.find())
+        {
+            int equals = line.indexOf('=', optionMatcher.start());
+            options.addField(line, optionMatcher.start() + 1, equals, equals + 1, optionMatcher.end());
+
+            line = replaceFound(line, optionMatcher, "");
+            return handleNextOption(options, line);
+        }
+        else
+        {
+            return handleNextOption(options, line);
+        }
+    }
+}
+
+/**
+ * Handles checking for javadoc generation
+ */
+class JavaDocHandler extends AddLineHandlerToChain
+{
+    public String handleOption(LineGenerationOptions options, String line)
+    {
+        int found = line.indexOf(" nodoc");
+        if(found >= 0)
+        {
+            options.setJavadocGeneration(false);
+
+            line = line.substring(0, found) + line.substring(found + " nodoc".length());
+            return handleNextOption(options, line);
+        }
+        else
+        {
+            return handleNextOption(options, line);
+        }
+    }
+}
+
+/**
+ * Handles checking for main method generation
+ */
+class MainGenerationHanler extends AddLineHandlerToChain
+{
+    public String handleOption(LineGenerationOptions options, String line)
+    {
+        int found = line.indexOf(" nomain");
+        if(found >= 0)
+        {
+            options.setMainGeneration(false);
+
+            line = line.substring(0, found) + line.substring(found + " nomain".length());
+            return handleNextOption(options, line);
+        }
+        else
+        {
+            return handleNextOption(options, line);
+        }
+    }
+}
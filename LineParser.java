@@ -0,0 +1,60 @@
+/**
+ * Reusable parser of spec lines for streaming generation, used by one thread at a time.
+ * Chain of handlers is built once instead of for every line and its handlers reuse their matchers.
+ * In reuse mode one {@link LineGenerationOptions} object is cleared and filled by every line, so line parsed
+ * by {@link LineTokenizer} allocates nothing once arrays of options grew to size of largest line.
+ * Lines parsed by chain still create Strings of what is left of line after every handler.
+ * Options returned in reuse mode are valid only until next line is parsed, so reuse mode can't be used
+ * when options are kept after line is written, see {@link OutputSink#keepsLines()}.
+ */
+public class LineParser
+{
+    /**
+     * table that package folders and return types are shared through, null if they shouldn't be shared
+     */
+    private SymbolTable symbols;
+
+    /**
+     * chain of handlers used for lines that tokenizer can't parse
+     */
+    private OptionHandler chain;
+
+    /**
+     * options filled by every line, null if every line gets new object
+     */
+    private LineGenerationOptions reused;
+
+    /**
+     * Constructor of LineParser
+     *
+     * @param symbols table that package folders and return types are shared through, null if they shouldn't be shared
+     * @param reuseOptions true if one object should be filled by every line, false if every line gets new object
+     */
+    public LineParser(SymbolTable symbols, boolean reuseOptions)
+    {
+        this.symbols = symbols;
+        this.chain = LineHandler.createChain(symbols);
+        this.reused = reuseOptions ? new LineGenerationOptions() : null;
+    }
+
+    /**
+     * Parses line like {@link LineHandler#handleLine(LineGenerationOptions, CharSequence, SymbolTable)}
+     *
+     * @param line line to parse
+     * @return options parsed from line, in reuse mode valid only until next line is parsed
+     */
+    public LineGenerationOptions parse(CharSequence line)
+    {
+        if(reused == null)
+        {
+            LineGenerationOptions options = new LineGenerationOptions();
+            LineHandler.parse(options, line, symbols, chain);
+            options.trim();
+            return options;
+        }
+
+        reused.clear();
+        LineHandler.parse(reused, line, symbols, chain);
+        return reused;
+    }
+}
@@ -0,0 +1,318 @@
+import java.util.Scanner;
+
+/**
+ * Single pass parser of one line of user input. Splits line into tokens and matches them with state machine compiled
+ * from {@link SpecGrammar}, then fills {@link LineGenerationOptions} exactly as chain of {@link OptionHandler} objects
+ * in {@link LineHandler} would. Grammar accepts only lines for which that equality is certain, every other line
+ * is left for the chain.
+ *
+ * Accepted line looks like: header, then tokens each preceded by exactly one space.
+ * Header is "pkg.pkg.ClassName" or ".ClassName", token is method "[public |private |protected ][static ]type name(type name, type name)",
+ * field "type=name", "nodoc" or "nomain".
+ */
+public class LineTokenizer
+{
+    /**
+     * tokens of line being parsed, one buffer for every thread
+     */
+    private static final ThreadLocal<LineTokens> TOKENS = ThreadLocal.withInitial(LineTokens::new);
+
+    /**
+     * Parses line to options
+     *
+     * @param options LineGenerationOptions object that we want to operate on
+     * @param line line to parse
+     * @return true if line was parsed, false if line has to be parsed by chain of handlers, options are left untouched then
+     */
+    public static boolean tokenize(LineGenerationOptions options, CharSequence line)
+    {
+        return tokenize(options, line, null);
+    }
+
+    /**
+     * Parses line to options. Options are filled only after whole line matched grammar.
+     *
+     * @param options LineGenerationOptions object that we want to operate on
+     * @param line line to parse
+     * @param symbols table that package folders and return types are shared through, null if they shouldn't be shared
+     * @return true if line was parsed, false if line has to be parsed by chain of handlers, options are left untouched then
+     */
+    public static boolean tokenize(LineGenerationOptions options, CharSequence line, SymbolTable symbols)
+    {
+        LineTokens tokens = TOKENS.get();
+
+        if(!split(line, tokens) || !SpecGrammar.LINE.match(tokens))
+        {
+            return false;
+        }
+
+        apply(options, line, tokens, symbols);
+        options.problem = "";
+        return true;
+    }
+
+    /**
+     * Splits line into words and single characters and finds token class of each
+     *
+     * @param line line to split
+     * @param tokens buffer that tokens are written to
+     * @return true if line was split, false if it holds character that no token can start with
+     */
+    private static boolean split(CharSequence line, LineTokens tokens)
+    {
+        tokens.clear();
+        int pos = 0;
+
+        while(pos < line.length())
+        {
+            int end = wordEnd(line, pos);
+            int tokenClass;
+
+            if(end > pos)
+            {
+                tokenClass = wordClass(line, pos, end);
+            }
+            else
+            {
+                tokenClass = charClass(line.charAt(pos));
+                end = pos + 1;
+            }
+
+            if(tokenClass == SpecGrammar.OTHER)
+            {
+                return false;
+            }
+
+            tokens.add(tokenClass, pos, end);
+            pos = end;
+        }
+
+        tokens.add(SpecGrammar.END, pos, pos);
+        return true;
+    }
+
+    /**
+     * Fills options in order of tokens, following roles found by grammar.
+     * Arguments of method are added after method, when its closing bracket is reached.
+     *
+     * @param options LineGenerationOptions object that we want to operate on
+     * @param line parsed line
+     * @param tokens tokens of line with their roles
+     * @param symbols table that package folders and return types are shared through, null if they shouldn't be shared
+     */
+    private static void apply(LineGenerationOptions options, CharSequence line, LineTokens tokens, SymbolTable symbols)
+    {
+        int itemStart = 0;
+        int typeToken = 0;
+        int firstArgument = 0;
+
+        for(int i = 0; i < tokens.count; ++i)
+        {
+            int start = tokens.starts[i];
+            int end = tokens.ends[i];
+
+            switch(tokens.roles[i])
+            {
+                case SpecGrammar.PACKAGE:
+                    options.addPackage(SymbolTable.intern(symbols, line, start, end));
+                    break;
+                case SpecGrammar.CLASS_NAME:
+                    options.setClassName(line, start, end);
+                    break;
+                case SpecGrammar.NODOC_FLAG:
+                    options.setJavadocGeneration(false);
+                    break;
+                case SpecGrammar.NOMAIN_FLAG:
+                    options.setMainGeneration(false);
+                    break;
+                case SpecGrammar.ITEM_START:
+                    itemStart = end;
+                    break;
+                case SpecGrammar.FIELD_TYPE:
+                case SpecGrammar.RETURN_TYPE:
+                    typeToken = i;
+                    break;
+                case SpecGrammar.FIELD_VALUE:
+                    options.addField(line, tokens.starts[typeToken], tokens.ends[typeToken], start, end);
+                    break;
+                case SpecGrammar.METHOD_NAME:
+                    firstArgument = i + 1;
+                    break;
+                case SpecGrammar.METHOD_END:
+                    options.addMethod(line, itemStart, end, SymbolTable.intern(symbols, line, tokens.starts[typeToken], tokens.ends[typeToken]));
+                    for(int j = firstArgument; j < i; ++j)
+                    {
+                        if(tokens.roles[j] == SpecGrammar.ARGUMENT_NAME)
+                        {
+                            options.addArgument(line, tokens.starts[j - 2], tokens.ends[j - 2], tokens.starts[j], tokens.ends[j]);
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Finds token class of word
+     *
+     * @param line line containing word
+     * @param start position where word starts
+     * @param end position right after word
+     * @return class of keyword, flag, word starting like flag or plain word
+     */
+    private static int wordClass(CharSequence line, int start, int end)
+    {
+        char first = line.charAt(start);
+        if(first != 'n' && first != 'p' && first != 's')
+        {
+            return SpecGrammar.WORD;
+        }
+
+        if(wordStartsWith(line, start, end, "nodoc"))
+        {
+            return end - start == "nodoc".length() ? SpecGrammar.NODOC : SpecGrammar.FLAG_LIKE;
+        }
+        if(wordStartsWith(line, start, end, "nomain"))
+        {
+            return end - start == "nomain".length() ? SpecGrammar.NOMAIN : SpecGrammar.FLAG_LIKE;
+        }
+        if(wordEquals(line, start, end, "public") || wordEquals(line, start, end, "private") || wordEquals(line, start, end, "protected"))
+        {
+            return SpecGrammar.VISIBILITY;
+        }
+        return wordEquals(line, start, end, "static") ? SpecGrammar.STATIC : SpecGrammar.WORD;
+    }
+
+    /**
+     * Finds token class of character that can't be part of word
+     *
+     * @param c character
+     * @return class of punctuation character, {@link SpecGrammar#OTHER} for every other character
+     */
+    private static int charClass(char c)
+    {
+        switch(c)
+        {
+            case '.':
+                return SpecGrammar.DOT;
+            case ' ':
+                return SpecGrammar.SPACE;
+            case '=':
+                return SpecGrammar.EQUALS;
+            case '(':
+                return SpecGrammar.OPEN;
+            case ')':
+                return SpecGrammar.CLOSE;
+            case ',':
+                return SpecGrammar.COMMA;
+            default:
+                return SpecGrammar.OTHER;
+        }
+    }
+
+    /**
+     * Checks if word is equal to text
+     *
+     * @param line line containing word
+     * @param start position where word starts
+     * @param end position right after word
+     * @param text text to compare with
+     * @return true if word is equal to text
+     */
+    private static boolean wordEquals(CharSequence line, int start, int end, String text)
+    {
+        return end - start == text.length() && wordStartsWith(line, start, end, text);
+    }
+
+    /**
+     * Checks if word starts with text
+     *
+     * @param line line containing word
+     * @param start position where word starts
+     * @param end position right after word
+     * @param text text to compare with
+     * @return true if word starts with text
+     */
+    private static boolean wordStartsWith(CharSequence line, int start, int end, String text)
+    {
+        if(end - start < text.length())
+        {
+            return false;
+        }
+
+        for(int i = 0; i < text.length(); ++i)
+        {
+            if(line.charAt(start + i) != text.charAt(i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds end of word made of letters and digits
+     *
+     * @param line line to search
+     * @param start position where word starts
+     * @return position right after word, equal to start if there is no word
+     */
+    private static int wordEnd(CharSequence line, int start)
+    {
+        int end = start;
+        while(end < line.length() && isWordChar(line.charAt(end)))
+        {
+            ++end;
+        }
+        return end;
+    }
+
+    /**
+     * Checks if character can be part of word
+     *
+     * @param c character to check
+     * @return true for ascii letters and digits
+     */
+    private static boolean isWordChar(char c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    /**
+     * Test method for this class, compares this parser with chain of handlers for every line of file
+     *
+     * @param args cmd args, first one is file to check
+     */
+    public static void main(String[] args)
+    {
+        Scanner inputFile = FileHandler.getInputFile(args[0]);
+        int lines = 0;
+        int tokenized = 0;
+        int differences = 0;
+
+        while(inputFile.hasNextLine())
+        {
+            String line = inputFile.nextLine();
+            LineGenerationOptions fromTokenizer = new LineGenerationOptions();
+            LineGenerationOptions fromChain = new LineGenerationOptions();
+
+            ++lines;
+            if(tokenize(fromTokenizer, line))
+            {
+                ++tokenized;
+                LineHandler.handleLineWithChain(fromChain, line);
+
+                if(!(fromTokenizer + fromTokenizer.problem).equals(fromChain + fromChain.problem))
+                {
+                    ++differences;
+                    System.out.println("Different result for: " + line);
+                }
+            }
+        }
+
+        inputFile.close();
+        System.out.println("Lines: " + lines + ", parsed by tokenizer: " + tokenized + ", different: " + differences);
+    }
+}
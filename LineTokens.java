@@ -0,0 +1,70 @@
+import java.util.Arrays;
+
+/**
+ * Tokens of one line: token class, position and role of every token, and state of grammar reached after it.
+ * Arrays grow to size of longest line and are reused by next lines.
+ */
+class LineTokens
+{
+    /**
+     * number of tokens
+     */
+    int count = 0;
+
+    /**
+     * token class of every token
+     */
+    int[] classes = new int[64];
+
+    /**
+     * position where every token starts
+     */
+    int[] starts = new int[64];
+
+    /**
+     * position right after every token
+     */
+    int[] ends = new int[64];
+
+    /**
+     * state of grammar reached after every token
+     */
+    int[] states = new int[64];
+
+    /**
+     * role of every token, found when line matches grammar
+     */
+    int[] roles = new int[64];
+
+    /**
+     * Removes all tokens
+     */
+    void clear()
+    {
+        count = 0;
+    }
+
+    /**
+     * Adds token, arrays are made larger when they are full
+     *
+     * @param tokenClass token class
+     * @param start position where token starts
+     * @param end position right after token
+     */
+    void add(int tokenClass, int start, int end)
+    {
+        if(count == classes.length)
+        {
+            classes = Arrays.copyOf(classes, 2 * count);
+            starts = Arrays.copyOf(starts, 2 * count);
+            ends = Arrays.copyOf(ends, 2 * count);
+            states = Arrays.copyOf(states, 2 * count);
+            roles = Arrays.copyOf(roles, 2 * count);
+        }
+
+        classes[count] = tokenClass;
+        starts[count] = start;
+        ends[count] = end;
+        ++count;
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Hashes of one generated file
+ */
+class ManifestEntry
+{
+    /**
+     * modification time of file that was just written or couldn't be read
+     */
+    static final long UNKNOWN = -1;
+
+    /**
+     * hash of spec line that file was generated from
+     */
+    final long specHash;
+
+    /**
+     * hash of file content
+     */
+    final long outputHash;
+
+    /**
+     * length of file in bytes
+     */
+    final long length;
+
+    /**
+     * modification time of file in milliseconds, {@link #UNKNOWN} until manifest is saved
+     */
+    final long modified;
+
+    /**
+     * Constructor of ManifestEntry
+     *
+     * @param specHash hash of spec line and template
+     * @param outputHash hash of file content
+     * @param length length of file in bytes
+     * @param modified modification time of file in milliseconds, {@link #UNKNOWN} if it isn't known yet
+     */
+    ManifestEntry(long specHash, long outputHash, long length, long modified)
+    {
+        this.specHash = specHash;
+        this.outputHash = outputHash;
+        this.length = length;
+        this.modified = modified;
+    }
+}
@@ -0,0 +1,49 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sink that keeps sources of all classes in memory, for example to pass them straight to javax.tools.JavaCompiler
+ */
+public class MemorySink implements OutputSink
+{
+    /**
+     * sources of classes by file name, with '/' between directories
+     */
+    private Map<String, CharSequence> sources = new ConcurrentHashMap<>();
+
+    /**
+     * Keeps source of class, class with the same file name replaces earlier one
+     *
+     * @param line LineGenerationOptions object that class was rendered from
+     * @param specLine line of spec that class was parsed from
+     * @param content UTF-8 bytes of class
+     * @return always true
+     */
+    public boolean write(LineGenerationOptions line, CharSequence specLine, ByteBuffer content)
+    {
+        sources.put(OutputHandler.entryName(line), StandardCharsets.UTF_8.decode(content));
+        return true;
+    }
+
+    /**
+     * Nothing to finish, sources stay available
+     *
+     * @return always true
+     */
+    public boolean close()
+    {
+        return true;
+    }
+
+    /**
+     * Returns sources of all classes received so far
+     *
+     * @return map of file names with '/' between directories to sources
+     */
+    public Map<String, CharSequence> getSources()
+    {
+        return sources;
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * Interface for classes that want to connect to chain of responsibilities
+ */
+interface OptionHandler
+{
+    /**
+     * Method adds OptionHandler object to the end of chain
+     *
+     * @param optionToAdd new OptionHandler object that we want to add to the end of chain
+     */
+    void add(OptionHandler optionToAdd);
+
+    /**
+     * handles parsing of line
+     *
+     * @param options LineGenerationOptions object that we want to operate on
+     * @param line line to parse
+     * @return filled LineGenerationOptions by object connected to this chain
+     */
+    String handleOption(LineGenerationOptions options, String line);
+}
@@ -1,143 +1,148 @@
-import java.io.PrintWriter;
-import java.util.ArrayList;
-
-/**
- * Class responsible for handling output from program
- */
-public class OutputHandler
-{
-    /**
-     * Writes whole class to file from LineGenerationOptions object fields
-     *
-     * @param line LineGenerationOptions object holding all necessary information
-     */
-    public static void writeClassToFile(LineGenerationOptions line)
-    {
-        OutputHandler outHandler = new OutputHandler();
-
-        if(!line.packageStructure.isEmpty()) FileHandler.mkDir(line.generatePath().replaceAll("\\$", ""));
-
-        PrintWriter writer = FileHandler.openFile(line.generatePath() + line.className + ".java");
-
-        outHandler.createPackagePath(line, writer);
-
-        outHandler.openClass(line, writer);
-
-        outHandler.createFields(line, writer);
-        outHandler.createMethods(line, writer);
-
-        if(line.mainGeneration)
-        {
-            outHandler.createMain(line, writer);
-        }
-
-        outHandler.closeClass(writer);
-
-        writer.close();
-    }
-
-    /**
-     * Method creates directory for packages
-     *
-     * @param line LineGenerationOptions objects containing package structure
-     * @param writer writer used to create dirs
-     */
-    private void createPackagePath(LineGenerationOptions line, PrintWriter writer)
-    {
-        if(!line.packageStructure.isEmpty())
-        {
-            String pkg = "package ";
-            for(String folder : line.packageStructure)
-            {
-                pkg += folder + ".";
-            }
-            writer.print(pkg.replaceAll("\\.$", ";\n\n"));
-        }
-    }
-
-    /**
-     * Method generate class opening
-     *
-     * @param line LineGenerationOptions objects containing class name
-     * @param writer writer used to output java class
-     */
-    private void openClass(LineGenerationOptions line, PrintWriter writer)
-    {
-        if(line.javadocGeneration)
-        {
-            writer.print("/**\n *\n */\n");
-        }
-        writer.print("class " + line.className + "\n{\n");
-    }
-
-    /**
-     * Method generate class closing
-     *
-     * @param writer writer used to output java class
-     */
-    private void closeClass(PrintWriter writer)
-    {
-        writer.print("}");
-    }
-
-    /**
-     * Method generate fields in class
-     *
-     * @param line LineGenerationOptions objects containing fields structure
-     * @param writer writer used to output java class
-     */
-    private void createFields(LineGenerationOptions line, PrintWriter writer)
-    {
-        for(String field : line.fields)
-        {
-            if(line.javadocGeneration)
-            {
-                writer.print("\t/**\n\t *\n\t */\n");
-            }
-            writer.print("\t" + field + "\n");
-        }
-    }
-
-    /**
-     * Method generate methods
-     *
-     * @param line LineGenerationOptions objects containing methods structure
-     * @param writer writer used to output java class
-     */
-    private void createMethods(LineGenerationOptions line, PrintWriter writer)
-    {
-        for(ArrayList<String> method : line.additionalMethods)
-        {
-            writer.println();
-            if(line.javadocGeneration)
-            {
-                writer.print("\t/**\n\t *\n");
-
-                for (int i = 3; i < method.size(); i+=2)
-                {
-                    writer.print("\t * @param " + method.get(i) + "\n");
-                }
-
-                if(!method.get(1).equals("void")) writer.print("\t * @return " + method.get(1) + "\n");
-                writer.print("\t*/\n");
-            }
-            writer.print("\t" + method.get(0) + "\n\t{\n\n\t}\n");
-        }
-    }
-
-    /**
-     * Method generate main class
-     *
-     * @param line LineGenerationOptions objects containing information if main should be generated
-     * @param writer writer used to output java class
-     */
-    private void createMain(LineGenerationOptions line, PrintWriter writer)
-    {
-        writer.println();
-        if(line.javadocGeneration)
-        {
-            writer.print("\t/**\n\t * Main method of the program\n\t * @param args Command line arguments\n\t */\n");
-        }
-        writer.print("\tpublic static void main(String[] args)\n\t{\n\n\t}\n");
-    }
-}
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+/**
+ * Class responsible for handling output from program
+ */
+public class OutputHandler
+{
+    /**
+     * template that classes are rendered with
+     */
+    static ClassTemplate template = ClassTemplate.DEFAULT;
+
+    /**
+     * output of every thread, reused for all classes rendered by that thread
+     */
+    private static final ThreadLocal<ByteOutput> OUTPUTS = ThreadLocal.withInitial(() -> new ByteOutput(4096));
+
+    /**
+     * Writes whole class to file from LineGenerationOptions object fields.
+     * Class is rendered to buffer and written to file with single write.
+     *
+     * @param line LineGenerationOptions object holding all necessary information
+     * @return true if file was written, false if not
+     */
+    public static boolean writeClassToFile(LineGenerationOptions line)
+    {
+        return writeClass(line, null, new FileSink(Paths.get(""), null, false));
+    }
+
+    /**
+     * Renders whole class and passes it to sink, unless sink already holds class generated from the same spec line
+     *
+     * @param line LineGenerationOptions object holding all necessary information
+     * @param specLine line of spec that class was parsed from, can be null
+     * @param sink sink that receives rendered class
+     * @return true if sink accepted class or already had it, false if not
+     */
+    public static boolean writeClass(LineGenerationOptions line, CharSequence specLine, OutputSink sink)
+    {
+        if(specLine != null && sink.isUpToDate(line, specLine))
+        {
+            return true;
+        }
+        return writeRendered(line, specLine, renderClass(line), sink);
+    }
+
+    /**
+     * Passes class that was already rendered to sink
+     *
+     * @param line LineGenerationOptions object that class was rendered from
+     * @param specLine line of spec that class was parsed from, can be null
+     * @param content UTF-8 bytes of class
+     * @param sink sink that receives rendered class
+     * @return true if sink accepted class, false if not
+     */
+    static boolean writeRendered(LineGenerationOptions line, CharSequence specLine, ByteBuffer content, OutputSink sink)
+    {
+        GeneratorMetrics metrics = GeneratorMetrics.current;
+        if(metrics == null)
+        {
+            return sink.write(line, specLine, content);
+        }
+
+        long start = System.nanoTime();
+        boolean written = sink.write(line, specLine, content);
+        metrics.sink.since(start);
+        return written;
+    }
+
+    /**
+     * Parses spec line and renders class without touching disk
+     *
+     * @param specLine line of spec
+     * @return source of class
+     */
+    public static CharSequence renderSource(CharSequence specLine)
+    {
+        return renderSource(LineHandler.handleLine(new LineGenerationOptions(), specLine));
+    }
+
+    /**
+     * Renders class without touching disk
+     *
+     * @param line LineGenerationOptions object holding all necessary information
+     * @return source of class
+     */
+    public static CharSequence renderSource(LineGenerationOptions line)
+    {
+        return StandardCharsets.UTF_8.decode(renderClass(line)).toString();
+    }
+
+    /**
+     * Renders class to UTF-8 bytes without touching disk
+     *
+     * @param line LineGenerationOptions object holding all necessary information
+     * @return new buffer with encoded class, ready to be read
+     */
+    public static ByteBuffer renderBytes(LineGenerationOptions line)
+    {
+        ByteBuffer content = renderClass(line);
+        ByteBuffer copy = ByteBuffer.allocate(content.remaining());
+        copy.put(content).flip();
+        return copy;
+    }
+
+    /**
+     * Builds file name of class from package structure and class name, used as name of archive entry
+     *
+     * @param line LineGenerationOptions object holding package structure and class name
+     * @return file name of class, with '/' between directories
+     */
+    static String entryName(LineGenerationOptions line)
+    {
+        StringBuilder name = new StringBuilder();
+        for(int i = 0; i < line.packageCount(); ++i)
+        {
+            line.appendPackage(i, name);
+            name.append('/');
+        }
+        line.appendClassName(name);
+        return name.append(".java").toString();
+    }
+
+    /**
+     * Renders whole class to UTF-8 bytes from LineGenerationOptions object fields.
+     * Returned buffer is reused by next call made by the same thread.
+     *
+     * @param line LineGenerationOptions object holding all necessary information
+     * @return buffer with encoded class, ready to be read
+     */
+    static ByteBuffer renderClass(LineGenerationOptions line)
+    {
+        GeneratorMetrics metrics = GeneratorMetrics.current;
+        long start = metrics != null ? System.nanoTime() : 0;
+
+        ByteOutput out = OUTPUTS.get();
+        out.clear();
+        template.render(line, out);
+
+        if(metrics != null)
+        {
+            metrics.render.since(start);
+        }
+        return out.buffer();
+    }
+}
@@ -0,0 +1,48 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Interface for classes that receive classes rendered by {@link OutputHandler}
+ */
+public interface OutputSink
+{
+    /**
+     * Receives one rendered class
+     *
+     * @param line LineGenerationOptions object that class was rendered from
+     * @param specLine line of spec that class was parsed from, can be null
+     * @param content UTF-8 bytes of class, buffer is reused after call returns so it has to be copied if needed later
+     * @return true if class was accepted, false if not
+     */
+    boolean write(LineGenerationOptions line, CharSequence specLine, ByteBuffer content);
+
+    /**
+     * Determines if sink keeps LineGenerationOptions objects after {@link #write} returns,
+     * so they can't be cleared and filled by next line, see {@link LineParser}
+     *
+     * @return true if objects are kept, false if they are used only during write
+     */
+    default boolean keepsLines()
+    {
+        return false;
+    }
+
+    /**
+     * Checks if sink already holds class generated from the same spec line, called before class is rendered.
+     * If so, class is counted as written and it isn't rendered nor passed to {@link #write}.
+     *
+     * @param line LineGenerationOptions object that class would be rendered from
+     * @param specLine line of spec that class was parsed from
+     * @return true if class doesn't have to be rendered, false if it has to be written
+     */
+    default boolean isUpToDate(LineGenerationOptions line, CharSequence specLine)
+    {
+        return false;
+    }
+
+    /**
+     * Finishes output, called once after last class
+     *
+     * @return true if output was finished, false if not
+     */
+    boolean close();
+}
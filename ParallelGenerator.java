@@ -0,0 +1,381 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Class that generates classes using several worker threads. Calling thread reads lines and feeds bounded queue,
+ * workers parse lines with {@link LineHandler} and write them with {@link OutputHandler}
+ */
+public class ParallelGenerator
+{
+    /**
+     * how many lines can wait in queue for every worker
+     */
+    private static final int QUEUE_SIZE_PER_WORKER = 256;
+
+    /**
+     * marks end of input for workers
+     */
+    private static final SpecLine END = new SpecLine(-1, null);
+
+    /**
+     * number of last line written to file whose entry was dropped from {@link #writtenFiles}, lines waiting for it retry
+     */
+    private static final long EVICTED = Long.MIN_VALUE;
+
+    /**
+     * number of worker threads
+     */
+    private int workers;
+
+    /**
+     * Determines if parsed options of every line should be printed to console
+     */
+    private boolean printOptions;
+
+    /**
+     * sink that receives rendered classes
+     */
+    private OutputSink sink;
+
+    /**
+     * table that package folders and return types are shared through
+     */
+    private SymbolTable symbols;
+
+    /**
+     * stream that parsed options and errors are printed to
+     */
+    private PrintStream console;
+
+    /**
+     * collector of problems found in spec lines, null if lines shouldn't be checked
+     */
+    private ErrorHandler diagnostics;
+
+    /**
+     * shard of spec generated by this run, null if whole spec is generated
+     */
+    private SpecShard shard;
+
+    /**
+     * queue of lines waiting for workers
+     */
+    private BlockingQueue<SpecLine> queue;
+
+    /**
+     * number of last line written to particular file, so as in sequential mode last line in spec wins.
+     * Entry is dropped when every line before the one that wrote it is finished, since only later lines can target
+     * file then, so map holds only files written by lines near the queue, not every class of spec.
+     */
+    private ConcurrentHashMap<String, long[]> writtenFiles = new ConcurrentHashMap<>();
+
+    /**
+     * names of files in {@link #writtenFiles} by number of line that wrote them
+     */
+    private ConcurrentSkipListMap<Long, String> writtenLines = new ConcurrentSkipListMap<>();
+
+    /**
+     * numbers of lines put into queue and not finished by workers yet
+     */
+    private ConcurrentSkipListSet<Long> unfinishedLines = new ConcurrentSkipListSet<>();
+
+    /**
+     * errors of particular lines sorted by line number, so report doesn't depend on thread scheduling
+     */
+    private ConcurrentSkipListMap<Long, String> errors = new ConcurrentSkipListMap<>();
+
+    /**
+     * Constructor of ParallelGenerator
+     *
+     * @param workers number of worker threads
+     * @param printOptions true if parsed options of every line should be printed to console
+     * @param sink sink that receives rendered classes, has to be safe to use from several threads
+     * @param symbols table that package folders and return types are shared through
+     */
+    public ParallelGenerator(int workers, boolean printOptions, OutputSink sink, SymbolTable symbols)
+    {
+        this(workers, printOptions, sink, symbols, System.out, null, null);
+    }
+
+    /**
+     * Constructor of ParallelGenerator
+     *
+     * @param workers number of worker threads
+     * @param printOptions true if parsed options of every line should be printed
+     * @param sink sink that receives rendered classes, has to be safe to use from several threads
+     * @param symbols table that package folders and return types are shared through
+     * @param console stream that parsed options and errors are printed to
+     * @param diagnostics collector of problems found in spec lines, null if lines shouldn't be checked
+     * @param shard shard of spec generated by this run, null if whole spec is generated
+     */
+    public ParallelGenerator(int workers, boolean printOptions, OutputSink sink, SymbolTable symbols, PrintStream console, ErrorHandler diagnostics, SpecShard shard)
+    {
+        this.shard = shard;
+        this.diagnostics = diagnostics;
+        this.console = console;
+        this.sink = sink;
+        this.symbols = symbols;
+        this.workers = workers;
+        this.printOptions = printOptions;
+        this.queue = new ArrayBlockingQueue<>(workers * QUEUE_SIZE_PER_WORKER);
+    }
+
+    /**
+     * Generates classes from all lines of input file, blocks until every class is written
+     *
+     * @param inputFile source of class generation options
+     * @return true if errors occurred false if not
+     */
+    public boolean generate(SpecSource inputFile)
+    {
+        Thread[] threads = new Thread[workers];
+
+        for(int i = 0; i < workers; ++i)
+        {
+            threads[i] = new Thread(this::work, "generator-worker-" + i);
+            threads[i].start();
+        }
+
+        try
+        {
+            long lineNumber = inputFile.linesBefore();
+            CharSequence line;
+
+            while((diagnostics == null || !diagnostics.shouldStop()) && (line = inputFile.nextLine()) != null)
+            {
+                unfinishedLines.add(++lineNumber);
+                queue.put(new SpecLine(lineNumber, line));
+            }
+
+            for(int i = 0; i < workers; ++i)
+            {
+                queue.put(END);
+            }
+        }
+        catch(InterruptedException e)
+        {
+            interrupt(threads);
+            errors.put(0L, "Generation interrupted");
+        }
+        catch(IOException e)
+        {
+            interrupt(threads);
+            errors.put(0L, "Couldn't read input file: " + e);
+        }
+        finally
+        {
+            join(threads);
+        }
+
+        for(Map.Entry<Long, String> error : errors.entrySet())
+        {
+            console.println("Line " + error.getKey() + ": " + error.getValue());
+        }
+
+        return !errors.isEmpty();
+    }
+
+    /**
+     * Interrupts workers, so they stop taking lines from queue
+     *
+     * @param threads worker threads
+     */
+    private static void interrupt(Thread[] threads)
+    {
+        for(Thread thread : threads)
+        {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Waits until every worker finishes, so sink isn't closed while they still write. Waiting can't be interrupted,
+     * interruption of calling thread is restored afterwards.
+     *
+     * @param threads worker threads
+     */
+    private static void join(Thread[] threads)
+    {
+        boolean interrupted = Thread.interrupted();
+
+        for(Thread thread : threads)
+        {
+            while(thread.isAlive())
+            {
+                try
+                {
+                    thread.join();
+                }
+                catch(InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+        }
+
+        if(interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Worker loop, takes lines from queue until end of input. Lines left in queue after generation was stopped by
+     * fail fast mode are skipped. Errors thrown by line, like stack overflow of regular expression, fail only that line,
+     * so worker keeps taking lines and reader never waits for queue that nobody empties.
+     */
+    private void work()
+    {
+        try
+        {
+            LineParser parser = new LineParser(symbols, !sink.keepsLines());
+            SpecLine specLine;
+
+            while((specLine = queue.take()) != END)
+            {
+                try
+                {
+                    if(diagnostics == null || !diagnostics.shouldStop())
+                    {
+                        generateLine(specLine, parser);
+                    }
+                }
+                catch(Throwable e)
+                {
+                    errors.put(specLine.number, e.toString());
+                }
+                finally
+                {
+                    unfinishedLines.remove(specLine.number);
+                    evictWrittenFiles();
+                }
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Parses and writes one line. Lines targeting the same file are written one at a time
+     * and file written by earlier line never replaces file written by later one.
+     *
+     * @param specLine line to generate
+     * @param parser parser of worker thread
+     */
+    private void generateLine(SpecLine specLine, LineParser parser)
+    {
+        LineGenerationOptions lineOptions = parser.parse(specLine.line);
+
+        if(shard != null && !shard.owns(lineOptions))
+        {
+            return;
+        }
+
+        if(diagnostics != null)
+        {
+            diagnostics.checkLine(specLine.number, specLine.line, lineOptions);
+        }
+
+        String entryName = OutputHandler.entryName(lineOptions);
+        boolean written = false;
+
+        while(!written)
+        {
+            long[] lastWritten = writtenFiles.computeIfAbsent(entryName, k -> new long[]{-1});
+
+            synchronized(lastWritten)
+            {
+                if(lastWritten[0] == EVICTED)
+                {
+                    continue;
+                }
+
+                if(lastWritten[0] < specLine.number)
+                {
+                    if(!OutputHandler.writeClass(lineOptions, specLine.line, sink))
+                    {
+                        errors.put(specLine.number, "Couldn't write class " + lineOptions.getClassName());
+                    }
+                    lastWritten[0] = specLine.number;
+                    writtenLines.put(specLine.number, entryName);
+                }
+                written = true;
+            }
+        }
+
+        if(printOptions)
+        {
+            console.println("\n\n" + lineOptions);
+        }
+    }
+
+    /**
+     * Drops files written by lines older than every unfinished line from {@link #writtenFiles}, lines that can still
+     * target them come later in spec, so they would write them anyway
+     */
+    private void evictWrittenFiles()
+    {
+        Long oldestUnfinished = unfinishedLines.ceiling(Long.MIN_VALUE);
+        long limit = oldestUnfinished != null ? oldestUnfinished : Long.MAX_VALUE;
+        Map.Entry<Long, String> written;
+
+        while((written = writtenLines.firstEntry()) != null && written.getKey() < limit)
+        {
+            if(!writtenLines.remove(written.getKey(), written.getValue()))
+            {
+                continue;
+            }
+
+            long[] lastWritten = writtenFiles.get(written.getValue());
+            if(lastWritten == null)
+            {
+                continue;
+            }
+
+            synchronized(lastWritten)
+            {
+                if(lastWritten[0] == written.getKey())
+                {
+                    lastWritten[0] = EVICTED;
+                    writtenFiles.remove(written.getValue(), lastWritten);
+                }
+            }
+        }
+    }
+}
+
+/**
+ * Holds one line of input along with its number
+ */
+class SpecLine
+{
+    /**
+     * number of line in input file, starting from 1
+     */
+    final long number;
+
+    /**
+     * content of line
+     */
+    final CharSequence line;
+
+    /**
+     * Constructor of SpecLine
+     *
+     * @param number number of line in input file
+     * @param line content of line
+     */
+    SpecLine(long number, CharSequence line)
+    {
+        this.number = number;
+        this.line = line;
+    }
+}
@@ -0,0 +1,282 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of parsed lines, keyed by body of line, which is everything after package and class name.
+ * Generated specs repeat the same methods and fields for many classes, so line whose body was already parsed
+ * only gets its package and class name parsed, members are copied from cached template.
+ * Only lines that were parsed completely by {@link LineTokenizer} are cached, and only lines with plain header
+ * ("a.b.Name" or ".Name") are looked up, because members of such lines are parsed the same no matter what header is.
+ * Cache can be saved to file and loaded by next run.
+ */
+public class ParseCache
+{
+    /**
+     * default number of cached bodies
+     */
+    static final int DEFAULT_CAPACITY = 10000;
+
+    /**
+     * first line of cache file, file with other first line is ignored
+     */
+    private static final String HEADER = "# generator parse cache 1";
+
+    /**
+     * cached templates by body of line, in order of last use
+     */
+    private LinkedHashMap<String, LineGenerationOptions> templates;
+
+    /**
+     * number of lines whose members were copied from cache
+     */
+    private LongAdder hits = new LongAdder();
+
+    /**
+     * number of lines whose body wasn't in cache
+     */
+    private LongAdder misses = new LongAdder();
+
+    /**
+     * Constructor of ParseCache
+     *
+     * @param capacity number of cached bodies, least recently used body is dropped when cache is full
+     */
+    public ParseCache(int capacity)
+    {
+        this.templates = new LinkedHashMap<String, LineGenerationOptions>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LineGenerationOptions> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Parses line using cached template, only package and class name are parsed
+     *
+     * @param options LineGenerationOptions object that we want to operate on
+     * @param line line to parse
+     * @param symbols table that package folders are shared through, null if they shouldn't be shared
+     * @return true if line was parsed, false if it wasn't in cache and has to be parsed normally
+     */
+    public boolean reuse(LineGenerationOptions options, CharSequence line, SymbolTable symbols)
+    {
+        int headerEnd = headerEnd(line);
+        if(headerEnd < 0)
+        {
+            return false;
+        }
+
+        LineGenerationOptions template;
+        synchronized(this)
+        {
+            template = templates.get(line.subSequence(headerEnd, line.length()).toString());
+        }
+
+        if(template == null)
+        {
+            misses.increment();
+            return false;
+        }
+
+        int start = 0;
+        for(int i = 0; i < headerEnd; ++i)
+        {
+            if(line.charAt(i) == '.')
+            {
+                if(i > start)
+                {
+                    options.addPackage(SymbolTable.intern(symbols, line, start, i));
+                }
+                start = i + 1;
+            }
+        }
+        options.setClassName(line, start, headerEnd);
+        options.copyMembers(template);
+
+        hits.increment();
+        return true;
+    }
+
+    /**
+     * Adds members of parsed line to cache, if line was parsed completely and has plain header.
+     * Line has to be one that {@link LineTokenizer} accepts. Chain of handlers parses text left after members
+     * were removed again, so for other lines members can change package and class name.
+     *
+     * @param line parsed line
+     * @param options options parsed from line
+     */
+    public void add(CharSequence line, LineGenerationOptions options)
+    {
+        int headerEnd = headerEnd(line);
+        if(headerEnd < 0 || options.problem == null || !options.problem.trim().isEmpty())
+        {
+            return;
+        }
+
+        LineGenerationOptions template = new LineGenerationOptions();
+        template.copyMembers(options);
+        template.trim();
+
+        synchronized(this)
+        {
+            templates.put(line.subSequence(headerEnd, line.length()).toString(), template);
+        }
+    }
+
+    /**
+     * Finds end of plain header of line, that is package folders separated by dots followed by class name,
+     * or dot followed by class name
+     *
+     * @param line line of spec
+     * @return position right after class name, -1 if line doesn't start with plain header
+     */
+    static int headerEnd(CharSequence line)
+    {
+        int pos = 0;
+        int segmentStart = 0;
+        boolean dot = false;
+
+        while(pos < line.length())
+        {
+            char c = line.charAt(pos);
+
+            if(c == '.')
+            {
+                if(pos == segmentStart && pos > 0 || line.charAt(0) == '.' && pos > 0)
+                {
+                    return -1;
+                }
+                dot = true;
+                segmentStart = pos + 1;
+            }
+            else if(!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'))
+            {
+                break;
+            }
+            ++pos;
+        }
+
+        if(!dot || pos == segmentStart || pos < line.length() && line.charAt(pos) != ' ')
+        {
+            return -1;
+        }
+        return pos;
+    }
+
+    /**
+     * Gets number of cached bodies
+     *
+     * @return number of cached bodies
+     */
+    public synchronized int size()
+    {
+        return templates.size();
+    }
+
+    /**
+     * Summary of cache usage
+     *
+     * @return number of cached bodies, hits, misses and hit rate
+     */
+    public String report()
+    {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        long rate = lookups == 0 ? 0 : Math.round(100.0 * hitCount / lookups);
+        return "Parse cache: " + size() + " entries, hits: " + hitCount + ", misses: " + misses.sum() + ", hit rate: " + rate + "%";
+    }
+
+    /**
+     * Reads cache saved by previous run, missing or broken file gives empty cache
+     *
+     * @param file cache file
+     * @param capacity number of cached bodies
+     * @param symbols table that return types are shared through, null if they shouldn't be shared
+     * @return loaded cache
+     */
+    public static ParseCache load(Path file, int capacity, SymbolTable symbols)
+    {
+        ParseCache cache = new ParseCache(capacity);
+
+        if(!Files.isRegularFile(file))
+        {
+            return cache;
+        }
+
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+        {
+            if(!HEADER.equals(in.readUTF()))
+            {
+                return cache;
+            }
+
+            int count = in.readInt();
+            for(int i = 0; i < count; ++i)
+            {
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                cache.templates.put(new String(body, StandardCharsets.UTF_8), LineGenerationOptions.readMembers(in, symbols));
+            }
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            cache.templates.clear();
+        }
+
+        return cache;
+    }
+
+    /**
+     * Writes cache to file, least recently used bodies first so next run keeps the same order.
+     * Previous file is replaced only when whole cache is written.
+     *
+     * @param file cache file
+     * @return true if cache was written, false if not
+     */
+    public synchronized boolean save(Path file)
+    {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile))))
+        {
+            out.writeUTF(HEADER);
+            out.writeInt(templates.size());
+            for(Map.Entry<String, LineGenerationOptions> entry : templates.entrySet())
+            {
+                byte[] body = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(body.length);
+                out.write(body);
+                entry.getValue().writeMembers(out);
+            }
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+
+        try
+        {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+    }
+}
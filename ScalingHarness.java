@@ -0,0 +1,364 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Harness that runs whole generator on synthetic specs of growing sizes and appends one row of results per size
+ * to CSV file, so changes of parse or write scaling show up as curves, not single numbers.
+ * Every size is generated by {@link SpecGenerator} to fresh temporary directory and run by {@link UserHandler}
+ * in separate JVM, so runs don't share heap, JIT or file cache of earlier runs in the same process.
+ * <p>
+ * Every row holds number of lines, number of files found in output directory, wall time of JVM, files per second
+ * computed from files found, peak resident set size of JVM, number of garbage collector pauses with their total
+ * and longest time, and exit code, which is 1 when generator reported errors. Peak RSS is read from /proc while JVM runs, so it's -1 on systems
+ * without /proc. Pauses are read from garbage collector log of JVM.
+ * <p>
+ * Usage: java ScalingHarness RESULTS_CSV [--sizes=N,N,...] [--jvm=OPTION]... [--keep] [switches of SpecGenerator]
+ * [switches of UserHandler]
+ * Default sizes are 10^3, 10^4, 10^5, 10^6 and 10^7 lines. Switches not known to harness nor to SpecGenerator are passed
+ * to UserHandler, for example --pipeline or --durability=group, --stdout leaves disk out of measurement.
+ */
+public class ScalingHarness
+{
+    /**
+     * header of CSV file, written when file is created
+     */
+    static final String CSV_HEADER = "lines,files,wall_ms,files_per_sec,peak_rss_kb,gc_pauses,gc_pause_ms,gc_max_pause_ms,exit_code";
+
+    /**
+     * interval between reads of resident set size of running JVM
+     */
+    private static final long POLL_MILLIS = 10;
+
+    /**
+     * pause line of unified garbage collector log, time of pause is the last number
+     */
+    private static final Pattern GC_PAUSE = Pattern.compile("\\bPause\\b.* ([0-9]+(\\.[0-9]+)?)ms$");
+
+    /**
+     * numbers of lines of specs, one run per size
+     */
+    private long[] sizes = {1000, 10000, 100000, 1000000, 10000000};
+
+    /**
+     * options of JVM running generator, like heap size
+     */
+    private ArrayList<String> jvmOptions = new ArrayList<>();
+
+    /**
+     * Determines if temporary directories with spec and generated classes are kept after run
+     */
+    private boolean keep = false;
+
+    /**
+     * generator of specs, its number of lines is set for every run
+     */
+    private SpecGenerator generator = new SpecGenerator();
+
+    /**
+     * switches passed to {@link UserHandler}
+     */
+    private List<String> switches;
+
+    /**
+     * Reads switches of harness and of {@link SpecGenerator}, the rest are kept for {@link UserHandler}.
+     * Supported switches:
+     * --sizes=N,N,... numbers of lines of specs
+     * --jvm=OPTION option of JVM running generator, can be given several times
+     * --keep keeps temporary directories with spec and generated classes
+     *
+     * @param args arguments passed in cmd
+     * @return arguments that are not switches
+     */
+    String[] readSwitches(String[] args)
+    {
+        ArrayList<String> remaining = new ArrayList<>();
+        ArrayList<String> passed = new ArrayList<>();
+
+        for(String arg : generator.readSwitches(args))
+        {
+            if(arg.matches("--sizes=[0-9]{1,18}(,[0-9]{1,18})*"))
+            {
+                sizes = Arrays.stream(arg.substring("--sizes=".length()).split(",")).mapToLong(Long::parseLong).toArray();
+            }
+            else if(arg.startsWith("--jvm=") && arg.length() > "--jvm=".length())
+            {
+                jvmOptions.add(arg.substring("--jvm=".length()));
+            }
+            else if(arg.equals("--keep"))
+            {
+                keep = true;
+            }
+            else if(arg.startsWith("--"))
+            {
+                passed.add(arg);
+            }
+            else
+            {
+                remaining.add(arg);
+            }
+        }
+
+        switches = passed;
+        return remaining.toArray(new String[0]);
+    }
+
+    /**
+     * Runs generator on spec of every size and appends results to CSV file
+     *
+     * @param results CSV file, created with header if it doesn't exist
+     * @return true if all runs succeeded and exited with code 0, false if not
+     */
+    boolean run(Path results)
+    {
+        boolean succeeded = true;
+
+        for(long size : sizes)
+        {
+            String row = runOnce(size);
+            if(row == null)
+            {
+                return false;
+            }
+
+            System.out.println(row);
+            succeeded = append(results, row) && row.endsWith(",0") && succeeded;
+        }
+        return succeeded;
+    }
+
+    /**
+     * Generates spec of given size in temporary directory and runs generator on it
+     *
+     * @param size number of lines of spec
+     * @return row of CSV file or null if run couldn't be started
+     */
+    private String runOnce(long size)
+    {
+        Path directory = null;
+
+        try
+        {
+            directory = Files.createTempDirectory("scaling-" + size + "-");
+            Path spec = directory.resolve("spec.txt");
+            Path out = Files.createDirectory(directory.resolve("out"));
+            Path gcLog = directory.resolve("gc.log");
+
+            generator.lines = size;
+            try(OutputStream stream = new FileOutputStream(spec.toFile()))
+            {
+                generator.write(stream);
+            }
+
+            ArrayList<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            command.addAll(jvmOptions);
+            command.addAll(Arrays.asList("-Xlog:gc:file=" + gcLog, "-cp", classPath(), "UserHandler", spec.toString(), out.toString()));
+            command.addAll(switches);
+
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command).directory(out.toFile())
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(directory.resolve("stderr.txt").toFile()).start();
+
+            long peakRss = -1;
+            while(!process.waitFor(POLL_MILLIS, TimeUnit.MILLISECONDS))
+            {
+                peakRss = Math.max(peakRss, peakRss(process.pid()));
+            }
+            long wallNanos = System.nanoTime() - start;
+
+            long files = countFiles(out);
+            double[] pauses = gcPauses(gcLog);
+
+            return String.format(Locale.ROOT, "%d,%d,%d,%.1f,%d,%d,%.3f,%.3f,%d", size, files, wallNanos / 1000000,
+                    files / (wallNanos / 1e9), peakRss, (long) pauses[0], pauses[1], pauses[2], process.exitValue());
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return null;
+        }
+        finally
+        {
+            if(directory != null && !keep)
+            {
+                delete(directory);
+            }
+            else if(directory != null)
+            {
+                System.out.println("Kept " + directory);
+            }
+        }
+    }
+
+    /**
+     * Builds class path of this JVM with absolute entries, so JVM started in other directory finds the same classes
+     *
+     * @return class path
+     */
+    private static String classPath()
+    {
+        StringBuilder classPath = new StringBuilder();
+        for(String entry : System.getProperty("java.class.path").split(File.pathSeparator))
+        {
+            classPath.append(classPath.length() > 0 ? File.pathSeparator : "").append(Paths.get(entry).toAbsolutePath());
+        }
+        return classPath.toString();
+    }
+
+    /**
+     * Reads peak resident set size of process from /proc
+     *
+     * @param pid process id
+     * @return peak resident set size in kilobytes or -1 if it can't be read
+     */
+    private static long peakRss(long pid)
+    {
+        try
+        {
+            for(String line : Files.readAllLines(Paths.get("/proc", Long.toString(pid), "status"), StandardCharsets.US_ASCII))
+            {
+                if(line.startsWith("VmHWM:"))
+                {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        }
+        catch(Exception e)
+        {
+        }
+        return -1;
+    }
+
+    /**
+     * Sums pauses written to garbage collector log
+     *
+     * @param gcLog log written by -Xlog:gc
+     * @return number of pauses, total and longest pause in milliseconds
+     * @throws IOException if log can't be read
+     */
+    private static double[] gcPauses(Path gcLog) throws IOException
+    {
+        double[] pauses = new double[3];
+        if(!Files.exists(gcLog))
+        {
+            return pauses;
+        }
+
+        for(String line : Files.readAllLines(gcLog, StandardCharsets.UTF_8))
+        {
+            Matcher pause = GC_PAUSE.matcher(line);
+            if(pause.find())
+            {
+                double millis = Double.parseDouble(pause.group(1));
+                pauses[0] += 1;
+                pauses[1] += millis;
+                pauses[2] = Math.max(pauses[2], millis);
+            }
+        }
+        return pauses;
+    }
+
+    /**
+     * Counts generated classes in output directory
+     *
+     * @param out output directory
+     * @return number of .java files in directory and its subdirectories
+     * @throws IOException if directory can't be walked
+     */
+    private static long countFiles(Path out) throws IOException
+    {
+        try(Stream<Path> files = Files.walk(out))
+        {
+            return files.filter(file -> file.toString().endsWith(".java") && Files.isRegularFile(file)).count();
+        }
+    }
+
+    /**
+     * Appends row to CSV file, writes header first if file doesn't exist
+     *
+     * @param results CSV file
+     * @param row row of CSV file
+     * @return true if row was written, false if not
+     */
+    private static boolean append(Path results, String row)
+    {
+        boolean created = !Files.exists(results);
+
+        try(PrintWriter writer = new PrintWriter(new FileOutputStream(results.toFile(), true), false, StandardCharsets.UTF_8))
+        {
+            if(created)
+            {
+                writer.print(CSV_HEADER + "\n");
+            }
+            writer.print(row + "\n");
+            return !writer.checkError();
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Deletes directory with everything inside
+     *
+     * @param directory directory to delete
+     */
+    private static void delete(Path directory)
+    {
+        try(Stream<Path> files = Files.walk(directory))
+        {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs harness
+     *
+     * @param args cmd args, CSV file and switches
+     */
+    public static void main(String[] args)
+    {
+        ScalingHarness harness = new ScalingHarness();
+        args = harness.readSwitches(args);
+
+        if(args.length != 1)
+        {
+            System.err.println("Usage: java ScalingHarness RESULTS_CSV [--sizes=N,N,...] [--jvm=OPTION]... [--keep] [switches of SpecGenerator] [switches of UserHandler]");
+            System.exit(1);
+        }
+
+        System.out.println(CSV_HEADER);
+        if(!harness.run(Paths.get(args[0])))
+        {
+            System.exit(1);
+        }
+    }
+}
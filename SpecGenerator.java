@@ -0,0 +1,257 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Generator of synthetic spec files, so generator can be run on load of any size and shape.
+ * Every line gives distinct class, so every line becomes one file. Classes are spread over given number of packages,
+ * every package is nested given number of levels deep. Every class has given number of methods with given number
+ * of arguments and given number of fields, given percentage of lines is marked nodoc or nomain.
+ * Lines marked nodoc and nomain are chosen by random generator with given seed, so the same options give the same spec.
+ * <p>
+ * Usage: java SpecGenerator SPEC_FILE|- [--lines=N] [--packages=N] [--package-depth=N] [--methods=N] [--args=N]
+ * [--fields=N] [--nodoc=PERCENT] [--nomain=PERCENT] [--seed=N]
+ * Spec "-" is written to standard output, so it can be piped to "java UserHandler - OUT".
+ */
+public class SpecGenerator
+{
+    /**
+     * types of method arguments and fields, used in turn
+     */
+    private static final String[] TYPES = {"int", "String", "long", "double", "boolean"};
+
+    /**
+     * return types of methods, used in turn
+     */
+    private static final String[] RETURN_TYPES = {"void", "int", "String"};
+
+    /**
+     * modifiers of methods, used in turn
+     */
+    private static final String[] MODIFIERS = {"public", "private static", "protected", "public static"};
+
+    /**
+     * number of lines
+     */
+    long lines = 1000;
+
+    /**
+     * number of distinct packages that classes are spread over
+     */
+    int packages = 100;
+
+    /**
+     * number of levels of every package, at least 1
+     */
+    int packageDepth = 3;
+
+    /**
+     * number of methods of every class
+     */
+    int methods = 5;
+
+    /**
+     * number of arguments of every method
+     */
+    int args = 2;
+
+    /**
+     * number of fields of every class
+     */
+    int fields = 5;
+
+    /**
+     * percentage of lines marked nodoc
+     */
+    int nodocPercent = 10;
+
+    /**
+     * percentage of lines marked nomain
+     */
+    int nomainPercent = 10;
+
+    /**
+     * seed of random generator choosing lines marked nodoc and nomain
+     */
+    long seed = 1;
+
+    /**
+     * Reads switches (arguments starting with "--") and sets matching options.
+     * Supported switches:
+     * --lines=N number of lines (default 1000)
+     * --packages=N number of distinct packages (default 100)
+     * --package-depth=N number of levels of every package (default 3)
+     * --methods=N number of methods of every class (default 5)
+     * --args=N number of arguments of every method (default 2)
+     * --fields=N number of fields of every class (default 5)
+     * --nodoc=PERCENT percentage of lines marked nodoc (default 10)
+     * --nomain=PERCENT percentage of lines marked nomain (default 10)
+     * --seed=N seed of random generator choosing marked lines (default 1)
+     *
+     * @param args arguments passed in cmd
+     * @return arguments that are not switches of generator
+     */
+    String[] readSwitches(String[] args)
+    {
+        ArrayList<String> remaining = new ArrayList<>();
+
+        for(String arg : args)
+        {
+            if(arg.matches("--lines=[0-9]{1,18}"))
+            {
+                lines = Long.parseLong(arg.substring("--lines=".length()));
+            }
+            else if(arg.matches("--packages=[1-9][0-9]{0,8}"))
+            {
+                packages = Integer.parseInt(arg.substring("--packages=".length()));
+            }
+            else if(arg.matches("--package-depth=[1-9][0-9]{0,2}"))
+            {
+                packageDepth = Integer.parseInt(arg.substring("--package-depth=".length()));
+            }
+            else if(arg.matches("--methods=[0-9]{1,6}"))
+            {
+                methods = Integer.parseInt(arg.substring("--methods=".length()));
+            }
+            else if(arg.matches("--args=[0-9]{1,6}"))
+            {
+                this.args = Integer.parseInt(arg.substring("--args=".length()));
+            }
+            else if(arg.matches("--fields=[0-9]{1,6}"))
+            {
+                fields = Integer.parseInt(arg.substring("--fields=".length()));
+            }
+            else if(arg.matches("--nodoc=([0-9]{1,2}|100)"))
+            {
+                nodocPercent = Integer.parseInt(arg.substring("--nodoc=".length()));
+            }
+            else if(arg.matches("--nomain=([0-9]{1,2}|100)"))
+            {
+                nomainPercent = Integer.parseInt(arg.substring("--nomain=".length()));
+            }
+            else if(arg.matches("--seed=-?[0-9]{1,18}"))
+            {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            }
+            else
+            {
+                remaining.add(arg);
+            }
+        }
+
+        return remaining.toArray(new String[0]);
+    }
+
+    /**
+     * Writes all lines of spec to stream, each followed by "\n"
+     *
+     * @param out stream that spec is written to as UTF-8, flushed but not closed
+     * @return number of bytes written
+     * @throws IOException if stream can't be written
+     */
+    public long write(OutputStream out) throws IOException
+    {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        Random random = new Random(seed);
+        StringBuilder line = new StringBuilder();
+        long bytes = 0;
+
+        for(long i = 0; i < lines; ++i)
+        {
+            line.setLength(0);
+            appendLine(line, i, random).append('\n');
+            writer.append(line);
+            bytes += line.length();
+        }
+
+        writer.flush();
+        return bytes;
+    }
+
+    /**
+     * Appends line of spec to builder, lines hold only ASCII characters
+     *
+     * @param line builder that line is appended to
+     * @param index number of line, makes class name unique
+     * @param random generator choosing if line is marked nodoc or nomain
+     * @return builder given as line
+     */
+    private StringBuilder appendLine(StringBuilder line, long index, Random random)
+    {
+        long pkg = index % packages;
+        for(int level = 1; level < packageDepth; ++level)
+        {
+            line.append("level").append(level).append('.');
+        }
+        line.append('p').append(pkg).append(".Class").append(index);
+
+        for(int i = 0; i < methods; ++i)
+        {
+            line.append(' ').append(MODIFIERS[i % MODIFIERS.length]).append(' ').append(RETURN_TYPES[i % RETURN_TYPES.length])
+                    .append(" method").append(i).append('(');
+            for(int j = 0; j < args; ++j)
+            {
+                line.append(j > 0 ? ", " : "").append(TYPES[j % TYPES.length]).append(" arg").append(j);
+            }
+            line.append(')');
+        }
+        for(int i = 0; i < fields; ++i)
+        {
+            line.append(' ').append(TYPES[i % TYPES.length]).append("=field").append(i);
+        }
+
+        if(random.nextInt(100) < nodocPercent)
+        {
+            line.append(" nodoc");
+        }
+        if(random.nextInt(100) < nomainPercent)
+        {
+            line.append(" nomain");
+        }
+
+        return line;
+    }
+
+    /**
+     * Writes synthetic spec to file or to standard output
+     *
+     * @param args cmd args, spec file or "-" and switches
+     */
+    public static void main(String[] args)
+    {
+        SpecGenerator generator = new SpecGenerator();
+        args = generator.readSwitches(args);
+
+        if(args.length != 1 || args[0].startsWith("--"))
+        {
+            System.err.println("Usage: java SpecGenerator SPEC_FILE|- [--lines=N] [--packages=N] [--package-depth=N] [--methods=N] [--args=N] [--fields=N] [--nodoc=PERCENT] [--nomain=PERCENT] [--seed=N]");
+            System.exit(1);
+        }
+
+        try
+        {
+            if(args[0].equals(UserHandler.STANDARD_STREAM))
+            {
+                generator.write(System.out);
+            }
+            else
+            {
+                try(OutputStream out = new FileOutputStream(args[0]))
+                {
+                    generator.write(out);
+                }
+            }
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,694 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Grammar of spec lines defined in one declarative table, compiled to deterministic state machine when class is loaded.
+ * <p>
+ * Line is read as sequence of tokens: words made of letters and digits, classified as keywords or plain words,
+ * and single characters. Every row of {@link #GRAMMAR} defines named fragment as regular expression over token classes
+ * and fragments defined by earlier rows: juxtaposition is sequence, "|" is alternative, "?", "*" and "+" repeat,
+ * parentheses group and "role=" marks what tokens matched by following part mean, like package or return type.
+ * Last row defines whole line. New option is added by defining its tokens in new row and adding it to alternatives
+ * of items, then handling its roles in {@link LineTokenizer}.
+ * <p>
+ * Expression is compiled by Glushkov construction, every token class in it becomes position with its role,
+ * and positions are joined into states of deterministic automaton by subset construction. Matching line takes
+ * one table lookup per token, then roles of tokens are found walking states backwards from accepting one,
+ * at most one predecessor fits every step, grammar where more fit is ambiguous and rejected at compilation.
+ */
+public class SpecGrammar
+{
+    /**
+     * names of token classes, index of name is number of class
+     */
+    static final String[] CLASSES = {"WORD", "VISIBILITY", "STATIC", "NODOC", "NOMAIN", "FLAG_LIKE", "DOT", "SPACE", "EQUALS", "OPEN", "CLOSE", "COMMA", "OTHER", "END"};
+
+    /**
+     * word that is not keyword and doesn't start with nodoc or nomain
+     */
+    static final int WORD = 0;
+
+    /**
+     * public, private or protected
+     */
+    static final int VISIBILITY = 1;
+
+    /**
+     * static
+     */
+    static final int STATIC = 2;
+
+    /**
+     * nodoc
+     */
+    static final int NODOC = 3;
+
+    /**
+     * nomain
+     */
+    static final int NOMAIN = 4;
+
+    /**
+     * word that starts with nodoc or nomain and is longer, chain of handlers removes such prefixes from any place
+     */
+    static final int FLAG_LIKE = 5;
+
+    /**
+     * '.'
+     */
+    static final int DOT = 6;
+
+    /**
+     * ' '
+     */
+    static final int SPACE = 7;
+
+    /**
+     * '='
+     */
+    static final int EQUALS = 8;
+
+    /**
+     * '('
+     */
+    static final int OPEN = 9;
+
+    /**
+     * ')'
+     */
+    static final int CLOSE = 10;
+
+    /**
+     * ','
+     */
+    static final int COMMA = 11;
+
+    /**
+     * any other character
+     */
+    static final int OTHER = 12;
+
+    /**
+     * end of line
+     */
+    static final int END = 13;
+
+    /**
+     * names of roles, index of name is number of role, first one means token without role
+     */
+    static final String[] ROLES = {"none", "package", "className", "nodoc", "nomain", "itemStart", "fieldType", "fieldValue", "returnType", "methodName", "argumentType", "argumentName", "methodEnd"};
+
+    /**
+     * token without role
+     */
+    static final int NONE = 0;
+
+    /**
+     * package folder
+     */
+    static final int PACKAGE = 1;
+
+    /**
+     * class name
+     */
+    static final int CLASS_NAME = 2;
+
+    /**
+     * nodoc flag
+     */
+    static final int NODOC_FLAG = 3;
+
+    /**
+     * nomain flag
+     */
+    static final int NOMAIN_FLAG = 4;
+
+    /**
+     * space before item, item starts right after it
+     */
+    static final int ITEM_START = 5;
+
+    /**
+     * type of field
+     */
+    static final int FIELD_TYPE = 6;
+
+    /**
+     * name of field
+     */
+    static final int FIELD_VALUE = 7;
+
+    /**
+     * return type of method
+     */
+    static final int RETURN_TYPE = 8;
+
+    /**
+     * name of method
+     */
+    static final int METHOD_NAME = 9;
+
+    /**
+     * type of argument
+     */
+    static final int ARGUMENT_TYPE = 10;
+
+    /**
+     * name of argument
+     */
+    static final int ARGUMENT_NAME = 11;
+
+    /**
+     * closing bracket of method
+     */
+    static final int METHOD_END = 12;
+
+    /**
+     * grammar of spec line, every row is name of fragment and its definition, last row defines whole line
+     */
+    static final String[][] GRAMMAR = {
+            {"anyWord", "WORD | VISIBILITY | STATIC | NODOC | NOMAIN | FLAG_LIKE"},
+            {"plainWord", "WORD | VISIBILITY | STATIC"},
+            {"header", "DOT className=anyWord | (package=anyWord DOT)+ className=anyWord"},
+            {"flag", "nodoc=NODOC | nomain=NOMAIN"},
+            {"field", "fieldType=plainWord EQUALS fieldValue=anyWord"},
+            {"argument", "argumentType=plainWord SPACE argumentName=plainWord"},
+            {"method", "(VISIBILITY SPACE)? (STATIC SPACE)? returnType=WORD SPACE methodName=plainWord OPEN (argument COMMA SPACE)* argument? methodEnd=CLOSE"},
+            {"line", "header (itemStart=SPACE (flag | field | method))* END"}
+    };
+
+    /**
+     * compiled grammar of spec line
+     */
+    static final SpecGrammar LINE = new SpecGrammar(GRAMMAR);
+
+    /**
+     * number of positions, position 0 is start of line
+     */
+    private int positions;
+
+    /**
+     * next state by state and token class, -1 if token can't follow
+     */
+    private int[] transitions;
+
+    /**
+     * role of token matched at position, by position
+     */
+    private int[] roles;
+
+    /**
+     * position that matched previous token, by state reached before it and position of token
+     */
+    private int[] predecessors;
+
+    /**
+     * position of last token of line, by state, -1 if state doesn't end line
+     */
+    private int[] accepting;
+
+    /**
+     * Constructor of SpecGrammar, compiles grammar
+     *
+     * @param grammar rows of fragment name and definition, last row defines whole input
+     * @throws IllegalArgumentException if grammar can't be read or is ambiguous
+     */
+    SpecGrammar(String[][] grammar)
+    {
+        HashMap<String, GrammarNode> fragments = new HashMap<>();
+        for(String[] row : grammar)
+        {
+            fragments.put(row[0], new DefinitionReader(row[1], fragments).read());
+        }
+
+        ArrayList<BitSet> follow = new ArrayList<>();
+        ArrayList<Integer> classes = new ArrayList<>();
+        ArrayList<Integer> roleList = new ArrayList<>();
+        follow.add(new BitSet());
+        classes.add(-1);
+        roleList.add(NONE);
+
+        GrammarNode.Sets line = fragments.get(grammar[grammar.length - 1][0]).build(NONE, follow, classes, roleList);
+        follow.get(0).or(line.first);
+        positions = follow.size();
+
+        roles = new int[positions];
+        for(int p = 0; p < positions; ++p)
+        {
+            roles[p] = roleList.get(p);
+        }
+
+        ArrayList<BitSet> states = new ArrayList<>();
+        HashMap<BitSet, Integer> stateNumbers = new HashMap<>();
+        ArrayList<int[]> transitionList = new ArrayList<>();
+        BitSet start = new BitSet();
+        start.set(0);
+        states.add(start);
+        stateNumbers.put(start, 0);
+
+        for(int s = 0; s < states.size(); ++s)
+        {
+            int[] next = new int[CLASSES.length];
+            for(int c = 0; c < CLASSES.length; ++c)
+            {
+                BitSet target = new BitSet();
+                for(int q = states.get(s).nextSetBit(0); q >= 0; q = states.get(s).nextSetBit(q + 1))
+                {
+                    for(int p = follow.get(q).nextSetBit(0); p >= 0; p = follow.get(q).nextSetBit(p + 1))
+                    {
+                        if(classes.get(p) == c)
+                        {
+                            target.set(p);
+                        }
+                    }
+                }
+
+                if(target.isEmpty())
+                {
+                    next[c] = -1;
+                }
+                else
+                {
+                    Integer number = stateNumbers.get(target);
+                    if(number == null)
+                    {
+                        number = states.size();
+                        states.add(target);
+                        stateNumbers.put(target, number);
+                    }
+                    next[c] = number;
+                }
+            }
+            transitionList.add(next);
+        }
+
+        transitions = new int[states.size() * CLASSES.length];
+        predecessors = new int[states.size() * positions];
+        accepting = new int[states.size()];
+        Arrays.fill(predecessors, -1);
+        Arrays.fill(accepting, -1);
+
+        for(int s = 0; s < states.size(); ++s)
+        {
+            System.arraycopy(transitionList.get(s), 0, transitions, s * CLASSES.length, CLASSES.length);
+            BitSet state = states.get(s);
+
+            for(int q = state.nextSetBit(0); q >= 0; q = state.nextSetBit(q + 1))
+            {
+                for(int p = follow.get(q).nextSetBit(0); p >= 0; p = follow.get(q).nextSetBit(p + 1))
+                {
+                    if(predecessors[s * positions + p] >= 0)
+                    {
+                        throw new IllegalArgumentException("Grammar is ambiguous, token " + CLASSES[classes.get(p)] + " can follow several paths");
+                    }
+                    predecessors[s * positions + p] = q;
+                }
+
+                if(line.last.get(q))
+                {
+                    if(accepting[s] >= 0)
+                    {
+                        throw new IllegalArgumentException("Grammar is ambiguous, input can end with several paths");
+                    }
+                    accepting[s] = q;
+                }
+            }
+        }
+    }
+
+    /**
+     * Matches tokens of line and finds role of every token
+     *
+     * @param tokens classes of tokens, roles of tokens are written to them when line matches
+     * @return true if tokens form line of grammar, false if not
+     */
+    boolean match(LineTokens tokens)
+    {
+        int state = 0;
+        for(int i = 0; i < tokens.count; ++i)
+        {
+            state = transitions[state * CLASSES.length + tokens.classes[i]];
+            if(state < 0)
+            {
+                return false;
+            }
+            tokens.states[i] = state;
+        }
+
+        int position = accepting[state];
+        if(position < 0)
+        {
+            return false;
+        }
+
+        for(int i = tokens.count - 1; i >= 0; --i)
+        {
+            tokens.roles[i] = roles[position];
+            position = predecessors[(i > 0 ? tokens.states[i - 1] : 0) * positions + position];
+        }
+        return true;
+    }
+
+    /**
+     * Finds number of name in list of names
+     *
+     * @param names list of names
+     * @param name name to find
+     * @return index of name or -1 if it isn't in list
+     */
+    static int indexOf(String[] names, String name)
+    {
+        for(int i = 0; i < names.length; ++i)
+        {
+            if(names[i].equals(name))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
+
+/**
+ * Node of parsed definition of grammar fragment
+ */
+class GrammarNode
+{
+    /**
+     * single token class
+     */
+    static final int TOKEN = 0;
+
+    /**
+     * children one after another
+     */
+    static final int SEQUENCE = 1;
+
+    /**
+     * one of children
+     */
+    static final int ALTERNATIVE = 2;
+
+    /**
+     * child zero or one time
+     */
+    static final int OPTIONAL = 3;
+
+    /**
+     * child zero or more times
+     */
+    static final int STAR = 4;
+
+    /**
+     * child one or more times
+     */
+    static final int PLUS = 5;
+
+    /**
+     * child with role
+     */
+    static final int ROLE = 6;
+
+    /**
+     * kind of node
+     */
+    final int kind;
+
+    /**
+     * token class for token node, role for role node
+     */
+    final int value;
+
+    /**
+     * children of node
+     */
+    final List<GrammarNode> children;
+
+    /**
+     * Constructor of GrammarNode
+     *
+     * @param kind kind of node
+     * @param value token class for token node, role for role node, ignored by others
+     * @param children children of node
+     */
+    GrammarNode(int kind, int value, List<GrammarNode> children)
+    {
+        this.kind = kind;
+        this.value = value;
+        this.children = children;
+    }
+
+    /**
+     * First and last positions of node and whether it matches empty input
+     */
+    static class Sets
+    {
+        /**
+         * Determines if node matches empty input
+         */
+        boolean nullable;
+
+        /**
+         * positions that can match first token of node
+         */
+        BitSet first = new BitSet();
+
+        /**
+         * positions that can match last token of node
+         */
+        BitSet last = new BitSet();
+    }
+
+    /**
+     * Creates positions of every token of node and links positions that can follow each other.
+     * Fragment used several times gets its own positions every time.
+     *
+     * @param role role of tokens that don't have their own role
+     * @param follow positions that can follow every position, filled by this method
+     * @param classes token class of every position, filled by this method
+     * @param roles role of every position, filled by this method
+     * @return first and last positions of node
+     */
+    Sets build(int role, List<BitSet> follow, List<Integer> classes, List<Integer> roles)
+    {
+        Sets sets = new Sets();
+
+        if(kind == TOKEN)
+        {
+            int position = follow.size();
+            follow.add(new BitSet());
+            classes.add(value);
+            roles.add(role);
+            sets.first.set(position);
+            sets.last.set(position);
+        }
+        else if(kind == ROLE)
+        {
+            return children.get(0).build(value, follow, classes, roles);
+        }
+        else if(kind == SEQUENCE)
+        {
+            sets.nullable = true;
+            for(GrammarNode child : children)
+            {
+                Sets next = child.build(role, follow, classes, roles);
+                link(sets.last, next.first, follow);
+
+                if(sets.nullable)
+                {
+                    sets.first.or(next.first);
+                }
+                if(!next.nullable)
+                {
+                    sets.last.clear();
+                }
+                sets.last.or(next.last);
+                sets.nullable &= next.nullable;
+            }
+        }
+        else if(kind == ALTERNATIVE)
+        {
+            for(GrammarNode child : children)
+            {
+                Sets next = child.build(role, follow, classes, roles);
+                sets.first.or(next.first);
+                sets.last.or(next.last);
+                sets.nullable |= next.nullable;
+            }
+        }
+        else
+        {
+            sets = children.get(0).build(role, follow, classes, roles);
+            if(kind != PLUS)
+            {
+                sets.nullable = true;
+            }
+            if(kind != OPTIONAL)
+            {
+                link(sets.last, sets.first, follow);
+            }
+        }
+
+        return sets;
+    }
+
+    /**
+     * Lets every position of first set be followed by every position of second set
+     *
+     * @param from positions followed
+     * @param to positions following
+     * @param follow positions that can follow every position
+     */
+    private static void link(BitSet from, BitSet to, List<BitSet> follow)
+    {
+        for(int p = from.nextSetBit(0); p >= 0; p = from.nextSetBit(p + 1))
+        {
+            follow.get(p).or(to);
+        }
+    }
+}
+
+/**
+ * Recursive descent reader of definition of grammar fragment
+ */
+class DefinitionReader
+{
+    /**
+     * words and symbols of definition
+     */
+    private String[] words;
+
+    /**
+     * index of next word
+     */
+    private int next = 0;
+
+    /**
+     * fragments defined by earlier rows, by name
+     */
+    private HashMap<String, GrammarNode> fragments;
+
+    /**
+     * Constructor of DefinitionReader
+     *
+     * @param definition definition of fragment
+     * @param fragments fragments defined by earlier rows, by name
+     */
+    DefinitionReader(String definition, HashMap<String, GrammarNode> fragments)
+    {
+        this.words = definition.replaceAll("([()|*+?=])", " $1 ").trim().split("\\s+");
+        this.fragments = fragments;
+    }
+
+    /**
+     * Reads whole definition
+     *
+     * @return root node of definition
+     * @throws IllegalArgumentException if definition is not correct
+     */
+    GrammarNode read()
+    {
+        GrammarNode node = alternative();
+        if(next < words.length)
+        {
+            throw new IllegalArgumentException("Unexpected " + words[next] + " in grammar");
+        }
+        return node;
+    }
+
+    /**
+     * Reads sequences separated by "|"
+     *
+     * @return node of alternative, or of sequence if there is only one
+     */
+    private GrammarNode alternative()
+    {
+        ArrayList<GrammarNode> children = new ArrayList<>();
+        children.add(sequence());
+        while(accept("|"))
+        {
+            children.add(sequence());
+        }
+        return children.size() == 1 ? children.get(0) : new GrammarNode(GrammarNode.ALTERNATIVE, 0, children);
+    }
+
+    /**
+     * Reads repeated parts following each other
+     *
+     * @return node of sequence
+     */
+    private GrammarNode sequence()
+    {
+        ArrayList<GrammarNode> children = new ArrayList<>();
+        while(next < words.length && !words[next].equals("|") && !words[next].equals(")"))
+        {
+            GrammarNode child = primary();
+            while(next < words.length && "?*+".contains(words[next]))
+            {
+                int kind = accept("?") ? GrammarNode.OPTIONAL : accept("*") ? GrammarNode.STAR : accept("+") ? GrammarNode.PLUS : -1;
+                child = new GrammarNode(kind, 0, List.of(child));
+            }
+            children.add(child);
+        }
+        return new GrammarNode(GrammarNode.SEQUENCE, 0, children);
+    }
+
+    /**
+     * Reads group in parentheses, token class, fragment name or part with role
+     *
+     * @return node of part
+     */
+    private GrammarNode primary()
+    {
+        if(accept("("))
+        {
+            GrammarNode group = alternative();
+            if(!accept(")"))
+            {
+                throw new IllegalArgumentException("Missing ) in grammar");
+            }
+            return group;
+        }
+
+        String name = words[next++];
+        if(accept("="))
+        {
+            int role = SpecGrammar.indexOf(SpecGrammar.ROLES, name);
+            if(role < 0)
+            {
+                throw new IllegalArgumentException("Unknown role " + name + " in grammar");
+            }
+            return new GrammarNode(GrammarNode.ROLE, role, List.of(primary()));
+        }
+
+        int tokenClass = SpecGrammar.indexOf(SpecGrammar.CLASSES, name);
+        if(tokenClass >= 0)
+        {
+            return new GrammarNode(GrammarNode.TOKEN, tokenClass, List.of());
+        }
+        if(fragments.containsKey(name))
+        {
+            return fragments.get(name);
+        }
+        throw new IllegalArgumentException("Unknown token class or fragment " + name + " in grammar");
+    }
+
+    /**
+     * Skips next word if it's equal to given symbol
+     *
+     * @param symbol expected symbol
+     * @return true if symbol was skipped
+     */
+    private boolean accept(String symbol)
+    {
+        if(next < words.length && words[next].equals(symbol))
+        {
+            ++next;
+            return true;
+        }
+        return false;
+    }
+}
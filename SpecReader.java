@@ -0,0 +1,471 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class that reads lines of spec file through memory mapping. Lines are returned as views of mapped bytes,
+ * without creating String for every line. Files larger than 2GB are mapped in chunks.
+ *
+ * Lines are split like Scanner.nextLine does: on "\n", "\r\n" or "\r", and like Scanner.hasNext
+ * reading stops when only whitespace is left in file. Lines with non-ASCII characters are decoded from UTF-8.
+ * Reader can be limited to one shard of file, see {@link SpecShard}.
+ */
+public class SpecReader implements SpecSource
+{
+    /**
+     * size of mapped chunk of file
+     */
+    private static final long CHUNK_SIZE = 1L << 30;
+
+    /**
+     * size of blocks read when searching for end of content
+     */
+    private static final int TAIL_BLOCK_SIZE = 1 << 16;
+
+    /**
+     * channel of spec file
+     */
+    private FileChannel channel;
+
+    /**
+     * position in file where reading stops, only whitespace lines are after it
+     */
+    private long end;
+
+    /**
+     * currently mapped chunk of file
+     */
+    private MappedByteBuffer chunk;
+
+    /**
+     * position in file where current chunk starts
+     */
+    private long chunkStart;
+
+    /**
+     * position of next line in current chunk
+     */
+    private int position;
+
+    /**
+     * number of lines of file before first line read by this reader
+     */
+    private long linesBefore;
+
+    /**
+     * Constructor of SpecReader
+     *
+     * @param channel channel of spec file
+     * @throws IOException if file can't be read
+     */
+    private SpecReader(FileChannel channel) throws IOException
+    {
+        this.channel = channel;
+        this.end = findEnd();
+        map(0);
+    }
+
+    /**
+     * Opens spec file
+     *
+     * @param file spec file name
+     * @return reader of spec file
+     * @throws IOException if file can't be opened
+     */
+    public static SpecReader open(String file) throws IOException
+    {
+        return new SpecReader(FileChannel.open(Paths.get(file), StandardOpenOption.READ));
+    }
+
+    /**
+     * Opens spec file limited to one shard. Sharded by range, file is split into byte ranges of equal size
+     * and reader returns lines starting in range of given shard. Sharded by package, reader returns every line.
+     *
+     * @param file spec file name
+     * @param shard shard of file to read, null if whole file should be read
+     * @return reader of spec file
+     * @throws IOException if file can't be opened
+     */
+    public static SpecReader open(String file, SpecShard shard) throws IOException
+    {
+        SpecReader reader = open(file);
+
+        if(shard != null && !shard.byPackage)
+        {
+            reader.limit(shard.index, shard.count);
+        }
+        return reader;
+    }
+
+    /**
+     * Gets number of lines of file before first line read by this reader
+     *
+     * @return number of lines before first line, 0 if reader starts at beginning of file
+     */
+    public long linesBefore()
+    {
+        return linesBefore;
+    }
+
+    /**
+     * Reads next line. Returned view stays valid after next lines are read.
+     *
+     * @return line without line terminator or null if there are no more lines
+     * @throws IOException if file can't be read or one line is longer than 2GB
+     */
+    public CharSequence nextLine() throws IOException
+    {
+        GeneratorMetrics metrics = GeneratorMetrics.current;
+        if(metrics == null)
+        {
+            return readLine();
+        }
+
+        long start = System.nanoTime();
+        CharSequence line = readLine();
+        if(line != null)
+        {
+            metrics.read.since(start);
+        }
+        return line;
+    }
+
+    /**
+     * Reads next line
+     *
+     * @return line without line terminator or null if there are no more lines
+     * @throws IOException if file can't be read or one line is longer than 2GB
+     */
+    private CharSequence readLine() throws IOException
+    {
+        if(chunkStart + position >= end)
+        {
+            return null;
+        }
+
+        int limit = chunk.limit();
+        int lineEnd = position;
+        int highBits = 0;
+
+        while(true)
+        {
+            while(lineEnd < limit)
+            {
+                byte b = chunk.get(lineEnd);
+                if(b == '\n' || b == '\r')
+                {
+                    break;
+                }
+                highBits |= b;
+                ++lineEnd;
+            }
+
+            if(lineEnd < limit || chunkStart + limit >= channel.size())
+            {
+                break;
+            }
+
+            long lineStart = chunkStart + position;
+            if(lineEnd - position >= Integer.MAX_VALUE - 1)
+            {
+                throw new IOException("Line starting at byte " + lineStart + " is too long");
+            }
+
+            lineEnd -= position;
+            map(lineStart);
+            limit = chunk.limit();
+        }
+
+        CharSequence line = highBits < 0 ? decode(position, lineEnd) : new ByteLine(chunk, position, lineEnd - position);
+
+        position = lineEnd;
+        if(position < chunk.limit() && chunk.get(position) == '\r')
+        {
+            ++position;
+            if(position == chunk.limit() && chunkStart + position < channel.size())
+            {
+                map(chunkStart + position);
+            }
+        }
+        if(position < chunk.limit() && chunk.get(position) == '\n')
+        {
+            ++position;
+        }
+
+        return line;
+    }
+
+    /**
+     * Closes spec file
+     */
+    public void close()
+    {
+        try
+        {
+            channel.close();
+        }
+        catch(IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Maps chunk of file starting at given position, chunk is made larger if line starting there doesn't fit
+     *
+     * @param start position in file where chunk starts
+     * @throws IOException if file can't be mapped
+     */
+    private void map(long start) throws IOException
+    {
+        long size = Math.min(Math.max(CHUNK_SIZE, chunk == null ? 0 : 2L * (chunkStart + chunk.limit() - start)), channel.size() - start);
+        chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size, Integer.MAX_VALUE));
+        chunkStart = start;
+        position = 0;
+    }
+
+    /**
+     * Limits reader to lines starting in given part of content. Lines before first line are counted,
+     * so lines can be numbered as in whole file, that takes one pass over beginning of file.
+     *
+     * @param index index of part, starting from 0
+     * @param count number of parts content is split into
+     * @throws IOException if file can't be read
+     */
+    private void limit(int index, int count) throws IOException
+    {
+        long start = lineStart(end * index / count);
+        long stop = lineStart(end * (index + 1) / count);
+
+        linesBefore = countLines(start);
+        end = Math.min(end, stop);
+        map(start);
+    }
+
+    /**
+     * Finds first line starting at or after given position
+     *
+     * @param position position in file
+     * @return position where line starts, or end of file if there is no such line
+     * @throws IOException if file can't be read
+     */
+    private long lineStart(long position) throws IOException
+    {
+        if(position == 0)
+        {
+            return 0;
+        }
+
+        int previous = byteAt(position - 1);
+        if(previous == '\n' || previous == '\r' && byteAt(position) != '\n')
+        {
+            return position;
+        }
+
+        position = endOfLine(position);
+        if(byteAt(position) == '\r')
+        {
+            ++position;
+        }
+        if(byteAt(position) == '\n')
+        {
+            ++position;
+        }
+        return position;
+    }
+
+    /**
+     * Reads single byte of file
+     *
+     * @param position position in file
+     * @return byte at position or -1 if position is after end of file
+     * @throws IOException if file can't be read
+     */
+    private int byteAt(long position) throws IOException
+    {
+        ByteBuffer single = ByteBuffer.allocate(1);
+        return channel.read(single, position) > 0 ? single.get(0) : -1;
+    }
+
+    /**
+     * Counts lines of file before given position, "\r\n" is counted as one line terminator
+     *
+     * @param position position in file where line starts
+     * @return number of line terminators before position
+     * @throws IOException if file can't be read
+     */
+    private long countLines(long position) throws IOException
+    {
+        ByteBuffer block = ByteBuffer.allocate(TAIL_BLOCK_SIZE);
+        long lines = 0;
+        byte previous = 0;
+
+        for(long blockStart = 0; blockStart < position; blockStart += block.limit())
+        {
+            block.clear().limit((int) Math.min(TAIL_BLOCK_SIZE, position - blockStart));
+            while(block.hasRemaining() && channel.read(block, blockStart + block.position()) >= 0)
+            {
+            }
+
+            for(int i = 0; i < block.limit(); ++i)
+            {
+                byte b = block.get(i);
+                if(b == '\r' || b == '\n' && previous != '\r')
+                {
+                    ++lines;
+                }
+                previous = b;
+            }
+        }
+
+        return lines;
+    }
+
+    /**
+     * Finds end of content: end of line holding last character that is not whitespace
+     *
+     * @return position in file where reading stops
+     * @throws IOException if file can't be read
+     */
+    private long findEnd() throws IOException
+    {
+        ByteBuffer block = ByteBuffer.allocate(TAIL_BLOCK_SIZE);
+        long blockEnd = channel.size();
+
+        while(blockEnd > 0)
+        {
+            long blockStart = Math.max(0, blockEnd - TAIL_BLOCK_SIZE);
+            block.clear().limit((int) (blockEnd - blockStart));
+            while(block.hasRemaining() && channel.read(block, blockStart + block.position()) >= 0)
+            {
+            }
+
+            for(int i = block.position() - 1; i >= 0; --i)
+            {
+                if(!isWhitespace(block.get(i)))
+                {
+                    return endOfLine(blockStart + i);
+                }
+            }
+
+            blockEnd = blockStart;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Finds end of line holding given position
+     *
+     * @param position position in file
+     * @return position of line terminator or end of file
+     * @throws IOException if file can't be read
+     */
+    private long endOfLine(long position) throws IOException
+    {
+        ByteBuffer single = ByteBuffer.allocate(1);
+
+        while(position < channel.size())
+        {
+            single.clear();
+            channel.read(single, position);
+            if(single.get(0) == '\n' || single.get(0) == '\r')
+            {
+                break;
+            }
+            ++position;
+        }
+
+        return position;
+    }
+
+    /**
+     * Checks if byte is whitespace in the sense of Character.isWhitespace
+     *
+     * @param b byte to check
+     * @return true for ASCII whitespace
+     */
+    private static boolean isWhitespace(byte b)
+    {
+        return b == ' ' || (b >= '\t' && b <= '\r') || (b >= 0x1c && b <= 0x1f);
+    }
+
+    /**
+     * Decodes line containing non-ASCII characters
+     *
+     * @param start position of line in current chunk
+     * @param lineEnd position right after line in current chunk
+     * @return decoded line
+     */
+    private String decode(int start, int lineEnd)
+    {
+        ByteBuffer bytes = chunk.duplicate();
+        bytes.position(start).limit(lineEnd);
+        return StandardCharsets.UTF_8.decode(bytes).toString();
+    }
+}
+
+/**
+ * View of ASCII line stored in byte buffer
+ */
+class ByteLine implements CharSequence
+{
+    /**
+     * buffer holding line
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * position of first character of line in buffer
+     */
+    private final int offset;
+
+    /**
+     * number of characters of line
+     */
+    private final int length;
+
+    /**
+     * Constructor of ByteLine
+     *
+     * @param buffer buffer holding line
+     * @param offset position of first character of line in buffer
+     * @param length number of characters of line
+     */
+    ByteLine(ByteBuffer buffer, int offset, int length)
+    {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public int length()
+    {
+        return length;
+    }
+
+    public char charAt(int index)
+    {
+        return (char) buffer.get(offset + index);
+    }
+
+    public CharSequence subSequence(int start, int end)
+    {
+        return new ByteLine(buffer, offset + start, end - start);
+    }
+
+    @Override
+    public String toString()
+    {
+        byte[] bytes = new byte[length];
+        for(int i = 0; i < length; ++i)
+        {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,350 @@
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One of several parts of spec, generated by separate processes that can run on separate machines.
+ * Spec is split by range or by package:
+ * by range file is split into byte ranges of equal size aligned to line boundaries, every process reads only lines
+ * starting in its range, see {@link SpecReader#open(String, SpecShard)}. Class given by several lines in different
+ * ranges is written by several processes then, merge reports such classes.
+ * By package every process reads and parses whole spec, but writes only classes whose package hashes to its shard,
+ * so every class is written by exactly one process, even if spec gives it several times.
+ * <p>
+ * Every process writes its own manifest and error file, named like default ones with ".shard-I" added,
+ * {@link #merge} combines them into manifest and error file of whole spec after all processes finish.
+ * Stale files are found only by merge, since single process doesn't know which files belong to other shards.
+ * <p>
+ * Usage:
+ * java UserHandler SPEC_FILE OUT [switches] --shard=I/N [--shard-by=package] generates shard I of N, counted from 0,
+ * java SpecShard N SPEC_FILE OUT_DIR [switches] generates all shards by N processes on this machine and merges them,
+ * java SpecShard --merge N OUT_DIR [--delete-stale] [--max-errors=N] merges shards generated separately,
+ * for example on several machines whose output directories were copied to OUT_DIR.
+ */
+public class SpecShard
+{
+    /**
+     * index of shard, starting from 0
+     */
+    final int index;
+
+    /**
+     * number of shards that spec is split into
+     */
+    final int count;
+
+    /**
+     * Determines if spec is split by package instead of by range
+     */
+    final boolean byPackage;
+
+    /**
+     * Constructor of SpecShard
+     *
+     * @param index index of shard, starting from 0
+     * @param count number of shards that spec is split into
+     * @param byPackage true if spec is split by package, false if by range
+     */
+    SpecShard(int index, int count, boolean byPackage)
+    {
+        this.index = index;
+        this.count = count;
+        this.byPackage = byPackage;
+    }
+
+    /**
+     * Reads shard given as "I/N"
+     *
+     * @param text index of shard and number of shards separated by '/'
+     * @param byPackage true if spec is split by package, false if by range
+     * @return shard or null if text is not valid shard
+     */
+    static SpecShard parse(String text, boolean byPackage)
+    {
+        if(!text.matches("[0-9]{1,9}/[1-9][0-9]{0,8}"))
+        {
+            return null;
+        }
+
+        int slash = text.indexOf('/');
+        int index = Integer.parseInt(text.substring(0, slash));
+        int count = Integer.parseInt(text.substring(slash + 1));
+        return index < count ? new SpecShard(index, count, byPackage) : null;
+    }
+
+    /**
+     * Checks if class parsed from line is written by this shard. Sharded by range, every line read by shard belongs to it.
+     * Sharded by package, package is hashed, low bits of FNV hash depend on few bits of text so hash is mixed first.
+     *
+     * @param line LineGenerationOptions object parsed from line
+     * @return true if class should be written by this shard
+     */
+    boolean owns(LineGenerationOptions line)
+    {
+        if(!byPackage)
+        {
+            return true;
+        }
+
+        StringBuilder packagePath = new StringBuilder();
+        for(int i = 0; i < line.packageCount(); ++i)
+        {
+            line.appendPackage(i, packagePath);
+            packagePath.append('/');
+        }
+
+        long hash = IncrementalManifest.hash(packagePath);
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return Long.remainderUnsigned(hash, count) == index;
+    }
+
+    /**
+     * Builds name of file written by this shard in place of file written by whole run
+     *
+     * @param file name of file written by whole run
+     * @return name of file written by this shard
+     */
+    String fileName(String file)
+    {
+        return fileName(file, index);
+    }
+
+    /**
+     * Builds name of file written by given shard, ".shard-I" is added before extension
+     *
+     * @param file name of file written by whole run, like JavaGeneratorErrors.txt
+     * @param index index of shard
+     * @return name of file written by shard, like JavaGeneratorErrors.shard-0.txt
+     */
+    static String fileName(String file, int index)
+    {
+        int dot = file.lastIndexOf('.');
+        return dot > 0 ? file.substring(0, dot) + ".shard-" + index + file.substring(dot) : file + ".shard-" + index;
+    }
+
+    /**
+     * Combines manifests and error files of all shards into manifest and error file of whole spec.
+     * Files generated by previous run and not by any shard are stale. Nothing is merged if manifest of any shard
+     * is missing, because files of that shard would be taken as stale. Files of shards are deleted after merge.
+     *
+     * @param root directory that shards generated classes in
+     * @param count number of shards
+     * @param deleteStale true if stale files should be deleted
+     * @param maxErrors number of problems written to merged error file
+     * @param console stream that report is printed to
+     * @return true if errors occurred, false if not
+     */
+    public static boolean merge(Path root, int count, boolean deleteStale, int maxErrors, PrintStream console)
+    {
+        ArrayList<Path> manifests = new ArrayList<>();
+        ArrayList<Path> errorFiles = new ArrayList<>();
+
+        for(int i = 0; i < count; ++i)
+        {
+            manifests.add(root.resolve(fileName(IncrementalManifest.FILE_NAME, i)));
+            errorFiles.add(root.resolve(fileName(ErrorHandler.DEFAULT_FILE, i)));
+
+            if(!Files.isRegularFile(manifests.get(i)))
+            {
+                console.println("Manifest of shard " + i + " is missing, shards were not merged");
+                return true;
+            }
+        }
+
+        ArrayList<String> conflicts = new ArrayList<>();
+        IncrementalManifest manifest = IncrementalManifest.merge(root, manifests, conflicts);
+        if(manifest == null)
+        {
+            console.println("Couldn't read manifests of shards");
+            return true;
+        }
+
+        ErrorHandler errors = new ErrorHandler(root.resolve(ErrorHandler.DEFAULT_FILE), maxErrors, false);
+        for(String conflict : conflicts)
+        {
+            errors.report("Class written by several shards, split spec by package: " + conflict);
+        }
+        boolean failed = !errors.merge(errorFiles);
+
+        manifest.removeStale(deleteStale);
+        console.println("Merged " + count + " shards, conflicts: " + conflicts.size());
+        console.println(manifest.report());
+        if(!manifest.save())
+        {
+            console.println("Couldn't save manifest");
+            return true;
+        }
+
+        for(int i = 0; i < count; ++i)
+        {
+            failed = !delete(manifests.get(i)) || !delete(errorFiles.get(i)) || failed;
+        }
+
+        if(errors.close())
+        {
+            console.println("Errors occurred, check " + errors.getFile());
+            failed = true;
+        }
+        return failed;
+    }
+
+    /**
+     * Generates all shards of spec by separate JVMs on this machine, waits for them and merges their results.
+     * Shard whose process failed is reported, results it saved are still merged, so its errors are reported too,
+     * but whole generation fails then.
+     *
+     * @param count number of shards, one process is started for every shard
+     * @param specFile spec file
+     * @param out directory that classes are generated in
+     * @param switches switches of {@link UserHandler} passed to every process
+     * @param console stream that report is printed to
+     * @return true if errors occurred, false if not
+     */
+    public static boolean launch(int count, String specFile, String out, List<String> switches, PrintStream console)
+    {
+        Path root = Paths.get(out).toAbsolutePath();
+        if(!FileHandler.mkDir(root))
+        {
+            console.println("Couldn't create directory " + root);
+            return true;
+        }
+
+        StringBuilder classPath = new StringBuilder();
+        for(String entry : System.getProperty("java.class.path").split(File.pathSeparator))
+        {
+            classPath.append(classPath.length() > 0 ? File.pathSeparator : "").append(Paths.get(entry).toAbsolutePath());
+        }
+
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String spec = Paths.get(specFile).toAbsolutePath().toString();
+        Process[] processes = new Process[count];
+        boolean failed = false;
+
+        try
+        {
+            for(int i = 0; i < count; ++i)
+            {
+                ArrayList<String> command = new ArrayList<>(Arrays.asList(java, "-cp", classPath.toString(), "UserHandler", spec, out, "--shard=" + i + "/" + count));
+                command.addAll(switches);
+                processes[i] = new ProcessBuilder(command).directory(root.toFile()).inheritIO().start();
+            }
+
+            for(int i = 0; i < count; ++i)
+            {
+                int exitCode = processes[i].waitFor();
+                if(exitCode != 0)
+                {
+                    console.println("Shard " + i + " of " + count + " failed with exit code " + exitCode);
+                    failed = true;
+                }
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            destroy(processes);
+            console.println("Generation interrupted");
+            return true;
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            destroy(processes);
+            return true;
+        }
+
+        return merge(root, count, switches.contains("--delete-stale"), maxErrors(switches), console) || failed;
+    }
+
+    /**
+     * Finds number of problems written to error file given by --max-errors=N switch
+     *
+     * @param switches switches of {@link UserHandler}
+     * @return number given by last --max-errors switch or default one
+     */
+    private static int maxErrors(List<String> switches)
+    {
+        int maxErrors = ErrorHandler.DEFAULT_LIMIT;
+        for(String option : switches)
+        {
+            if(option.matches("--max-errors=[0-9]{1,9}"))
+            {
+                maxErrors = Integer.parseInt(option.substring("--max-errors=".length()));
+            }
+        }
+        return maxErrors;
+    }
+
+    /**
+     * Stops processes that were started
+     *
+     * @param processes processes of shards, null for ones that were not started
+     */
+    private static void destroy(Process[] processes)
+    {
+        for(Process process : processes)
+        {
+            if(process != null)
+            {
+                process.destroy();
+            }
+        }
+    }
+
+    /**
+     * Deletes file of shard
+     *
+     * @param file file to delete
+     * @return true if file doesn't exist anymore
+     */
+    private static boolean delete(Path file)
+    {
+        try
+        {
+            Files.deleteIfExists(file);
+            return true;
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Launches shards on this machine or merges shards generated separately, exits with code 1 if any shard failed
+     * or shards couldn't be merged
+     *
+     * @param args cmd args, see class description
+     */
+    public static void main(String[] args)
+    {
+        boolean failed;
+        if(args.length >= 3 && args[0].equals("--merge") && args[1].matches("[1-9][0-9]{0,8}"))
+        {
+            List<String> switches = Arrays.asList(args).subList(3, args.length);
+            failed = merge(Paths.get(args[2]), Integer.parseInt(args[1]), switches.contains("--delete-stale"), maxErrors(switches), System.out);
+        }
+        else if(args.length >= 3 && args[0].matches("[1-9][0-9]{0,8}"))
+        {
+            failed = launch(Integer.parseInt(args[0]), args[1], args[2], Arrays.asList(args).subList(3, args.length), System.out);
+        }
+        else
+        {
+            System.out.println("Usage: java SpecShard N SPEC_FILE OUT_DIR [switches]");
+            System.out.println("       java SpecShard --merge N OUT_DIR [--delete-stale] [--max-errors=N]");
+            failed = true;
+        }
+
+        if(failed)
+        {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+import java.io.IOException;
+
+/**
+ * Interface for classes that supply lines of spec one at a time, like {@link SpecReader}
+ */
+public interface SpecSource extends AutoCloseable
+{
+    /**
+     * Reads next line
+     *
+     * @return line without line terminator or null if there are no more lines
+     * @throws IOException if line can't be read
+     */
+    CharSequence nextLine() throws IOException;
+
+    /**
+     * Gets number of lines of spec before first line of this source, so lines can be numbered as in whole spec
+     *
+     * @return number of lines before first line, 0 if source starts at beginning of spec
+     */
+    default long linesBefore()
+    {
+        return 0;
+    }
+
+    /**
+     * Releases resources of source, errors are only printed
+     */
+    void close();
+}
@@ -0,0 +1,94 @@
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sink that writes all classes one after another to single stream, like standard output piped to another process.
+ * Every class is preceded by delimiter line "// file: " followed by its file name with '/' between directories,
+ * and followed by "\n" that isn't part of class, since classes don't have to end with line terminator.
+ * Stream is still valid Java text and can be split back into files by looking for delimiter lines.
+ */
+public class StreamSink implements OutputSink
+{
+    /**
+     * start of line preceding every class
+     */
+    static final String FILE_MARK = "// file: ";
+
+    /**
+     * size of buffer between sink and stream
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * buffered stream that classes are written to
+     */
+    private OutputStream out;
+
+    /**
+     * Determines if stream couldn't be written, like when process reading it quit, later classes aren't written then
+     */
+    private boolean failed = false;
+
+    /**
+     * Constructor of StreamSink
+     *
+     * @param out stream that classes are written to, closed by {@link #close()}
+     */
+    public StreamSink(OutputStream out)
+    {
+        this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+    }
+
+    /**
+     * Writes delimiter line, class and line terminator after it, safe to call from several threads.
+     * Once stream couldn't be written, every later class is refused without writing.
+     *
+     * @param line LineGenerationOptions object that class was rendered from
+     * @param specLine line of spec that class was parsed from
+     * @param content UTF-8 bytes of class
+     * @return true if class was written, false if not
+     */
+    public synchronized boolean write(LineGenerationOptions line, CharSequence specLine, ByteBuffer content)
+    {
+        if(failed)
+        {
+            return false;
+        }
+
+        try
+        {
+            out.write((FILE_MARK + OutputHandler.entryName(line) + "\n").getBytes(StandardCharsets.UTF_8));
+            out.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+            out.write('\n');
+            content.position(content.limit());
+            return true;
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            failed = true;
+            return false;
+        }
+    }
+
+    /**
+     * Flushes and closes stream
+     *
+     * @return true if stream was closed, false if not
+     */
+    public synchronized boolean close()
+    {
+        try
+        {
+            out.close();
+            return true;
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+/**
+ * Class that reads lines of spec from stream, like standard input of generator piped from another process.
+ * Lines are split the same way as by {@link SpecReader}: on "\n", "\r\n" or "\r", and reading stops when only
+ * whitespace is left. Stream can't be searched for its end, so lines holding only whitespace are kept back
+ * until line with other characters follows them, and dropped at end of stream.
+ */
+public class StreamSpecReader implements SpecSource
+{
+    /**
+     * size of block read from stream at once
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * stream of spec
+     */
+    private InputStream in;
+
+    /**
+     * block read from stream
+     */
+    private byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * position of next byte in block
+     */
+    private int position = 0;
+
+    /**
+     * number of bytes in block
+     */
+    private int limit = 0;
+
+    /**
+     * bytes of line being read
+     */
+    private byte[] line = new byte[256];
+
+    /**
+     * number of bytes of line being read
+     */
+    private int length = 0;
+
+    /**
+     * Determines if previous line ended with '\r', so '\n' right after it belongs to the same terminator
+     */
+    private boolean afterCarriageReturn = false;
+
+    /**
+     * lines holding only whitespace, returned only if line with other characters follows them
+     */
+    private ArrayDeque<String> blankLines = new ArrayDeque<>();
+
+    /**
+     * line with other characters than whitespace, returned after blank lines before it
+     */
+    private String nextLine = null;
+
+    /**
+     * Constructor of StreamSpecReader
+     *
+     * @param in stream of spec, closed by {@link #close()}
+     */
+    public StreamSpecReader(InputStream in)
+    {
+        this.in = in;
+    }
+
+    /**
+     * Reads next line
+     *
+     * @return line without line terminator or null if there are no more lines
+     * @throws IOException if stream can't be read
+     */
+    public CharSequence nextLine() throws IOException
+    {
+        GeneratorMetrics metrics = GeneratorMetrics.current;
+        if(metrics == null)
+        {
+            return readLine();
+        }
+
+        long start = System.nanoTime();
+        CharSequence line = readLine();
+        if(line != null)
+        {
+            metrics.read.since(start);
+        }
+        return line;
+    }
+
+    /**
+     * Returns next line, keeping back lines holding only whitespace
+     *
+     * @return line without line terminator or null if there are no more lines
+     * @throws IOException if stream can't be read
+     */
+    private CharSequence readLine() throws IOException
+    {
+        if(nextLine != null)
+        {
+            if(!blankLines.isEmpty())
+            {
+                return blankLines.poll();
+            }
+
+            String line = nextLine;
+            nextLine = null;
+            return line;
+        }
+
+        String line;
+        while((line = scanLine()) != null)
+        {
+            if(!isBlank(line))
+            {
+                if(blankLines.isEmpty())
+                {
+                    return line;
+                }
+
+                nextLine = line;
+                return blankLines.poll();
+            }
+            blankLines.add(line);
+        }
+
+        blankLines.clear();
+        return null;
+    }
+
+    /**
+     * Reads next line from stream
+     *
+     * @return line without line terminator or null if stream ended
+     * @throws IOException if stream can't be read
+     */
+    private String scanLine() throws IOException
+    {
+        while(true)
+        {
+            if(position == limit)
+            {
+                limit = in.read(buffer);
+                position = 0;
+
+                if(limit < 0)
+                {
+                    limit = 0;
+                    return length > 0 ? takeLine() : null;
+                }
+            }
+
+            byte b = buffer[position++];
+
+            if(afterCarriageReturn)
+            {
+                afterCarriageReturn = false;
+                if(b == '\n')
+                {
+                    continue;
+                }
+            }
+
+            if(b == '\n' || b == '\r')
+            {
+                afterCarriageReturn = b == '\r';
+                return takeLine();
+            }
+
+            if(length == line.length)
+            {
+                byte[] larger = new byte[2 * line.length];
+                System.arraycopy(line, 0, larger, 0, length);
+                line = larger;
+            }
+            line[length++] = b;
+        }
+    }
+
+    /**
+     * Decodes line being read and starts next one
+     *
+     * @return decoded line
+     */
+    private String takeLine()
+    {
+        String text = new String(line, 0, length, StandardCharsets.UTF_8);
+        length = 0;
+        return text;
+    }
+
+    /**
+     * Checks if line holds only whitespace in the sense of Character.isWhitespace, checked for ASCII characters only
+     *
+     * @param line line to check
+     * @return true if line is empty or holds only whitespace
+     */
+    private static boolean isBlank(String line)
+    {
+        for(int i = 0; i < line.length(); ++i)
+        {
+            char c = line.charAt(i);
+            if(!(c == ' ' || (c >= '\t' && c <= '\r') || (c >= 0x1c && c <= 0x1f)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Closes stream of spec
+     */
+    public void close()
+    {
+        try
+        {
+            in.close();
+        }
+        catch(IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+}
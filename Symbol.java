@@ -0,0 +1,83 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Token shared by many parsed lines, along with its UTF-8 form ready to be written
+ */
+class Symbol
+{
+    /**
+     * text of token
+     */
+    final String text;
+
+    /**
+     * text of token encoded to UTF-8
+     */
+    final byte[] bytes;
+
+    /**
+     * hash of text, computed by {@link #hash}
+     */
+    final int hash;
+
+    /**
+     * Constructor of Symbol
+     *
+     * @param text text of token
+     */
+    Symbol(String text)
+    {
+        this.text = text;
+        this.bytes = text.getBytes(StandardCharsets.UTF_8);
+        this.hash = hash(text, 0, text.length());
+    }
+
+    /**
+     * Checks if symbol has the same text as part of other text
+     *
+     * @param chars text holding token
+     * @param start position where token starts
+     * @param end position right after token
+     * @return true if texts are equal
+     */
+    boolean matches(CharSequence chars, int start, int end)
+    {
+        if(end - start != text.length())
+        {
+            return false;
+        }
+
+        for(int i = 0; i < text.length(); ++i)
+        {
+            if(text.charAt(i) != chars.charAt(start + i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes hash of part of text, with high bits mixed into low ones
+     *
+     * @param chars text holding token
+     * @param start position where token starts
+     * @param end position right after token
+     * @return hash of token
+     */
+    static int hash(CharSequence chars, int start, int end)
+    {
+        int hash = 0;
+        for(int i = start; i < end; ++i)
+        {
+            hash = 31 * hash + chars.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    @Override
+    public String toString()
+    {
+        return text;
+    }
+}
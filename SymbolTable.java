@@ -0,0 +1,184 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class that keeps one canonical {@link Symbol} for every token repeated across spec, like package folders
+ * and return types, so parsed lines share them instead of holding their own copies.
+ * One table lives for one run and is safe to use from several threads without locking.
+ * Table has fixed capacity, when it's full new tokens are still returned as symbols, just not shared.
+ */
+public class SymbolTable
+{
+    /**
+     * default number of slots of table
+     */
+    private static final int DEFAULT_CAPACITY = 1 << 14;
+
+    /**
+     * longest token that is kept in table, longer tokens are rarely repeated
+     */
+    private static final int MAX_SYMBOL_LENGTH = 64;
+
+    /**
+     * slots of open addressing table
+     */
+    private AtomicReferenceArray<Symbol> slots;
+
+    /**
+     * number of symbols that can be kept in table, so it never gets completely full
+     */
+    private int maxSize;
+
+    /**
+     * number of symbols kept in table
+     */
+    private AtomicInteger size = new AtomicInteger();
+
+    /**
+     * number of tokens that were already in table
+     */
+    private LongAdder hits = new LongAdder();
+
+    /**
+     * number of tokens that had to be created
+     */
+    private LongAdder misses = new LongAdder();
+
+    /**
+     * Constructor of SymbolTable with default capacity
+     */
+    public SymbolTable()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor of SymbolTable
+     *
+     * @param capacity number of slots, rounded up to power of two
+     */
+    public SymbolTable(int capacity)
+    {
+        int slotCount = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(slotCount);
+        this.maxSize = slotCount / 4 * 3;
+    }
+
+    /**
+     * Finds symbol of part of text, creates it if it isn't in table yet
+     *
+     * @param symbols table to search, null if symbol shouldn't be shared
+     * @param chars text holding token
+     * @param start position where token starts
+     * @param end position right after token
+     * @return symbol of token
+     */
+    public static Symbol intern(SymbolTable symbols, CharSequence chars, int start, int end)
+    {
+        return symbols != null ? symbols.intern(chars, start, end) : new Symbol(chars.subSequence(start, end).toString());
+    }
+
+    /**
+     * Finds symbol of token, creates it if it isn't in table yet
+     *
+     * @param token text of token
+     * @return symbol of token
+     */
+    public Symbol intern(CharSequence token)
+    {
+        return intern(token, 0, token.length());
+    }
+
+    /**
+     * Finds symbol of part of text, creates it if it isn't in table yet
+     *
+     * @param chars text holding token
+     * @param start position where token starts
+     * @param end position right after token
+     * @return symbol of token
+     */
+    public Symbol intern(CharSequence chars, int start, int end)
+    {
+        if(end - start > MAX_SYMBOL_LENGTH)
+        {
+            misses.increment();
+            return new Symbol(chars.subSequence(start, end).toString());
+        }
+
+        int hash = Symbol.hash(chars, start, end);
+        int mask = slots.length() - 1;
+        Symbol created = null;
+
+        for(int i = hash & mask; ; i = (i + 1) & mask)
+        {
+            Symbol symbol = slots.get(i);
+
+            while(symbol == null)
+            {
+                if(created == null)
+                {
+                    created = new Symbol(chars.subSequence(start, end).toString());
+                }
+                if(size.get() >= maxSize)
+                {
+                    misses.increment();
+                    return created;
+                }
+                if(slots.compareAndSet(i, null, created))
+                {
+                    size.incrementAndGet();
+                    misses.increment();
+                    return created;
+                }
+                symbol = slots.get(i);
+            }
+
+            if(symbol.hash == hash && symbol.matches(chars, start, end))
+            {
+                hits.increment();
+                return symbol;
+            }
+        }
+    }
+
+    /**
+     * Gets number of symbols kept in table
+     *
+     * @return number of symbols
+     */
+    public int size()
+    {
+        return size.get();
+    }
+
+    /**
+     * Gets number of tokens that were found in table
+     *
+     * @return number of hits
+     */
+    public long hits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Gets number of tokens that had to be created
+     *
+     * @return number of misses
+     */
+    public long misses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Summary of table usage
+     *
+     * @return number of symbols, hits and misses
+     */
+    public String report()
+    {
+        return "Symbols: " + size() + ", hits: " + hits() + ", misses: " + misses();
+    }
+}
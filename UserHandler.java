@@ -1,99 +1,646 @@
-import java.io.File;
-import java.util.ArrayList;
-import java.util.Scanner;
-
-/**
- * Main class of the program, contains main method for whole program
- */
-public class UserHandler
-{
-    /**
-     * Array showing occurrence of particular problems
-     */
-    private boolean[] errors;
-
-    /**
-     * Scanner for reading file containing class generation options
-     */
-    private Scanner inputFile;
-
-    /**
-     * number of expected arguments passed in cmd
-     */
-    private byte expectedArguments = 2;
-
-    /**
-     * Container for particular files generation - each line is one class
-     */
-    private ArrayList<LineGenerationOptions> lineContainer= new ArrayList<LineGenerationOptions>();
-
-    /**
-     * Main method of whole program, takes care of error handling of particular functions
-     *
-     * @param args arguments passed in cmd
-     */
-    public static void main(String[] args)
-    {
-        UserHandler userHandler = new UserHandler();
-
-        if(userHandler.checkUserCommands(args))
-        {
-            ErrorHandler.handleErrors(userHandler.errors, "JavaGeneratorErrors.txt");
-            System.out.println("Errors occurred, check JavaGeneratorErrors.txt");
-        }
-        else
-        {
-            userHandler.inputFile = FileHandler.getInputFile(args[0]);
-
-            while(userHandler.inputFile.hasNext())
-            {
-                String line = userHandler.inputFile.nextLine();
-                LineGenerationOptions lineOptions = new LineGenerationOptions();
-                LineHandler.handleLine(lineOptions, line);
-                userHandler.lineContainer.add(lineOptions);
-            }
-
-            for(LineGenerationOptions line : userHandler.lineContainer)
-            {
-                OutputHandler.writeClassToFile(line);
-            }
-        }
-
-        for(LineGenerationOptions line : userHandler.lineContainer)
-        {
-            System.out.println("\n\n" + line);
-        }
-    }
-
-    /**
-     * Method that checks for basic errors in user commands.
-     * Checks if number of arguments is correct and if input file exists.
-     *
-     * @param args arguments to check
-     * @return true if errors occurred, false if not
-     */
-    private boolean checkUserCommands(String[] args)
-    {
-        errors = new boolean[3];
-
-        if(args.length == expectedArguments)
-        {
-            File f = new File(args[0]);
-            errors[0] = !f.isFile();
-        }
-        else
-        {
-            errors[1] = args.length<expectedArguments;
-            errors[2] = args.length>expectedArguments;
-        }
-
-        boolean result = false;
-
-        for (boolean x : errors)
-        {
-            result = result || x;
-        }
-
-        return result;
-    }
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/**
+ * Main class of the program, contains main method for whole program
+ */
+public class UserHandler
+{
+    /**
+     * name of spec file or archive that means standard input or standard output
+     */
+    static final String STANDARD_STREAM = "-";
+
+    /**
+     * Collector of problems found in arguments and spec lines, created when it's needed first time
+     */
+    private ErrorHandler errors;
+
+    /**
+     * number of problems written to error file
+     */
+    private int maxErrors = ErrorHandler.DEFAULT_LIMIT;
+
+    /**
+     * Determines if generation should stop at first problem found in spec
+     */
+    private boolean failFast = false;
+
+    /**
+     * Source of class generation options
+     */
+    private SpecSource inputFile;
+
+    /**
+     * directory that classes are generated in
+     */
+    private Path root = Paths.get("");
+
+    /**
+     * stream that parsed options, errors and reports are printed to
+     */
+    private PrintStream console = System.out;
+
+    /**
+     * number of expected arguments passed in cmd
+     */
+    private byte expectedArguments = 2;
+
+    /**
+     * Determines if parsed options of every line should be printed to console
+     */
+    private boolean printOptions = false;
+
+    /**
+     * number of threads used to parse and write classes, 1 means that everything is done by main thread
+     */
+    private int threads = 1;
+
+    /**
+     * number of items buffered by every stage of {@link GeneratorPipeline}, 0 if pipeline isn't used
+     */
+    private int pipelineBuffer = 0;
+
+    /**
+     * Determines if only classes that changed since previous run should be written
+     */
+    private boolean incremental = false;
+
+    /**
+     * Determines if files generated by previous run from lines that no longer exist should be deleted
+     */
+    private boolean deleteStale = false;
+
+    /**
+     * policy that makes written files survive crash, null if files are written in place
+     */
+    private DurabilityPolicy durability = null;
+
+    /**
+     * number of files that can be written at once by virtual threads, 0 if files are written by generating thread
+     */
+    private int asyncOpenFiles = 0;
+
+    /**
+     * archive file that all classes are written to, null if classes are written to separate files
+     */
+    private String archiveFile = null;
+
+    /**
+     * Determines if all classes are written to standard output one after another, see {@link StreamSink}
+     */
+    private boolean standardOutput = false;
+
+    /**
+     * Determines if archive entries are stored without compression
+     */
+    private boolean storedArchive = false;
+
+    /**
+     * compression level of archive entries, -1 for default level
+     */
+    private int compressionLevel = -1;
+
+    /**
+     * file with template of generated classes, null for default template
+     */
+    private String templateFile = null;
+
+    /**
+     * number of line bodies kept in parse cache, 0 if lines shouldn't be cached
+     */
+    private int parseCacheSize = 0;
+
+    /**
+     * file that parse cache is loaded from and saved to, null if cache is kept only in memory
+     */
+    private String parseCacheFile = null;
+
+    /**
+     * shard of spec generated by this run, null if whole spec is generated
+     */
+    private SpecShard shard = null;
+
+    /**
+     * Determines if spec is split into shards by package instead of by range
+     */
+    private boolean shardByPackage = false;
+
+    /**
+     * Determines if statistics of symbol table should be printed after generation
+     */
+    private boolean printSymbolStats = false;
+
+    /**
+     * Determines if time of every stage should be measured and reported after generation
+     */
+    private boolean collectMetrics = false;
+
+    /**
+     * file that metrics are written to as JSON, null if they should be printed to console
+     */
+    private String metricsFile = null;
+
+    /**
+     * Constructor of UserHandler that generates classes in working directory and prints to console
+     */
+    public UserHandler()
+    {
+    }
+
+    /**
+     * Constructor of UserHandler
+     *
+     * @param root directory that classes are generated in
+     * @param console stream that parsed options, errors and reports are printed to
+     */
+    UserHandler(Path root, PrintStream console)
+    {
+        this.root = root;
+        this.console = console;
+    }
+
+    /**
+     * Main method of whole program, takes care of error handling of particular functions.
+     * Exits with code 1 if errors occurred, so scripts and harnesses can tell failed run from successful one.
+     *
+     * @param args arguments passed in cmd
+     */
+    public static void main(String[] args)
+    {
+        UserHandler userHandler = new UserHandler();
+        args = userHandler.readSwitches(args);
+
+        if(userHandler.writesStandardOutput())
+        {
+            userHandler.console = System.err;
+        }
+
+        if(userHandler.checkUserCommands(args))
+        {
+            userHandler.errors().close();
+            userHandler.console.println("Errors occurred, check " + userHandler.errors().getFile());
+            System.exit(1);
+        }
+        else if(userHandler.generate(args[0]))
+        {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Generates classes from every line of input file
+     *
+     * @param inputFileName file containing class generation options, "-" for standard input
+     * @return true if errors occurred, false if not
+     */
+    boolean generate(String inputFileName)
+    {
+        if(templateFile != null)
+        {
+            OutputHandler.template = ClassTemplate.load(templateFile, console);
+            if(OutputHandler.template == null)
+            {
+                OutputHandler.template = ClassTemplate.DEFAULT;
+                console.println("Couldn't load template " + templateFile);
+                return true;
+            }
+        }
+
+        if(shard != null && archiveFile != null)
+        {
+            console.println("Archive can't be written by several shards");
+            return true;
+        }
+
+        if(shard != null && standardOutput)
+        {
+            console.println("Standard output can't be written by several shards");
+            return true;
+        }
+
+        if(inputFileName.equals(STANDARD_STREAM))
+        {
+            if(shard != null && !shard.byPackage)
+            {
+                console.println("Spec read from standard input can be sharded only by package");
+                return true;
+            }
+            return generate(new StreamSpecReader(System.in));
+        }
+
+        SpecReader reader = FileHandler.getSpecReader(inputFileName, shard);
+        return reader == null || generate(reader);
+    }
+
+    /**
+     * Generates classes from every line of source, closes source afterwards
+     *
+     * @param source source of class generation options
+     * @return true if errors occurred, false if not
+     */
+    boolean generate(SpecSource source)
+    {
+        inputFile = source;
+        OutputSink sink = createSink();
+
+        if(sink == null)
+        {
+            inputFile.close();
+            return true;
+        }
+
+        SymbolTable symbols = new SymbolTable();
+        ParseCache cache = null;
+        if(parseCacheSize > 0)
+        {
+            cache = parseCacheFile != null ? ParseCache.load(root.resolve(parseCacheFile), parseCacheSize, symbols) : new ParseCache(parseCacheSize);
+            LineHandler.parseCache = cache;
+        }
+
+        GeneratorMetrics metrics = collectMetrics ? new GeneratorMetrics(true) : null;
+        if(metrics != null)
+        {
+            GeneratorMetrics.current = metrics;
+        }
+
+        boolean failed = false;
+
+        ErrorHandler errors = errors();
+
+        if(threads > 1)
+        {
+            failed = new ParallelGenerator(threads, printOptions, sink, symbols, console, errors, shard).generate(inputFile);
+        }
+        else if(pipelineBuffer > 0)
+        {
+            failed = new GeneratorPipeline(pipelineBuffer, symbols, errors, shard).generate(inputFile, sink, console, printOptions);
+        }
+        else
+        {
+            try
+            {
+                LineParser parser = new LineParser(symbols, !sink.keepsLines());
+                long lineNumber = inputFile.linesBefore();
+                CharSequence line;
+
+                while(!errors.shouldStop() && (line = inputFile.nextLine()) != null)
+                {
+                    ++lineNumber;
+                    LineGenerationOptions lineOptions = parser.parse(line);
+                    if(shard != null && !shard.owns(lineOptions))
+                    {
+                        continue;
+                    }
+                    errors.checkLine(lineNumber, line, lineOptions);
+
+                    if(!OutputHandler.writeClass(lineOptions, line, sink))
+                    {
+                        console.println("Line " + lineNumber + ": Couldn't write class " + lineOptions.getClassName());
+                        failed = true;
+                    }
+
+                    if(printOptions)
+                    {
+                        console.println("\n\n" + lineOptions);
+                    }
+                }
+            }
+            catch(IOException e)
+            {
+                e.printStackTrace();
+                failed = true;
+            }
+        }
+
+        inputFile.close();
+        failed = !sink.close() || failed;
+
+        if(printSymbolStats)
+        {
+            console.println(symbols.report());
+        }
+
+        if(cache != null)
+        {
+            LineHandler.parseCache = null;
+            console.println(cache.report());
+            if(parseCacheFile != null && !cache.save(root.resolve(parseCacheFile)))
+            {
+                console.println("Couldn't save parse cache " + parseCacheFile);
+            }
+        }
+
+        if(metrics != null)
+        {
+            GeneratorMetrics.current = null;
+            reportMetrics(metrics);
+        }
+
+        if(errors.close())
+        {
+            console.println("Errors occurred, check " + errors.getFile());
+            failed = true;
+        }
+
+        return failed;
+    }
+
+    /**
+     * Gets collector of problems, creates it with limits set by switches when it's needed first time
+     *
+     * @return collector of problems
+     */
+    private ErrorHandler errors()
+    {
+        if(errors == null)
+        {
+            String fileName = shard != null ? shard.fileName(ErrorHandler.DEFAULT_FILE) : ErrorHandler.DEFAULT_FILE;
+            errors = new ErrorHandler(root.resolve(fileName), maxErrors, failFast);
+        }
+        return errors;
+    }
+
+    /**
+     * Prints metrics as JSON to console or writes them to metrics file
+     *
+     * @param metrics metrics of finished generation
+     */
+    private void reportMetrics(GeneratorMetrics metrics)
+    {
+        if(metricsFile == null)
+        {
+            console.print(metrics.toJson());
+        }
+        else if(!metrics.writeJson(root.resolve(metricsFile).toString()))
+        {
+            console.println("Couldn't write metrics to " + metricsFile);
+        }
+        metrics.close();
+    }
+
+    /**
+     * Checks if classes are written to standard output, reports have to be printed to standard error then
+     *
+     * @return true if switches send classes to standard output
+     */
+    boolean writesStandardOutput()
+    {
+        return standardOutput || STANDARD_STREAM.equals(archiveFile);
+    }
+
+    /**
+     * Creates sink chosen by switches
+     *
+     * @return sink for generated classes or null if it couldn't be created
+     */
+    private OutputSink createSink()
+    {
+        if(STANDARD_STREAM.equals(archiveFile))
+        {
+            ArchiveWriter archive = ArchiveWriter.open(new FileOutputStream(FileDescriptor.out), false, storedArchive, compressionLevel, console);
+            if(archive == null)
+            {
+                console.println("Couldn't write archive to standard output");
+            }
+            return archive;
+        }
+
+        if(standardOutput)
+        {
+            return new StreamSink(new FileOutputStream(FileDescriptor.out));
+        }
+
+        if(archiveFile != null)
+        {
+            ArchiveWriter archive = ArchiveWriter.open(root.resolve(archiveFile).toString(), storedArchive, compressionLevel, console);
+            if(archive == null)
+            {
+                console.println("Couldn't create archive " + archiveFile);
+            }
+            return archive;
+        }
+
+        IncrementalManifest manifest = incremental ? IncrementalManifest.load(root) : null;
+        if(shard != null)
+        {
+            manifest = (manifest != null ? manifest : IncrementalManifest.create(root)).asPart(shard.fileName(IncrementalManifest.FILE_NAME));
+        }
+
+        if(durability != null)
+        {
+            long deleted = durability.start();
+            if(deleted > 0)
+            {
+                console.println("Deleted " + deleted + " temporary files left by interrupted run");
+            }
+        }
+
+        FileSink files = new FileSink(root, manifest, deleteStale, console, durability);
+        return asyncOpenFiles > 0 ? new AsyncSink(files, asyncOpenFiles, console) : files;
+    }
+
+    /**
+     * Method reads switches (arguments starting with "--") and sets matching options.
+     * Supported switches:
+     * --print prints parsed options of every line to console
+     * --threads=N parses and writes classes using N worker threads
+     * --pipeline reads, parses, renders and writes classes on separate threads connected by bounded buffers, see {@link GeneratorPipeline}
+     * --pipeline=N same as --pipeline, every stage buffers at most N lines
+     * --regex-parser parses lines with chain of regular expressions instead of single pass tokenizer
+     * --incremental writes only classes that changed since previous run
+     * --delete-stale same as --incremental, also deletes classes of lines removed since previous run
+     * --durability=none|atomic|group[:N[:T]] makes written files survive crash, see {@link DurabilityPolicy}:
+     * none writes files in place (default), atomic flushes and renames every file, group commits N files at once
+     * (default 1000) or files written in T milliseconds (default 1000)
+     * --async-write writes every file on its own virtual thread, at most 256 files at once
+     * --async-write=N same as --async-write, at most N files at once
+     * --max-errors=N writes at most N problems found in spec to error file, the rest are only counted
+     * --fail-fast stops generation at first problem found in spec
+     * --archive=FILE writes all classes to one zip archive (jar if FILE ends with .jar), incremental mode is ignored then
+     * --archive=- same as --archive=FILE, streams zip archive to standard output as classes are generated, without staging anything
+     * on disk, and prints reports to standard error
+     * --stdout writes all classes to standard output one after another, separated by delimiter lines, see {@link StreamSink},
+     * prints reports to standard error, incremental mode is ignored then
+     * --compression=LEVEL compression of archive entries, 0-9 or stored
+     * --template=FILE renders classes with template from FILE instead of default one, see {@link ClassTemplate}
+     * --symbol-stats prints how many package folders and return types were shared through symbol table
+     * --parse-cache reuses members of lines whose body (everything after class name) was already parsed
+     * --parse-cache=N same as --parse-cache, keeps at most N bodies, least recently used are dropped
+     * --parse-cache-file=FILE same as --parse-cache, loads cache from FILE and saves it there after generation
+     * --metrics measures every stage of generation, exposes it through JMX and prints it as JSON after generation
+     * --metrics=FILE same as --metrics, writes JSON to FILE instead of console
+     * --shard=I/N generates only shard I of N (counted from 0), writes its own manifest and error file, see {@link SpecShard}
+     * --shard-by=package|range splits spec into shards by hash of package or by byte ranges, range is default
+     *
+     * @param args arguments passed in cmd
+     * @return arguments that are not switches
+     */
+    String[] readSwitches(String[] args)
+    {
+        ArrayList<String> remaining = new ArrayList<>();
+
+        for(String arg : args)
+        {
+            DurabilityPolicy policy = arg.startsWith("--durability=") ? DurabilityPolicy.parse(arg.substring("--durability=".length()), root) : null;
+            SpecShard parsedShard = arg.startsWith("--shard=") ? SpecShard.parse(arg.substring("--shard=".length()), false) : null;
+
+            if(arg.equals("--print"))
+            {
+                printOptions = true;
+            }
+            else if(arg.equals("--regex-parser"))
+            {
+                LineHandler.regexChain = true;
+            }
+            else if(arg.equals("--symbol-stats"))
+            {
+                printSymbolStats = true;
+            }
+            else if(arg.equals("--parse-cache"))
+            {
+                parseCacheSize = Math.max(parseCacheSize, ParseCache.DEFAULT_CAPACITY);
+            }
+            else if(arg.matches("--parse-cache=[1-9][0-9]{0,8}"))
+            {
+                parseCacheSize = Integer.parseInt(arg.substring("--parse-cache=".length()));
+            }
+            else if(arg.startsWith("--parse-cache-file=") && arg.length() > "--parse-cache-file=".length())
+            {
+                parseCacheFile = arg.substring("--parse-cache-file=".length());
+                parseCacheSize = parseCacheSize > 0 ? parseCacheSize : ParseCache.DEFAULT_CAPACITY;
+            }
+            else if(arg.equals("--metrics"))
+            {
+                collectMetrics = true;
+            }
+            else if(arg.startsWith("--metrics=") && arg.length() > "--metrics=".length())
+            {
+                collectMetrics = true;
+                metricsFile = arg.substring("--metrics=".length());
+            }
+            else if(parsedShard != null)
+            {
+                shard = parsedShard;
+            }
+            else if(arg.equals("--shard-by=package") || arg.equals("--shard-by=range"))
+            {
+                shardByPackage = arg.equals("--shard-by=package");
+            }
+            else if(arg.equals("--incremental"))
+            {
+                incremental = true;
+            }
+            else if(arg.equals("--delete-stale"))
+            {
+                incremental = true;
+                deleteStale = true;
+            }
+            else if(arg.equals("--durability=none"))
+            {
+                durability = null;
+            }
+            else if(policy != null)
+            {
+                durability = policy;
+            }
+            else if(arg.startsWith("--archive=") && arg.length() > "--archive=".length())
+            {
+                archiveFile = arg.substring("--archive=".length());
+            }
+            else if(arg.equals("--stdout"))
+            {
+                standardOutput = true;
+            }
+            else if(arg.startsWith("--template=") && arg.length() > "--template=".length())
+            {
+                templateFile = arg.substring("--template=".length());
+            }
+            else if(arg.equals("--compression=stored"))
+            {
+                storedArchive = true;
+            }
+            else if(arg.matches("--compression=[0-9]"))
+            {
+                storedArchive = false;
+                compressionLevel = Integer.parseInt(arg.substring("--compression=".length()));
+            }
+            else if(arg.equals("--fail-fast"))
+            {
+                failFast = true;
+            }
+            else if(arg.matches("--max-errors=[0-9]{1,9}"))
+            {
+                maxErrors = Integer.parseInt(arg.substring("--max-errors=".length()));
+            }
+            else if(arg.equals("--async-write"))
+            {
+                asyncOpenFiles = AsyncSink.DEFAULT_OPEN_FILES;
+            }
+            else if(arg.matches("--async-write=[1-9][0-9]{0,8}"))
+            {
+                asyncOpenFiles = Integer.parseInt(arg.substring("--async-write=".length()));
+            }
+            else if(arg.equals("--pipeline"))
+            {
+                pipelineBuffer = GeneratorPipeline.DEFAULT_BUFFER_SIZE;
+            }
+            else if(arg.matches("--pipeline=[1-9][0-9]{0,8}"))
+            {
+                pipelineBuffer = Integer.parseInt(arg.substring("--pipeline=".length()));
+            }
+            else if(arg.matches("--threads=[0-9]{1,9}"))
+            {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            }
+            else
+            {
+                remaining.add(arg);
+            }
+        }
+
+        if(shard != null && shardByPackage)
+        {
+            shard = new SpecShard(shard.index, shard.count, true);
+        }
+
+        return remaining.toArray(new String[0]);
+    }
+
+    /**
+     * Method that checks for basic errors in user commands.
+     * Checks if number of arguments is correct and if input file exists.
+     *
+     * @param args arguments to check
+     * @return true if errors occurred, false if not
+     */
+    private boolean checkUserCommands(String[] args)
+    {
+        ErrorHandler errors = errors();
+
+        if(args.length == expectedArguments)
+        {
+            File f = new File(args[0]);
+            if(!args[0].equals(STANDARD_STREAM) && !f.isFile())
+            {
+                errors.report("Input file don't exist");
+            }
+        }
+        else if(args.length < expectedArguments)
+        {
+            errors.report("Not enough arguments to launch");
+        }
+        else
+        {
+            errors.report("Too much arguments");
+        }
+
+        return errors.count() > 0;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,411 @@
+package generator.benchmark;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Scanner;
+import java.util.stream.Stream;
+
+/**
+ * Access to classes of generator from benchmarks. Generator is written in default package, which can't be imported,
+ * and JMH doesn't accept benchmarks in default package, so classes are reached through method handles bound once.
+ * Handles are constants, so JIT inlines calls through them and benchmarks measure generator, not reflection.
+ * Objects of generator are passed around as Object.
+ */
+final class Generator
+{
+    /**
+     * console of generator, everything printed to it is dropped
+     */
+    static final PrintStream NO_CONSOLE = new PrintStream(OutputStream.nullOutputStream());
+
+    /**
+     * LineGenerationOptions()
+     */
+    private static final MethodHandle NEW_OPTIONS = constructor("LineGenerationOptions").asType(MethodType.methodType(Object.class));
+
+    /**
+     * SymbolTable()
+     */
+    private static final MethodHandle NEW_SYMBOL_TABLE = constructor("SymbolTable").asType(MethodType.methodType(Object.class));
+
+    /**
+     * LineParser(SymbolTable, boolean)
+     */
+    private static final MethodHandle NEW_PARSER = constructor("LineParser", type("SymbolTable"), boolean.class)
+            .asType(MethodType.methodType(Object.class, Object.class, boolean.class));
+
+    /**
+     * UserHandler(Path, PrintStream)
+     */
+    private static final MethodHandle NEW_USER_HANDLER = constructor("UserHandler", Path.class, PrintStream.class)
+            .asType(MethodType.methodType(Object.class, Path.class, PrintStream.class));
+
+    /**
+     * LineHandler.handleLine(LineGenerationOptions, CharSequence, SymbolTable)
+     */
+    private static final MethodHandle HANDLE_LINE = method("LineHandler", "handleLine", type("LineGenerationOptions"), CharSequence.class, type("SymbolTable"))
+            .asType(MethodType.methodType(Object.class, Object.class, CharSequence.class, Object.class));
+
+    /**
+     * setter of LineHandler.regexChain
+     */
+    private static final MethodHandle SET_REGEX_CHAIN = staticSetter("LineHandler", "regexChain");
+
+    /**
+     * LineParser.parse(CharSequence)
+     */
+    private static final MethodHandle PARSE = method("LineParser", "parse", CharSequence.class)
+            .asType(MethodType.methodType(Object.class, Object.class, CharSequence.class));
+
+    /**
+     * LineGenerationOptions.methodCount()
+     */
+    private static final MethodHandle METHOD_COUNT = method("LineGenerationOptions", "methodCount").asType(MethodType.methodType(int.class, Object.class));
+
+    /**
+     * LineGenerationOptions.fieldCount()
+     */
+    private static final MethodHandle FIELD_COUNT = method("LineGenerationOptions", "fieldCount").asType(MethodType.methodType(int.class, Object.class));
+
+    /**
+     * OutputHandler.renderClass(LineGenerationOptions)
+     */
+    private static final MethodHandle RENDER_CLASS = method("OutputHandler", "renderClass", type("LineGenerationOptions"))
+            .asType(MethodType.methodType(ByteBuffer.class, Object.class));
+
+    /**
+     * SpecReader.open(String)
+     */
+    private static final MethodHandle OPEN_SPEC = method("SpecReader", "open", String.class).asType(MethodType.methodType(Object.class, String.class));
+
+    /**
+     * SpecReader.nextLine()
+     */
+    private static final MethodHandle NEXT_LINE = method("SpecReader", "nextLine").asType(MethodType.methodType(CharSequence.class, Object.class));
+
+    /**
+     * SpecReader.close()
+     */
+    private static final MethodHandle CLOSE_SPEC = method("SpecReader", "close").asType(MethodType.methodType(void.class, Object.class));
+
+    /**
+     * FileHandler.getInputFile(String)
+     */
+    private static final MethodHandle INPUT_FILE = method("FileHandler", "getInputFile", String.class);
+
+    /**
+     * UserHandler.generate(String)
+     */
+    private static final MethodHandle GENERATE = method("UserHandler", "generate", String.class).asType(MethodType.methodType(boolean.class, Object.class, String.class));
+
+    /**
+     * Class isn't instantiated
+     */
+    private Generator()
+    {
+    }
+
+    /**
+     * Creates empty options
+     *
+     * @return LineGenerationOptions
+     */
+    static Object newOptions() throws Throwable
+    {
+        return (Object) NEW_OPTIONS.invokeExact();
+    }
+
+    /**
+     * Creates empty symbol table
+     *
+     * @return SymbolTable
+     */
+    static Object newSymbolTable() throws Throwable
+    {
+        return (Object) NEW_SYMBOL_TABLE.invokeExact();
+    }
+
+    /**
+     * Creates parser
+     *
+     * @param symbols SymbolTable
+     * @param reuseOptions true if parser should fill the same options by every line
+     * @return LineParser
+     */
+    static Object newParser(Object symbols, boolean reuseOptions) throws Throwable
+    {
+        return (Object) NEW_PARSER.invokeExact(symbols, reuseOptions);
+    }
+
+    /**
+     * Parses line by LineHandler.handleLine
+     *
+     * @param options LineGenerationOptions to fill
+     * @param line line of spec
+     * @param symbols SymbolTable
+     * @return filled LineGenerationOptions
+     */
+    static Object handleLine(Object options, CharSequence line, Object symbols) throws Throwable
+    {
+        return (Object) HANDLE_LINE.invokeExact(options, line, symbols);
+    }
+
+    /**
+     * Chooses parser of LineHandler
+     *
+     * @param regexChain true for chain of regular expressions, false for tokenizer
+     */
+    static void setRegexChain(boolean regexChain) throws Throwable
+    {
+        SET_REGEX_CHAIN.invokeExact(regexChain);
+    }
+
+    /**
+     * Parses line by LineParser
+     *
+     * @param parser LineParser
+     * @param line line of spec
+     * @return LineGenerationOptions
+     */
+    static Object parse(Object parser, CharSequence line) throws Throwable
+    {
+        return (Object) PARSE.invokeExact(parser, line);
+    }
+
+    /**
+     * Counts members of parsed line
+     *
+     * @param options LineGenerationOptions
+     * @return number of methods and fields
+     */
+    static int memberCount(Object options) throws Throwable
+    {
+        return (int) METHOD_COUNT.invokeExact(options) + (int) FIELD_COUNT.invokeExact(options);
+    }
+
+    /**
+     * Renders class
+     *
+     * @param options LineGenerationOptions
+     * @return UTF-8 bytes of class
+     */
+    static ByteBuffer renderClass(Object options) throws Throwable
+    {
+        return (ByteBuffer) RENDER_CLASS.invokeExact(options);
+    }
+
+    /**
+     * Reads every line of spec by SpecReader
+     *
+     * @param spec spec file
+     * @return total length of lines
+     */
+    static long readMapped(String spec) throws Throwable
+    {
+        Object reader = (Object) OPEN_SPEC.invokeExact(spec);
+        long length = 0;
+        CharSequence line;
+
+        while((line = (CharSequence) NEXT_LINE.invokeExact(reader)) != null)
+        {
+            length += line.length();
+        }
+        CLOSE_SPEC.invokeExact(reader);
+        return length;
+    }
+
+    /**
+     * Reads every line of spec by Scanner of FileHandler
+     *
+     * @param spec spec file
+     * @return total length of lines
+     */
+    static long readScanner(String spec) throws Throwable
+    {
+        Scanner scanner = (Scanner) INPUT_FILE.invokeExact(spec);
+        long length = 0;
+
+        while(scanner.hasNext())
+        {
+            length += scanner.nextLine().length();
+        }
+        scanner.close();
+        return length;
+    }
+
+    /**
+     * Runs whole program on spec file
+     *
+     * @param spec spec file
+     * @param root directory that classes are generated in
+     * @return true if errors occurred, false if not
+     */
+    static boolean generate(String spec, Path root) throws Throwable
+    {
+        Object userHandler = (Object) NEW_USER_HANDLER.invokeExact(root, NO_CONSOLE);
+        return (boolean) GENERATE.invokeExact(userHandler, spec);
+    }
+
+    /**
+     * Builds line of spec with given number of methods and fields
+     *
+     * @param index number of line, makes class name unique
+     * @param methods number of methods
+     * @param fields number of fields
+     * @return line of spec
+     */
+    static String syntheticLine(int index, int methods, int fields)
+    {
+        StringBuilder line = new StringBuilder("bench.pkg").append(index % 16).append(".Class").append(index);
+
+        for(int i = 0; i < methods; ++i)
+        {
+            line.append(i % 2 == 0 ? " public " : " private static ").append(i % 3 == 0 ? "void" : "int").append(" method").append(i).append("(int a").append(i).append(", String b").append(i).append(")");
+        }
+        for(int i = 0; i < fields; ++i)
+        {
+            line.append(" String=field").append(i);
+        }
+
+        return line.toString();
+    }
+
+    /**
+     * Creates temporary spec file made of synthetic lines with 5 methods and 5 fields
+     *
+     * @param size number of lines
+     * @return created file, deleted on exit
+     */
+    static File createSpec(int size) throws Exception
+    {
+        File spec = File.createTempFile("benchmark-spec", ".txt");
+        spec.deleteOnExit();
+
+        try(PrintWriter writer = new PrintWriter(spec, "UTF-8"))
+        {
+            for(int i = 0; i < size; ++i)
+            {
+                writer.println(syntheticLine(i, 5, 5));
+            }
+        }
+
+        return spec;
+    }
+
+    /**
+     * Deletes directory with everything inside
+     *
+     * @param directory directory to delete
+     */
+    static void delete(Path directory) throws Exception
+    {
+        try(Stream<Path> files = Files.walk(directory))
+        {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    /**
+     * Finds class of generator
+     *
+     * @param name name of class
+     * @return class
+     */
+    private static Class<?> type(String name)
+    {
+        try
+        {
+            return Class.forName(name);
+        }
+        catch(ClassNotFoundException e)
+        {
+            throw new IllegalStateException("Generator isn't on class path", e);
+        }
+    }
+
+    /**
+     * Finds constructor of class of generator, even if it isn't public
+     *
+     * @param className name of class
+     * @param parameters types of parameters
+     * @return handle of constructor
+     */
+    private static MethodHandle constructor(String className, Class<?>... parameters)
+    {
+        try
+        {
+            Constructor<?> constructor = type(className).getDeclaredConstructor(parameters);
+            return MethodHandles.lookup().unreflectConstructor(accessible(constructor));
+        }
+        catch(ReflectiveOperationException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Finds method of class of generator, even if it isn't public
+     *
+     * @param className name of class
+     * @param name name of method
+     * @param parameters types of parameters
+     * @return handle of method, instance methods take object as first argument
+     */
+    private static MethodHandle method(String className, String name, Class<?>... parameters)
+    {
+        try
+        {
+            Method method = type(className).getDeclaredMethod(name, parameters);
+            return MethodHandles.lookup().unreflect(accessible(method));
+        }
+        catch(ReflectiveOperationException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Finds setter of static field of class of generator, even if field isn't public
+     *
+     * @param className name of class
+     * @param name name of field
+     * @return handle of setter
+     */
+    private static MethodHandle staticSetter(String className, String name)
+    {
+        try
+        {
+            Field field = type(className).getDeclaredField(name);
+            return MethodHandles.lookup().unreflectSetter(accessible(field));
+        }
+        catch(ReflectiveOperationException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Makes member accessible from this package
+     *
+     * @param member constructor, method or field
+     * @return the same member
+     */
+    private static <T extends AccessibleObject> T accessible(T member)
+    {
+        member.setAccessible(true);
+        return member;
+    }
+}
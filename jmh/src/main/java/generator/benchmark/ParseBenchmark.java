@@ -0,0 +1,90 @@
+package generator.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parse stage: LineHandler.handleLine filling new options by every line, and LineParser filling the same options
+ * by every line, on synthetic lines with 0 to 200 methods and as many fields, with tokenizer and with chain of regular expressions.
+ * Run with -prof gc to see bytes allocated per line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark
+{
+    /**
+     * number of methods and of fields of line
+     */
+    @Param({"0", "1", "10", "50", "200"})
+    public int members;
+
+    /**
+     * parser of LineHandler, tokenizer or regex
+     */
+    @Param({"tokenizer", "regex"})
+    public String parser;
+
+    /**
+     * line of spec
+     */
+    private String line;
+
+    /**
+     * table that package folders and return types are shared through
+     */
+    private Object symbols;
+
+    /**
+     * LineParser that reuses options
+     */
+    private Object reusingParser;
+
+    /**
+     * Builds line and chooses parser
+     */
+    @Setup
+    public void setUp() throws Throwable
+    {
+        Generator.setRegexChain(parser.equals("regex"));
+        line = Generator.syntheticLine(0, members, members);
+        symbols = Generator.newSymbolTable();
+        reusingParser = Generator.newParser(symbols, true);
+    }
+
+    /**
+     * Parses line to new options
+     *
+     * @return parsed options
+     */
+    @Benchmark
+    public Object handleLine() throws Throwable
+    {
+        return Generator.handleLine(Generator.newOptions(), line, symbols);
+    }
+
+    /**
+     * Parses line to options reused by every line
+     *
+     * @return parsed options
+     */
+    @Benchmark
+    public Object parseReused() throws Throwable
+    {
+        return Generator.parse(reusingParser, line);
+    }
+}
@@ -0,0 +1,80 @@
+package generator.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Read stage: reading every line of spec file with Scanner and with memory mapped SpecReader
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadBenchmark
+{
+    /**
+     * number of lines of spec
+     */
+    @Param({"1000", "100000", "1000000"})
+    public int lines;
+
+    /**
+     * spec file
+     */
+    private File spec;
+
+    /**
+     * Creates spec file
+     */
+    @Setup
+    public void setUp() throws Exception
+    {
+        spec = Generator.createSpec(lines);
+    }
+
+    /**
+     * Deletes spec file
+     */
+    @TearDown
+    public void tearDown()
+    {
+        spec.delete();
+    }
+
+    /**
+     * Reads spec with Scanner
+     *
+     * @return total length of lines
+     */
+    @Benchmark
+    public long scanner() throws Throwable
+    {
+        return Generator.readScanner(spec.getPath());
+    }
+
+    /**
+     * Reads spec with SpecReader
+     *
+     * @return total length of lines
+     */
+    @Benchmark
+    public long mapped() throws Throwable
+    {
+        return Generator.readMapped(spec.getPath());
+    }
+}
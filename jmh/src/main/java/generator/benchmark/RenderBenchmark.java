@@ -0,0 +1,66 @@
+package generator.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Render stage: OutputHandler.renderClass for classes of various shapes, with and without javadoc and main method.
+ * Run with -prof gc to see bytes allocated per class.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark
+{
+    /**
+     * number of methods and of fields of class
+     */
+    @Param({"0", "1", "10", "50", "200"})
+    public int members;
+
+    /**
+     * flags added to line
+     */
+    @Param({"", " nodoc nomain"})
+    public String flags;
+
+    /**
+     * parsed options of class
+     */
+    private Object options;
+
+    /**
+     * Parses line of class
+     */
+    @Setup
+    public void setUp() throws Throwable
+    {
+        options = Generator.handleLine(Generator.newOptions(), Generator.syntheticLine(0, members, members) + flags, null);
+    }
+
+    /**
+     * Renders class to UTF-8 bytes
+     *
+     * @return rendered class
+     */
+    @Benchmark
+    public ByteBuffer render() throws Throwable
+    {
+        return Generator.renderClass(options);
+    }
+}
@@ -0,0 +1,61 @@
+package generator.benchmark;
+
+/**
+ * Heap retained by parsed lines of various shapes. Retained heap isn't rate of anything JMH can measure, so it's
+ * measured by keeping many parsed lines alive and comparing used heap after full collections.
+ * <p>
+ * Usage: java -cp target/benchmarks.jar generator.benchmark.RetainedHeap [number of lines, default 200000]
+ */
+public class RetainedHeap
+{
+    /**
+     * number of methods and of fields of measured lines
+     */
+    private static final int[] MEMBER_COUNTS = {0, 1, 10, 50, 200};
+
+    /**
+     * Prints bytes retained per parsed line for every shape
+     *
+     * @param args cmd args, number of lines kept alive, fewer lines are kept when they have many members
+     */
+    public static void main(String[] args) throws Throwable
+    {
+        int maxLines = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+        for(int members : MEMBER_COUNTS)
+        {
+            int lines = maxLines / (1 + members / 10);
+            Object[] parsed = new Object[lines];
+            Object symbols = Generator.newSymbolTable();
+            long before = usedHeap();
+
+            for(int i = 0; i < lines; ++i)
+            {
+                parsed[i] = Generator.handleLine(Generator.newOptions(), Generator.syntheticLine(i, members, members), symbols);
+            }
+
+            long retained = usedHeap() - before;
+            System.out.println(String.format("%-20s %14.1f B/class (%d members)", "members=" + members, retained / (double) lines,
+                    Generator.memberCount(parsed[lines - 1])));
+        }
+    }
+
+    /**
+     * Collects garbage and reads size of used heap
+     *
+     * @return bytes of heap used by live objects
+     */
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+
+        for(int i = 0; i < 5; ++i)
+        {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+
+        return used;
+    }
+}
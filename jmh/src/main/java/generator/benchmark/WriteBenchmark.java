@@ -0,0 +1,96 @@
+package generator.benchmark;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole program: UserHandler generating classes from spec file to empty directory, one run per measurement.
+ * Every run writes as many files as spec has lines, so runs of 1000000 lines take long and need enough disk space.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class WriteBenchmark
+{
+    /**
+     * number of lines of spec
+     */
+    @Param({"1000", "100000", "1000000"})
+    public int lines;
+
+    /**
+     * spec file
+     */
+    private File spec;
+
+    /**
+     * directory that classes are generated in, new one for every run
+     */
+    private Path root;
+
+    /**
+     * Creates spec file
+     */
+    @Setup(Level.Trial)
+    public void createSpec() throws Exception
+    {
+        spec = Generator.createSpec(lines);
+    }
+
+    /**
+     * Creates empty directory for run
+     */
+    @Setup(Level.Iteration)
+    public void createRoot() throws Exception
+    {
+        root = Files.createTempDirectory("benchmark-out");
+    }
+
+    /**
+     * Deletes classes written by run
+     */
+    @TearDown(Level.Iteration)
+    public void deleteRoot() throws Exception
+    {
+        Generator.delete(root);
+    }
+
+    /**
+     * Deletes spec file
+     */
+    @TearDown(Level.Trial)
+    public void deleteSpec()
+    {
+        spec.delete();
+    }
+
+    /**
+     * Generates classes from every line of spec
+     *
+     * @return true if errors occurred
+     */
+    @Benchmark
+    public boolean generate() throws Throwable
+    {
+        return Generator.generate(spec.getPath(), root);
+    }
+}